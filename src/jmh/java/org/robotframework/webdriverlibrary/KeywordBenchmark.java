@@ -0,0 +1,134 @@
+package org.robotframework.webdriverlibrary;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.output.NullOutputStream;
+
+import org.openqa.selenium.OutputType;
+import org.openqa.selenium.TakesScreenshot;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.remote.DesiredCapabilities;
+import org.openqa.selenium.remote.RemoteWebDriver;
+import org.openqa.selenium.support.ui.ExpectedCondition;
+import org.openqa.selenium.support.ui.WebDriverWait;
+
+import java.io.File;
+import java.io.PrintStream;
+import java.net.URL;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keyword hot paths measured against the in-process stub WebDriver server. The latency parameter
+ * is added to each driver command by the stub, 0 measures the overhead of the library and the
+ * wire protocol alone.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class KeywordBenchmark {
+
+    @Param({"0", "1"})
+    public long latencyMillis;
+
+    private StubWebDriverServer stub;
+    private WebDriverKeywords keywords;
+    private WebDriver driver;
+    private WaitEngine waits;
+    private ScreenshotWriter screenshots;
+    private File dir;
+    private PrintStream stdout;
+
+    private static final ExpectedCondition<Boolean> MET = new ExpectedCondition<Boolean>() {
+        public Boolean apply(WebDriver d) {
+            return Boolean.TRUE;
+        }
+    };
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        // the keywords log each wait to stdout for Robot
+        stdout = System.out;
+        System.setOut(new PrintStream(new NullOutputStream()));
+        stub = new StubWebDriverServer(latencyMillis);
+        stub.addElement("id", "my_text_div", "text appears from the button");
+        stub.addElement("xpath", "//input[@type='checkbox'][1]", "");
+        for (int i = 0; i < 5; i++) {
+            stub.addWindow("Popup " + i, "http://popup/" + i);
+        }
+        keywords = new WebDriverKeywords();
+        keywords.openBrowser("chrome", stub.url());
+        driver = new RemoteWebDriver(new URL(stub.url()), DesiredCapabilities.chrome());
+        waits = new WaitEngine();
+        screenshots = new ScreenshotWriter(16);
+        dir = File.createTempFile("scrshots", "");
+        dir.delete();
+    }
+
+    @TearDown(Level.Iteration)
+    public void cleanScreenshots() throws Exception {
+        screenshots.flush();
+        FileUtils.deleteQuietly(dir);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        keywords.closeAllBrowsers();
+        driver.quit();
+        stub.stop();
+        System.setOut(stdout);
+    }
+
+    @Benchmark
+    public void clickElement() throws Exception {
+        keywords.clickElement("xpath", "//input[@type='checkbox'][1]");
+    }
+
+    @Benchmark
+    public void elementTextContains() throws Exception {
+        keywords.elementTextContains("id", "my_text_div", "appears");
+    }
+
+    @Benchmark
+    public void switchToWindowWithTitle() throws Exception {
+        keywords.switchToWindowWithTitle("Popup 4");
+        keywords.switchToMainWindow();
+    }
+
+    @Benchmark
+    public Boolean webDriverWait() {
+        return new WebDriverWait(driver, 30).until(MET);
+    }
+
+    @Benchmark
+    public Boolean waitEngine() throws Exception {
+        return waits.until(driver, MET, 30);
+    }
+
+    @Benchmark
+    public void screenshotCopiedSynchronously() throws Exception {
+        File file = ((TakesScreenshot) driver).getScreenshotAs(OutputType.FILE);
+        FileUtils.copyFile(file, new File(dir, System.nanoTime() + ".png"));
+        file.delete();
+    }
+
+    @Benchmark
+    public File screenshotWrittenInBackground() throws Exception {
+        return screenshots.write(dir, ((TakesScreenshot) driver).getScreenshotAs(OutputType.BYTES));
+    }
+}
@@ -0,0 +1,80 @@
+package org.robotframework.webdriverlibrary;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import org.robotframework.javalib.library.AnnotationLibrary;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the import of the library through the class path scan of the AnnotationLibrary with the
+ * keyword index generated at build time. The startup benchmarks run once in each of many fresh JVMs,
+ * so they include the class loading of a real library import. The dispatch benchmarks compare the
+ * cost of running a keyword that does next to nothing.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 0)
+@Measurement(iterations = 1)
+@Fork(20)
+public class LibraryStartupBenchmark {
+
+    private static final String PATTERN = "org/robotframework/webdriverlibrary/*Keywords.class";
+    private static final Object[] ARGS = { "0" };
+
+    @State(Scope.Benchmark)
+    public static class Libraries {
+        AnnotationLibrary scanned;
+        KeywordIndex index;
+        WebDriverKeywords keywords;
+
+        @Setup
+        public void setUp() {
+            scanned = new AnnotationLibrary(PATTERN);
+            scanned.getKeywordNames();
+            index = new WebDriverKeywordsIndex();
+            keywords = new WebDriverKeywords();
+        }
+    }
+
+    @Benchmark
+    public String[] annotationScanStartup() {
+        return new AnnotationLibrary(PATTERN).getKeywordNames();
+    }
+
+    // what WebDriverLibrary does when imported and asked for its keywords
+    @Benchmark
+    public String[] keywordIndexStartup() {
+        new WebDriverKeywords();
+        return new WebDriverKeywordsIndex().names();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    @Warmup(iterations = 3, time = 1)
+    @Measurement(iterations = 5, time = 1)
+    @Fork(1)
+    public Object annotationDispatch(final Libraries l) {
+        return l.scanned.runKeyword("Set Wait After Action", ARGS);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    @Warmup(iterations = 3, time = 1)
+    @Measurement(iterations = 5, time = 1)
+    @Fork(1)
+    public Object keywordIndexDispatch(final Libraries l) throws Exception {
+        return l.index.run(l.keywords, "Set Wait After Action", ARGS);
+    }
+}
@@ -0,0 +1,43 @@
+package org.robotframework.webdriverlibrary;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import org.openqa.selenium.By;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the reflective By lookup formerly done by getBy with the locator strategy table.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LocatorBenchmark {
+
+    @Param({"id", "xpath", "cssSelector"})
+    public String by;
+
+    public String expression = "//input[@name='textField']";
+
+    @Benchmark
+    public By reflective() throws Exception {
+        return (By) By.class.getMethod(by, String.class).invoke(null, expression);
+    }
+
+    @Benchmark
+    public By strategyTable() {
+        return Locators.strategy(by).create(expression);
+    }
+}
@@ -1,10 +1,55 @@
-import org.robotframework.javalib.library.AnnotationLibrary;
+import org.robotframework.javalib.library.KeywordDocumentationRepository;
+import org.robotframework.javalib.library.RobotJavaLibrary;
+import org.robotframework.webdriverlibrary.FanOut;
+import org.robotframework.webdriverlibrary.KeywordContext;
+import org.robotframework.webdriverlibrary.KeywordIndex;
+import org.robotframework.webdriverlibrary.WebDriverKeywords;
+import org.robotframework.webdriverlibrary.WebDriverKeywordsIndex;
 
-public class WebDriverLibrary extends AnnotationLibrary {
+// the keywords come from the index generated at build time, so the library neither scans the
+// class path when imported nor looks the keyword methods up by reflection when they are run
+public class WebDriverLibrary implements RobotJavaLibrary, KeywordDocumentationRepository {
     public static final String ROBOT_LIBRARY_SCOPE = "GLOBAL";
     public static final String ROBOT_LIBRARY_VERSION = "1.0";
-    
-    public WebDriverLibrary() {
-        super("org/robotframework/webdriverlibrary/WebDriverKeywords.class");
+
+    private static final KeywordIndex INDEX = new WebDriverKeywordsIndex();
+    private final WebDriverKeywords keywords = new WebDriverKeywords();
+
+    public String[] getKeywordNames() {
+        return INDEX.names();
+    }
+
+    public String[] getKeywordArguments(String keywordName) {
+        return INDEX.arguments(keywordName);
+    }
+
+    public String getKeywordDocumentation(String keywordName) {
+        return INDEX.documentation(keywordName);
+    }
+
+    public Object runKeyword(String keywordName, Object[] args) {
+        return FanOut.run(keywordName, args, new FanOut.Invoker() {
+            public Object invoke(String keyword, Object[] arguments) {
+                return runMeasured(keyword, arguments);
+            }
+        });
+    }
+
+    private Object runMeasured(String keywordName, Object[] args) {
+        // the metrics are recorded under the declared name, however Robot spells the keyword
+        KeywordContext.enter(INDEX.name(keywordName));
+        boolean passed = false;
+        try {
+            Object result = INDEX.run(keywords, keywordName, args);
+            passed = true;
+            return result;
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            // checked exceptions are reported like the AnnotationLibrary did, with the message of the keyword's exception
+            throw new RuntimeException(e.getMessage(), e);
+        } finally {
+            KeywordContext.exit(passed);
+        }
     }
 }
@@ -0,0 +1,220 @@
+package org.robotframework.webdriverlibrary;
+
+import org.openqa.selenium.Keys;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebElement;
+import org.openqa.selenium.interactions.Action;
+import org.openqa.selenium.interactions.Actions;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+
+// the mouse and keyboard steps of PerformActions, one step per argument: the name of the step followed
+// by its element as by:expression and its numbers, e.g. "move id:canvas 10 20" or "key ENTER". The steps
+// are checked when parsed, the elements they refer to are listed once each so that they can be resolved
+// in one batch, and the whole sequence is built into one Action of the Actions class.
+final class ActionChain {
+
+    enum Kind {
+        MOVE, MOVEBY, CLICK, DOUBLECLICK, RIGHTCLICK, DOWN, UP, KEYDOWN, KEYUP, KEY, TYPE, PAUSE
+    }
+
+    private static final class Step {
+        final Kind kind;
+        int element = -1;
+        int x;
+        int y;
+        boolean offset;
+        Keys[] keys;
+        String text;
+
+        Step(final Kind kind) {
+            this.kind = kind;
+        }
+    }
+
+    private final List<Step> steps = new ArrayList<Step>();
+    private final Map<String, Integer> elements = new LinkedHashMap<String, Integer>();
+    private final List<String> locators = new ArrayList<String>();
+
+    private ActionChain() {
+    }
+
+    static ActionChain parse(final String[] steps) {
+        if (steps.length == 0) {
+            throw new IllegalArgumentException("No steps given to perform");
+        }
+        ActionChain chain = new ActionChain();
+        for (int i = 0; i < steps.length; i++) {
+            try {
+                chain.steps.add(chain.step(steps[i].trim()));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException(String.format("Step %d '%s': %s", i + 1, steps[i], e.getMessage()), e);
+            }
+        }
+        return chain;
+    }
+
+    // flat list of (by, expression) pairs, one pair for each distinct element in the order of first use
+    List<String> locators() {
+        return locators;
+    }
+
+    // the elements are those of locators(), in the same order
+    @SuppressWarnings("deprecation")
+    Action build(final WebDriver driver, final List<WebElement> resolved) {
+        Actions actions = new Actions(driver);
+        for (Step s : steps) {
+            WebElement e = s.element < 0 ? null : resolved.get(s.element);
+            switch (s.kind) {
+                case MOVE:
+                    if (s.offset) { actions.moveToElement(e, s.x, s.y); } else { actions.moveToElement(e); }
+                    break;
+                case MOVEBY:
+                    actions.moveByOffset(s.x, s.y);
+                    break;
+                case CLICK:
+                    if (e == null) { actions.click(); } else { actions.click(e); }
+                    break;
+                case DOUBLECLICK:
+                    if (e == null) { actions.doubleClick(); } else { actions.doubleClick(e); }
+                    break;
+                case RIGHTCLICK:
+                    if (e == null) { actions.contextClick(); } else { actions.contextClick(e); }
+                    break;
+                case DOWN:
+                    if (e == null) { actions.clickAndHold(); } else { actions.clickAndHold(e); }
+                    break;
+                case UP:
+                    if (e == null) { actions.release(); } else { actions.release(e); }
+                    break;
+                case KEYDOWN:
+                    actions.keyDown(s.keys[0]);
+                    break;
+                case KEYUP:
+                    actions.keyUp(s.keys[0]);
+                    break;
+                case KEY:
+                    actions.sendKeys(s.keys);
+                    break;
+                case TYPE:
+                    actions.sendKeys(s.text);
+                    break;
+                case PAUSE:
+                    actions.pause(s.x);
+                    break;
+                default:
+                    throw new IllegalStateException("Unhandled step " + s.kind);
+            }
+        }
+        return actions.build();
+    }
+
+    private Step step(final String text) {
+        int space = text.indexOf(' ');
+        String name = space < 0 ? text : text.substring(0, space);
+        String rest = space < 0 ? "" : text.substring(space + 1).trim();
+        Step s;
+        try {
+            s = new Step(Kind.valueOf(name.toUpperCase(Locale.ENGLISH)));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown step '" + name + "', use one of: move, moveBy, click, doubleClick, "
+                + "rightClick, down, up, keyDown, keyUp, key, type or pause");
+        }
+        String[] words = rest.length() == 0 ? new String[0] : rest.split("\\s+");
+        switch (s.kind) {
+            case MOVE:
+                // the offsets are the last two words, the rest is the locator which may contain spaces
+                if (words.length >= 3 && isInteger(words[words.length - 1]) && isInteger(words[words.length - 2])) {
+                    s.x = Integer.parseInt(words[words.length - 2]);
+                    s.y = Integer.parseInt(words[words.length - 1]);
+                    s.offset = true;
+                    rest = rest.replaceFirst("\\s+\\S+\\s+\\S+$", "");
+                }
+                s.element = element(rest, true);
+                break;
+            case MOVEBY:
+                if (words.length != 2 || !isInteger(words[0]) || !isInteger(words[1])) {
+                    throw new IllegalArgumentException("Expected the x and y offsets");
+                }
+                s.x = Integer.parseInt(words[0]);
+                s.y = Integer.parseInt(words[1]);
+                break;
+            case CLICK: case DOUBLECLICK: case RIGHTCLICK: case DOWN: case UP:
+                s.element = element(rest, false);
+                break;
+            case KEYDOWN: case KEYUP:
+                if (words.length != 1) {
+                    throw new IllegalArgumentException("Expected one modifier key such as SHIFT, CONTROL or ALT");
+                }
+                s.keys = keys(words);
+                break;
+            case KEY:
+                if (words.length == 0) {
+                    throw new IllegalArgumentException("Expected the names of the keys such as ENTER or TAB");
+                }
+                s.keys = keys(words);
+                break;
+            case TYPE:
+                if (rest.length() == 0) {
+                    throw new IllegalArgumentException("Expected the text to type");
+                }
+                // the text is typed as given after the step name, inner spaces included
+                s.text = text.substring(space + 1);
+                break;
+            case PAUSE:
+                if (words.length != 1 || !isInteger(words[0]) || Integer.parseInt(words[0]) < 0) {
+                    throw new IllegalArgumentException("Expected the pause in milliseconds");
+                }
+                s.x = Integer.parseInt(words[0]);
+                break;
+            default:
+                throw new IllegalStateException("Unhandled step " + s.kind);
+        }
+        return s;
+    }
+
+    // the index of the element in locators(), -1 when the step has no element
+    private int element(final String locator, final boolean required) {
+        if (locator.length() == 0) {
+            if (required) {
+                throw new IllegalArgumentException("Expected the element as by:expression");
+            }
+            return -1;
+        }
+        int colon = locator.indexOf(':');
+        if (colon <= 0) {
+            throw new IllegalArgumentException("The element is given as by:expression, got '" + locator + "'");
+        }
+        String by = locator.substring(0, colon);
+        Locators.strategy(by);
+        Integer index = elements.get(locator);
+        if (index == null) {
+            index = elements.size();
+            elements.put(locator, index);
+            locators.add(by);
+            locators.add(locator.substring(colon + 1));
+        }
+        return index;
+    }
+
+    private static Keys[] keys(final String[] names) {
+        Keys[] keys = new Keys[names.length];
+        for (int i = 0; i < names.length; i++) {
+            try {
+                keys[i] = Keys.valueOf(names[i].toUpperCase(Locale.ENGLISH));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Unknown key '" + names[i] + "'");
+            }
+        }
+        return keys;
+    }
+
+    private static boolean isInteger(final String s) {
+        return s.matches("-?\\d{1,9}");
+    }
+}
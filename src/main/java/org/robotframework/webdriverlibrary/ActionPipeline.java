@@ -0,0 +1,127 @@
+package org.robotframework.webdriverlibrary;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+
+// the actions the keywords of one browser session have queued in the async mode. They run in order
+// on a worker thread of the session while the keywords return at once, so Robot's own overhead
+// between the keywords overlaps the driver latency. The first failure is kept together with the
+// keyword that failed and the actions queued after it are skipped, until the next keyword that
+// waits for the pipeline reports the failure.
+final class ActionPipeline {
+
+    private final String name;
+    private ExecutorService worker;
+    private Thread workerThread;
+    private int pending;
+    private String failedAction;
+    private Exception failure;
+    private int skipped;
+
+    ActionPipeline(final String name) {
+        this.name = name;
+    }
+
+    synchronized void submit(final String action, final Callable<?> task) {
+        if (worker == null) {
+            worker = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                public Thread newThread(final Runnable r) {
+                    Thread t = new Thread(r, "action-pipeline-" + name);
+                    t.setDaemon(true);
+                    workerThread = t;
+                    return t;
+                }
+            });
+        }
+        pending++;
+        worker.execute(new Runnable() {
+            public void run() {
+                Exception error = null;
+                if (!hasFailed()) {
+                    try {
+                        task.call();
+                    } catch (Exception e) {
+                        error = e;
+                    }
+                }
+                done(action, error);
+            }
+        });
+    }
+
+    synchronized int pending() {
+        return pending;
+    }
+
+    // waits until the queued actions have run and throws the first failure among them, if any.
+    // The actions themselves do not wait for the pipeline they run in.
+    void drain() {
+        if (Thread.currentThread() == workerThreadOf()) {
+            return;
+        }
+        String action;
+        Exception error;
+        int skippedActions;
+        synchronized (this) {
+            while (pending > 0) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("Interrupted while waiting for " + pending + " pending actions");
+                }
+            }
+            action = failedAction;
+            error = failure;
+            skippedActions = skipped;
+            failedAction = null;
+            failure = null;
+            skipped = 0;
+        }
+        if (error != null) {
+            throw new IllegalStateException(String.format("Pending action %s failed%s: %s", action,
+                skippedActions == 0 ? "" : skippedActions == 1 ? " and the action queued after it was skipped"
+                    : String.format(" and the %d actions queued after it were skipped", skippedActions),
+                error.getMessage()), error);
+        }
+    }
+
+    // waits for the queued actions and stops the worker, the failures are left for the caller to log
+    String close() {
+        String outcome = null;
+        try {
+            drain();
+        } catch (IllegalStateException e) {
+            outcome = e.getMessage();
+        }
+        synchronized (this) {
+            if (worker != null) {
+                worker.shutdown();
+                worker = null;
+            }
+        }
+        return outcome;
+    }
+
+    private synchronized Thread workerThreadOf() {
+        return workerThread;
+    }
+
+    private synchronized boolean hasFailed() {
+        return failure != null;
+    }
+
+    private synchronized void done(final String action, final Exception error) {
+        pending--;
+        if (error != null) {
+            failedAction = action;
+            failure = error;
+        } else if (failure != null) {
+            skipped++;
+        }
+        notifyAll();
+    }
+}
@@ -0,0 +1,199 @@
+package org.robotframework.webdriverlibrary;
+
+import org.openqa.selenium.WebDriver;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+// bounded pool of started browsers, which are leased by OpenBrowser and given back by CloseBrowser
+// instead of quitting them. Browsers are pooled by a key describing their capabilities and the pool
+// is refilled in the background, so that the next OpenBrowser with the same key finds a warm browser.
+class BrowserPool {
+
+    private final int size;
+    private final int maxUses;
+    private final ExecutorService warmer;
+    private final ConcurrentHashMap<String, BlockingQueue<Pooled>> idle = new ConcurrentHashMap<String, BlockingQueue<Pooled>>();
+    private final ConcurrentHashMap<String, AtomicInteger> warming = new ConcurrentHashMap<String, AtomicInteger>();
+    private final Map<WebDriver, Pooled> leased = Collections.synchronizedMap(new IdentityHashMap<WebDriver, Pooled>());
+    private final Thread shutdownHook;
+    private volatile boolean closed;
+
+    private static class Pooled {
+        final String key;
+        final WebDriver driver;
+        final String mainWindowHandle;
+        int uses;
+
+        Pooled(final String key, final WebDriver driver) {
+            this.key = key;
+            this.driver = driver;
+            this.mainWindowHandle = driver.getWindowHandle();
+        }
+    }
+
+    // size is the count of idle browsers kept warm per key, maxUses the count of leases before a browser is quit
+    BrowserPool(final int size, final int maxUses) {
+        if (size < 1 || maxUses < 1) {
+            throw new IllegalArgumentException("Browser pool size and maximum uses must be positive");
+        }
+        this.size = size;
+        this.maxUses = maxUses;
+        this.warmer = Executors.newFixedThreadPool(size, new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+            public Thread newThread(final Runnable r) {
+                Thread t = new Thread(r, "browser-pool-warmer-" + count.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            }
+        });
+        this.shutdownHook = new Thread("browser-pool-shutdown") {
+            @Override
+            public void run() {
+                quitIdle();
+            }
+        };
+        Runtime.getRuntime().addShutdownHook(shutdownHook);
+    }
+
+    // returns a healthy idle browser for the key or starts a new one, and refills the pool in the background
+    WebDriver lease(final String key, final DriverFactory factory) throws Exception {
+        BlockingQueue<Pooled> queue = queue(key);
+        Pooled p = queue.poll();
+        while (p != null && !isHealthy(p)) {
+            quit(p);
+            p = queue.poll();
+        }
+        if (p == null) {
+            p = new Pooled(key, factory.create());
+        }
+        leased.put(p.driver, p);
+        warmUp(key, factory);
+        return p.driver;
+    }
+
+    // resets a leased browser and puts it back to the pool, returns false if the browser was not leased from here
+    boolean release(final WebDriver driver) {
+        Pooled p = leased.remove(driver);
+        if (p == null) {
+            return false;
+        }
+        p.uses++;
+        if (closed || p.uses >= maxUses || !reset(p) || !queue(p.key).offer(p)) {
+            quit(p);
+        }
+        return true;
+    }
+
+    // starts browsers in the background until the key has its full count of idle and warming browsers
+    void warmUp(final String key, final DriverFactory factory) {
+        final BlockingQueue<Pooled> queue = queue(key);
+        final AtomicInteger inProgress = counter(key);
+        while (!closed && queue.size() + inProgress.get() < size) {
+            inProgress.incrementAndGet();
+            warmer.execute(new Runnable() {
+                public void run() {
+                    try {
+                        Pooled p = new Pooled(key, factory.create());
+                        p.driver.get("about:blank");
+                        if (closed || !queue.offer(p)) {
+                            quit(p);
+                        }
+                    } catch (Exception e) {
+                        System.out.println("*WARN* Warming up a pooled browser failed: " + e);
+                    } finally {
+                        inProgress.decrementAndGet();
+                    }
+                }
+            });
+        }
+    }
+
+    int idleCount(final String key) {
+        return queue(key).size();
+    }
+
+    // quits all idle browsers, leased ones are quit when they are released
+    void shutdown() {
+        closed = true;
+        warmer.shutdownNow();
+        quitIdle();
+        try {
+            Runtime.getRuntime().removeShutdownHook(shutdownHook);
+        } catch (IllegalStateException e) {
+            // already shutting down, the hook does the same
+        }
+    }
+
+    private void quitIdle() {
+        List<Pooled> all = new ArrayList<Pooled>();
+        for (BlockingQueue<Pooled> queue : idle.values()) {
+            queue.drainTo(all);
+        }
+        for (Pooled p : all) {
+            quit(p);
+        }
+    }
+
+    private BlockingQueue<Pooled> queue(final String key) {
+        BlockingQueue<Pooled> queue = idle.get(key);
+        if (queue == null) {
+            idle.putIfAbsent(key, new LinkedBlockingQueue<Pooled>(size));
+            queue = idle.get(key);
+        }
+        return queue;
+    }
+
+    private AtomicInteger counter(final String key) {
+        AtomicInteger counter = warming.get(key);
+        if (counter == null) {
+            warming.putIfAbsent(key, new AtomicInteger());
+            counter = warming.get(key);
+        }
+        return counter;
+    }
+
+    private static boolean isHealthy(final Pooled p) {
+        try {
+            return p.mainWindowHandle.equals(p.driver.getWindowHandle());
+        } catch (RuntimeException e) {
+            return false;
+        }
+    }
+
+    // closes the extra windows, deletes the cookies and navigates back to about:blank
+    private static boolean reset(final Pooled p) {
+        try {
+            for (String handle : p.driver.getWindowHandles()) {
+                if (!handle.equals(p.mainWindowHandle)) {
+                    p.driver.switchTo().window(handle).close();
+                }
+            }
+            p.driver.switchTo().window(p.mainWindowHandle);
+            p.driver.manage().deleteAllCookies();
+            p.driver.get("about:blank");
+            return true;
+        } catch (RuntimeException e) {
+            return false;
+        }
+    }
+
+    private static void quit(final Pooled p) {
+        try {
+            p.driver.quit();
+        } catch (RuntimeException e) {
+            // the browser is gone already
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package org.robotframework.webdriverlibrary;
+
+import org.openqa.selenium.WebDriver;
+
+import java.util.concurrent.TimeUnit;
+
+
+// one browser opened with OpenBrowser together with the state that belongs to it
+class BrowserSession {
+
+    private final String alias;
+    private final WebDriver driver;
+    private String mainWindowHandle;
+    // asynchronous script timeout in milliseconds last set for the driver
+    private long scriptTimeout;
+    // time it took to start or lease the browser
+    private long launchMillis;
+    private final WindowIndex windows = new WindowIndex();
+    private final ElementCache elements = new ElementCache();
+    private final ActionPipeline actions;
+    // the page taken with TakeDomSnapshot, until the session navigates or switches its context
+    private volatile DomSnapshot snapshot;
+
+    BrowserSession(final String alias, final WebDriver driver) {
+        this.alias = alias;
+        this.driver = driver;
+        this.actions = new ActionPipeline(alias);
+    }
+
+    String getAlias() {
+        return alias;
+    }
+
+    WebDriver getDriver() {
+        return driver;
+    }
+
+    String getMainWindowHandle() {
+        return mainWindowHandle;
+    }
+
+    void setMainWindowHandle(final String handle) {
+        this.mainWindowHandle = handle;
+        windows.add(handle);
+    }
+
+    WindowIndex getWindows() {
+        return windows;
+    }
+
+    ElementCache getElements() {
+        return elements;
+    }
+
+    ActionPipeline getActions() {
+        return actions;
+    }
+
+    DomSnapshot getSnapshot() {
+        return snapshot;
+    }
+
+    void setSnapshot(final DomSnapshot snapshot) {
+        this.snapshot = snapshot;
+    }
+
+    // the page, frame or window of the session changes, so the elements and the snapshot no longer apply
+    void contextChanged() {
+        elements.clear();
+        snapshot = null;
+    }
+
+    long getLaunchMillis() {
+        return launchMillis;
+    }
+
+    void setLaunchMillis(final long millis) {
+        this.launchMillis = millis;
+    }
+
+    // raises the asynchronous script timeout of the driver to at least the given milliseconds
+    void ensureScriptTimeout(final long millis) {
+        if (scriptTimeout < millis) {
+            driver.manage().timeouts().setScriptTimeout(millis, TimeUnit.MILLISECONDS);
+            scriptTimeout = millis;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("browser session '%s'", alias);
+    }
+}
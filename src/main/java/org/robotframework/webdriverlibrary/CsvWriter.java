@@ -0,0 +1,47 @@
+package org.robotframework.webdriverlibrary;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.List;
+
+
+// writes rows of values to a UTF-8 csv file, quoting the values as RFC 4180 requires
+final class CsvWriter {
+
+    private final Writer out;
+
+    CsvWriter(final File file) throws IOException {
+        File dir = file.getAbsoluteFile().getParentFile();
+        if (dir != null && !dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Could not create directory " + dir);
+        }
+        this.out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), "UTF-8"));
+    }
+
+    void writeRow(final List<?> values) throws IOException {
+        for (int i = 0; i < values.size(); i++) {
+            if (i > 0) {
+                out.write(',');
+            }
+            out.write(quote(values.get(i)));
+        }
+        out.write("\r\n");
+    }
+
+    void close() throws IOException {
+        out.close();
+    }
+
+    // null is written as an empty value
+    static String quote(final Object value) {
+        String s = value == null ? "" : value.toString();
+        if (s.indexOf(',') < 0 && s.indexOf('"') < 0 && s.indexOf('\n') < 0 && s.indexOf('\r') < 0) {
+            return s;
+        }
+        return '"' + s.replace("\"", "\"\"") + '"';
+    }
+}
@@ -0,0 +1,234 @@
+package org.robotframework.webdriverlibrary;
+
+
+// javascript snippets run in the page for keywords that handle many elements in one round trip.
+// The locators are given to the scripts as flat argument lists of (strategy, expression) pairs using
+// the same strategy names as the keywords.
+final class DomScripts {
+
+    // wdlFind(by, expression) returns the matching elements as an array in document order,
+    // wdlVisible(element) tells whether the element is displayed and wdlText(element) returns its
+    // innerText with the whitespace of each line collapsed and the lines joined by a space
+    static final String FUNCTIONS =
+          "function wdlFind(by, v) {"
+        + "  var d = document, r = [], i, n;"
+        + "  var all = function(list) { for (var j = 0; j < list.length; j++) { r.push(list[j]); } return r; };"
+        + "  if (by == 'id') { n = d.getElementById(v); return n ? [n] : []; }"
+        + "  if (by == 'name') { return all(d.getElementsByName(v)); }"
+        + "  if (by == 'className') { return all(d.getElementsByClassName(v)); }"
+        + "  if (by == 'tagName') { return all(d.getElementsByTagName(v)); }"
+        + "  if (by == 'cssSelector') { return all(d.querySelectorAll(v)); }"
+        + "  if (by == 'xpath') {"
+        + "    var x = d.evaluate(v, d, null, 7, null);"
+        + "    for (i = 0; i < x.snapshotLength; i++) { r.push(x.snapshotItem(i)); }"
+        + "    return r;"
+        + "  }"
+        + "  if (by == 'linkText' || by == 'partialLinkText') {"
+        + "    var links = d.getElementsByTagName('a');"
+        + "    for (i = 0; i < links.length; i++) {"
+        + "      var t = (links[i].innerText || links[i].textContent || '').replace(/\\s+/g, ' ').replace(/^ | $/g, '');"
+        + "      if (by == 'linkText' ? t == v : t.indexOf(v) >= 0) { r.push(links[i]); }"
+        + "    }"
+        + "    return r;"
+        + "  }"
+        + "  throw new Error('Unknown locator strategy ' + by);"
+        + "}"
+        + "function wdlVisible(e) {"
+        + "  if (!(e.offsetWidth || e.offsetHeight || (e.getClientRects && e.getClientRects().length))) { return false; }"
+        + "  var s = window.getComputedStyle ? window.getComputedStyle(e, null) : null;"
+        + "  return !s || s.visibility != 'hidden';"
+        + "}"
+        + "function wdlText(e) {"
+        + "  var t = e.innerText, lines, r = [];"
+        + "  if (t == null) { t = e.textContent || ''; }"
+        + "  lines = String(t).replace(/\\u00a0/g, ' ').split(/\\r?\\n/);"
+        + "  for (var i = 0; i < lines.length; i++) {"
+        + "    var l = lines[i].replace(/\\s+/g, ' ').replace(/^ | $/g, '');"
+        + "    if (l) { r.push(l); }"
+        + "  }"
+        + "  return r.join(' ');"
+        + "}";
+
+    // arguments: flat list of (by, expression) pairs,
+    // returns the first visible matching element of each pair or null when there is none yet
+    static final String RESOLVE_VISIBLE =
+          FUNCTIONS
+        + "var a = arguments[0], r = [];"
+        + "for (var i = 0; i < a.length; i += 2) {"
+        + "  var found = wdlFind(a[i], a[i + 1]), e = null;"
+        + "  for (var j = 0; j < found.length && !e; j++) { if (wdlVisible(found[j])) { e = found[j]; } }"
+        + "  r.push(e);"
+        + "}"
+        + "return r;";
+
+    // arguments: flat list of (by, expression, value) triples, returns a status per triple.
+    // Nothing is written and 'missing' is returned for the absent fields until all fields are visible,
+    // then the values are set with the native value setter and input and change events are fired.
+    // The status of a written field is an empty string or the reason why it could not be written.
+    static final String FILL_FORM =
+          FUNCTIONS
+        + "var a = arguments[0], fields = [], r = [], missing = false, i;"
+        + "for (i = 0; i < a.length; i += 3) {"
+        + "  var found = wdlFind(a[i], a[i + 1]), e = null;"
+        + "  for (var j = 0; j < found.length && !e; j++) { if (wdlVisible(found[j])) { e = found[j]; } }"
+        + "  fields.push(e);"
+        + "  r.push(e ? '' : 'missing');"
+        + "  missing = missing || !e;"
+        + "}"
+        + "if (missing) { return r; }"
+        + "var fire = function(e, type) {"
+        + "  var ev = document.createEvent('HTMLEvents');"
+        + "  ev.initEvent(type, true, true);"
+        + "  e.dispatchEvent(ev);"
+        + "};"
+        + "for (i = 0; i < fields.length; i++) {"
+        + "  var f = fields[i], v = a[i * 3 + 2];"
+        + "  try {"
+        + "    if (f.disabled) { r[i] = 'field is disabled'; continue; }"
+        + "    if (f.readOnly) { r[i] = 'field is read-only'; continue; }"
+        + "    if (f.type == 'checkbox' || f.type == 'radio') {"
+        + "      f.checked = v == 'true' || v == 'on' || v == f.value;"
+        + "    } else if (f.isContentEditable) {"
+        + "      f.textContent = v;"
+        + "    } else if ('value' in f) {"
+        + "      var p = Object.getPrototypeOf(f), desc = p && Object.getOwnPropertyDescriptor(p, 'value');"
+        + "      if (desc && desc.set) { desc.set.call(f, v); } else { f.value = v; }"
+        + "    } else {"
+        + "      r[i] = 'element is not a form field'; continue;"
+        + "    }"
+        + "    fire(f, 'input');"
+        + "    fire(f, 'change');"
+        + "  } catch (err) {"
+        + "    r[i] = String(err);"
+        + "  }"
+        + "}"
+        + "return r;";
+
+    // asynchronous, arguments: by, expression, text, contains, negate, watchMillis.
+    // Compares the text of the first matching element with the text in the page and
+    // returns [matched, excerpt of the element text], or null when there is no matching element.
+    // If the text does not match yet, the script watches the DOM for at most watchMillis and
+    // returns as soon as a change makes it match.
+    static final String TEXT_MATCHES =
+          FUNCTIONS
+        + "var by = arguments[0], v = arguments[1], text = arguments[2], contains = arguments[3], negate = arguments[4],"
+        + "    watch = arguments[5], done = arguments[arguments.length - 1];"
+        + "var check = function() {"
+        + "  var found = wdlFind(by, v);"
+        + "  if (!found.length) { return null; }"
+        + "  var t = wdlText(found[0]), hit = contains ? t.indexOf(text) >= 0 : t == text;"
+        + "  return [hit != negate, t.length > 200 ? t.substring(0, 200) + '...' : t];"
+        + "};"
+        + "var result = check();"
+        + "if (!result || result[0] || watch <= 0) { done(result); return; }"
+        + "var finished = false, scheduled = false, observer = null, poller = null, timer;"
+        + "var finish = function(r) {"
+        + "  if (finished) { return; }"
+        + "  finished = true;"
+        + "  if (observer) { observer.disconnect(); }"
+        + "  if (poller) { clearInterval(poller); }"
+        + "  clearTimeout(timer);"
+        + "  done(r);"
+        + "};"
+        + "var recheck = function() {"
+        + "  scheduled = false;"
+        + "  var r = check();"
+        + "  if (!r || r[0]) { finish(r); }"
+        + "};"
+        + "if (window.MutationObserver) {"
+        + "  observer = new MutationObserver(function() {"
+        + "    if (!scheduled) { scheduled = true; setTimeout(recheck, 0); }"
+        + "  });"
+        + "  observer.observe(document.documentElement, {childList: true, subtree: true, characterData: true, attributes: true});"
+        + "} else {"
+        + "  poller = setInterval(recheck, 50);"
+        + "}"
+        + "timer = setTimeout(function() { finish(check()); }, watch);";
+
+    // arguments: by, expression, returns the text of each matching element or null when there is none
+    static final String ELEMENT_TEXTS =
+          FUNCTIONS
+        + "var found = wdlFind(arguments[0], arguments[1]), r = [];"
+        + "if (!found.length) { return null; }"
+        + "for (var i = 0; i < found.length; i++) { r.push(wdlText(found[i])); }"
+        + "return r;";
+
+    // arguments: by, expression, name, returns the value of the property or attribute of each matching
+    // element like WebElement.getAttribute, or null when there is no matching element
+    static final String ELEMENT_ATTRIBUTES =
+          FUNCTIONS
+        + "var found = wdlFind(arguments[0], arguments[1]), name = arguments[2], r = [];"
+        + "if (!found.length) { return null; }"
+        + "for (var i = 0; i < found.length; i++) {"
+        + "  var p = found[i][name];"
+        + "  r.push(p != null && typeof p != 'object' && typeof p != 'function' ? String(p) : found[i].getAttribute(name));"
+        + "}"
+        + "return r;";
+
+    // arguments: by, expression, first row, row count. Returns {total: rows in the table, rows: [[cell text]]}
+    // for the rows of the first matching table, or null when there is no matching element
+    static final String TABLE_ROWS =
+          FUNCTIONS
+        + "var found = wdlFind(arguments[0], arguments[1]), first = arguments[2], count = arguments[3], r = [];"
+        + "if (!found.length) { return null; }"
+        + "var rows = found[0].rows || found[0].getElementsByTagName('tr');"
+        + "for (var i = first; i < rows.length && i < first + count; i++) {"
+        + "  var cells = rows[i].cells || rows[i].children, c = [];"
+        + "  for (var j = 0; j < cells.length; j++) { c.push(wdlText(cells[j])); }"
+        + "  r.push(c);"
+        + "}"
+        + "return {total: rows.length, rows: r};";
+
+    // arguments: by, expression, match ('text', 'value' or 'index'), list of options, exclusive.
+    // Selects the options of the first visible matching select element: on a multi-select every option
+    // with the given text or value like the Select class does, on a single select the first one. The
+    // other options of a multi-select are deselected when exclusive is set, and input and change events
+    // are fired if anything changed. Returns null until a select element is visible, {missing: [options]} until all the
+    // options exist, and then {error: ''} or {error: reason} when the options could not be selected.
+    static final String SELECT_OPTIONS =
+          FUNCTIONS
+        + "var found = wdlFind(arguments[0], arguments[1]), match = arguments[2], items = arguments[3],"
+        + "    exclusive = arguments[4], s = null, i;"
+        + "for (i = 0; i < found.length && !s; i++) { if (wdlVisible(found[i])) { s = found[i]; } }"
+        + "if (!s) { return null; }"
+        + "if (!s.options || s.tagName.toLowerCase() != 'select') { return {error: 'element is not a select element'}; }"
+        + "if (s.disabled) { return {error: 'select element is disabled'}; }"
+        + "if (!s.multiple && items.length != 1) { return {error: 'a single select takes exactly one option'}; }"
+        + "var norm = function(t) { return String(t).replace(/\\s+/g, ' ').replace(/^ | $/g, ''); };"
+        + "var key = function(o, n) { return match == 'value' ? o.value : match == 'index' ? String(n) : norm(o.text); };"
+        + "var byKey = {}, wanted = {}, picked = [], missing = [];"
+        + "for (i = 0; i < s.options.length; i++) { var k = 'k' + key(s.options[i], i); (byKey[k] = byKey[k] || []).push(i); }"
+        + "for (i = 0; i < items.length; i++) {"
+        + "  var all = byKey['k' + (match == 'text' ? norm(items[i]) : String(items[i]))];"
+        + "  if (!all) { missing.push(items[i]); continue; }"
+        + "  if (!s.multiple) { all = all.slice(0, 1); }"
+        + "  for (var j = 0; j < all.length; j++) {"
+        + "    var o = s.options[all[j]];"
+        + "    if (o.disabled) { return {error: 'option ' + items[i] + ' is disabled'}; }"
+        + "    wanted[all[j]] = true;"
+        + "    picked.push(o);"
+        + "  }"
+        + "}"
+        + "if (missing.length) { return {missing: missing}; }"
+        + "var changed = false;"
+        + "if (exclusive && s.multiple) {"
+        + "  for (i = 0; i < s.options.length; i++) {"
+        + "    if (s.options[i].selected && !wanted[i]) { s.options[i].selected = false; changed = true; }"
+        + "  }"
+        + "}"
+        + "for (i = 0; i < picked.length; i++) {"
+        + "  if (!picked[i].selected) { picked[i].selected = true; changed = true; }"
+        + "}"
+        + "if (changed) {"
+        + "  var types = ['input', 'change'];"
+        + "  for (i = 0; i < types.length; i++) {"
+        + "    var ev = document.createEvent('HTMLEvents');"
+        + "    ev.initEvent(types[i], true, true);"
+        + "    s.dispatchEvent(ev);"
+        + "  }"
+        + "}"
+        + "return {error: ''};";
+
+    private DomScripts() {
+    }
+}
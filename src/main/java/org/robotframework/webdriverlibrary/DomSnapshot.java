@@ -0,0 +1,170 @@
+package org.robotframework.webdriverlibrary;
+
+import com.gargoylesoftware.htmlunit.BrowserVersion;
+import com.gargoylesoftware.htmlunit.IncorrectnessListener;
+import com.gargoylesoftware.htmlunit.SilentCssErrorHandler;
+import com.gargoylesoftware.htmlunit.StringWebResponse;
+import com.gargoylesoftware.htmlunit.WebClient;
+import com.gargoylesoftware.htmlunit.html.DomElement;
+import com.gargoylesoftware.htmlunit.html.DomNode;
+import com.gargoylesoftware.htmlunit.html.HTMLParser;
+import com.gargoylesoftware.htmlunit.html.HtmlAnchor;
+import com.gargoylesoftware.htmlunit.html.HtmlElement;
+import com.gargoylesoftware.htmlunit.html.HtmlPage;
+
+import org.openqa.selenium.WebDriver;
+
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Pattern;
+
+
+// the page source of a browser parsed once into an in-memory document, in which the read-only
+// keywords evaluate their locators without sending commands to the browser. The document is
+// parsed without scripts and style sheets, so an element counts as hidden only by its hidden
+// attribute, its inline style, as a hidden input or as a part of the head. The page source is
+// limited in length, and a session keeps only its latest snapshot, so the memory use stays bounded.
+final class DomSnapshot {
+
+    static final int DEFAULT_MAX_CHARS = 2 * 1024 * 1024;
+
+    private static final Pattern HIDDEN_STYLE = Pattern.compile("(^|;)\\s*(display\\s*:\\s*none|visibility\\s*:\\s*hidden)",
+                                                                Pattern.CASE_INSENSITIVE);
+    private static final List<String> NOT_RENDERED = Arrays.asList("head", "script", "style", "template", "title");
+
+    // the client only gives the parser a window to parse into, it never loads anything. Each thread
+    // has its own, so that the sessions of OpenBrowsers parse their snapshots in parallel.
+    private static final ThreadLocal<WebClient> parser = new ThreadLocal<WebClient>() {
+        @Override
+        protected WebClient initialValue() {
+            WebClient client = new WebClient(BrowserVersion.getDefault());
+            client.getOptions().setJavaScriptEnabled(false);
+            client.getOptions().setCssEnabled(false);
+            client.setCssErrorHandler(new SilentCssErrorHandler());
+            client.setIncorrectnessListener(new IncorrectnessListener() {
+                public void notify(final String message, final Object origin) {
+                }
+            });
+            return client;
+        }
+    };
+
+    private final HtmlPage page;
+    private final int length;
+
+    private DomSnapshot(final HtmlPage page, final int length) {
+        this.page = page;
+        this.length = length;
+    }
+
+    static DomSnapshot take(final WebDriver d, final int maxChars) throws IOException {
+        String source = d.getPageSource();
+        if (source.length() > maxChars) {
+            throw new IllegalStateException(String.format("The page source has %d characters, more than the %d allowed for a snapshot",
+                                                          source.length(), maxChars));
+        }
+        return parse(source, d.getCurrentUrl());
+    }
+
+    static DomSnapshot parse(final String source, final String url) throws IOException {
+        URL base;
+        try {
+            base = new URL(url);
+        } catch (MalformedURLException e) {
+            // about:blank, data: and the like, the base only resolves relative links
+            base = new URL("http://localhost/");
+        }
+        return new DomSnapshot(HTMLParser.parseHtml(new StringWebResponse(source, base), parser.get().getCurrentWindow()), source.length());
+    }
+
+    int length() {
+        return length;
+    }
+
+    // the elements matching the locator in document order
+    List<DomElement> find(final String by, final String expression) {
+        List<DomElement> found = new ArrayList<DomElement>();
+        switch (Locators.strategy(by)) {
+            case ID:
+                for (DomElement e : page.getElementsByIdAndOrName(expression)) {
+                    if (expression.equals(e.getAttribute("id"))) found.add(e);
+                }
+                break;
+            case NAME:
+                found.addAll(page.getElementsByName(expression));
+                break;
+            case XPATH:
+                addElements(page.getByXPath(expression), found);
+                break;
+            case CLASS_NAME:
+                for (HtmlElement e : page.getDocumentElement().getHtmlElementDescendants()) {
+                    if (hasClass(e, expression)) found.add(e);
+                }
+                break;
+            case LINK_TEXT:
+            case PARTIAL_LINK_TEXT:
+                boolean partial = Locators.strategy(by) == Locators.Strategy.PARTIAL_LINK_TEXT;
+                for (HtmlAnchor a : page.getAnchors()) {
+                    String text = text(a);
+                    if (partial ? text.contains(expression) : text.equals(expression)) found.add(a);
+                }
+                break;
+            case TAG_NAME:
+                found.addAll(page.getElementsByTagName(expression));
+                break;
+            case CSS_SELECTOR:
+                addElements(page.querySelectorAll(expression), found);
+                break;
+        }
+        return found;
+    }
+
+    DomElement first(final String by, final String expression) {
+        List<DomElement> found = find(by, expression);
+        return found.isEmpty() ? null : found.get(0);
+    }
+
+    // the text as the driver returns it, nothing for hidden elements and the lines joined by a space
+    static String text(final DomElement e) {
+        if (!displayed(e)) {
+            return "";
+        }
+        return e.asText().replace("\r\n", "\n").replace("\n", " ").trim();
+    }
+
+    // the attribute of the source, or null when the element does not have it
+    static String attribute(final DomElement e, final String name) {
+        return e.hasAttribute(name) ? e.getAttribute(name) : null;
+    }
+
+    static boolean displayed(final DomElement e) {
+        if (e.getTagName().equals("input") && "hidden".equalsIgnoreCase(e.getAttribute("type"))) {
+            return false;
+        }
+        for (DomNode n = e; n instanceof DomElement; n = n.getParentNode()) {
+            DomElement element = (DomElement) n;
+            if (NOT_RENDERED.contains(element.getTagName()) || element.hasAttribute("hidden")
+                || HIDDEN_STYLE.matcher(element.getAttribute("style")).find()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean hasClass(final DomElement e, final String name) {
+        for (String c : e.getAttribute("class").split("\\s+")) {
+            if (c.equals(name)) return true;
+        }
+        return false;
+    }
+
+    private static void addElements(final List<?> nodes, final List<DomElement> found) {
+        for (Object node : nodes) {
+            if (node instanceof DomElement) found.add((DomElement) node);
+        }
+    }
+}
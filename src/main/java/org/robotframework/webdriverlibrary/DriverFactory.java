@@ -0,0 +1,10 @@
+package org.robotframework.webdriverlibrary;
+
+import org.openqa.selenium.WebDriver;
+
+
+// starts a new browser, used by OpenBrowser and by the browser pool for warming up sessions
+interface DriverFactory {
+
+    WebDriver create() throws Exception;
+}
@@ -0,0 +1,174 @@
+package org.robotframework.webdriverlibrary;
+
+import org.openqa.selenium.By;
+import org.openqa.selenium.StaleElementReferenceException;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebElement;
+import org.openqa.selenium.internal.WrapsElement;
+import org.openqa.selenium.support.ui.ExpectedCondition;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+
+// the elements found by the keywords of a browser session by their locator, reused by the next
+// keywords with the same locator instead of finding the element again. The cache is cleared when
+// the session navigates or switches to another frame or window, so the entries always belong to
+// the current context. A cached element that has gone stale is found again with its locator and
+// the failed call is retried once, which keeps the reuse transparent to the keywords.
+class ElementCache {
+
+    private static final int SIZE = 256;
+
+    // an access ordered map that drops the least recently used element once it is full
+    private final Map<By, WebElement> elements = new LinkedHashMap<By, WebElement>(16, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<By, WebElement> eldest) {
+            return size() > SIZE;
+        }
+    };
+
+    synchronized void clear() {
+        elements.clear();
+    }
+
+    private synchronized WebElement get(final By locator) {
+        return elements.get(locator);
+    }
+
+    private synchronized void remove(final By locator) {
+        elements.remove(locator);
+    }
+
+    // finds the element and caches it wrapped into a proxy that finds it again when it goes stale
+    private WebElement find(final WebDriver d, final By locator) {
+        WebElement element = wrap(d, locator, d.findElement(locator));
+        synchronized (this) {
+            elements.put(locator, element);
+        }
+        return element;
+    }
+
+    // the cached element without checking it, a stale one is found again on first use
+    ExpectedCondition<WebElement> present(final By locator) {
+        return new ExpectedCondition<WebElement>() {
+            @Override
+            public WebElement apply(WebDriver d) {
+                WebElement cached = get(locator);
+                return cached != null ? cached : find(d, locator);
+            }
+
+            @Override
+            public String toString() {
+                return "presence of element located by: " + locator;
+            }
+        };
+    }
+
+    ExpectedCondition<WebElement> visible(final By locator) {
+        return new ExpectedCondition<WebElement>() {
+            @Override
+            public WebElement apply(WebDriver d) {
+                return displayed(d, locator, false);
+            }
+
+            @Override
+            public String toString() {
+                return "visibility of element located by " + locator;
+            }
+        };
+    }
+
+    ExpectedCondition<WebElement> clickable(final By locator) {
+        return new ExpectedCondition<WebElement>() {
+            @Override
+            public WebElement apply(WebDriver d) {
+                return displayed(d, locator, true);
+            }
+
+            @Override
+            public String toString() {
+                return "element to be clickable: " + locator;
+            }
+        };
+    }
+
+    // a cached element that is hidden may no longer be the one the locator finds, so it is dropped
+    private WebElement displayed(final WebDriver d, final By locator, final boolean enabled) {
+        WebElement cached = get(locator);
+        if (cached != null) {
+            try {
+                if (cached.isDisplayed() && (!enabled || cached.isEnabled())) {
+                    return cached;
+                }
+            } catch (RuntimeException e) {
+                // the element could not be found again, fall back to a plain find below
+            }
+            remove(locator);
+        }
+        WebElement element = find(d, locator);
+        return element.isDisplayed() && (!enabled || element.isEnabled()) ? element : null;
+    }
+
+    private WebElement wrap(final WebDriver d, final By locator, final WebElement element) {
+        Set<Class<?>> interfaces = new LinkedHashSet<Class<?>>();
+        for (Class<?> c = element.getClass(); c != null; c = c.getSuperclass()) {
+            addInterfaces(c, interfaces);
+        }
+        interfaces.add(WrapsElement.class);
+        return (WebElement) Proxy.newProxyInstance(WebElement.class.getClassLoader(), interfaces.toArray(new Class<?>[interfaces.size()]),
+                                                   new Refinding(d, locator, element));
+    }
+
+    private static void addInterfaces(final Class<?> c, final Set<Class<?>> interfaces) {
+        for (Class<?> i : c.getInterfaces()) {
+            if (interfaces.add(i)) {
+                addInterfaces(i, interfaces);
+            }
+        }
+    }
+
+    // forwards the calls to the current element, which is replaced once when it has gone stale
+    private static class Refinding implements InvocationHandler {
+        private final WebDriver driver;
+        private final By locator;
+        private volatile WebElement current;
+
+        Refinding(final WebDriver driver, final By locator, final WebElement element) {
+            this.driver = driver;
+            this.locator = locator;
+            this.current = element;
+        }
+
+        public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable {
+            if (method.getDeclaringClass() == WrapsElement.class) {
+                return current;
+            }
+            if (method.getName().equals("equals") && args.length == 1 && args[0] == proxy) {
+                return true;
+            }
+            try {
+                return call(method, args);
+            } catch (StaleElementReferenceException e) {
+                current = driver.findElement(locator);
+                return call(method, args);
+            }
+        }
+
+        private Object call(final Method method, final Object[] args) throws Throwable {
+            try {
+                return method.invoke(current, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package org.robotframework.webdriverlibrary;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+// runs each keyword on all the browsers opened with OpenBrowsers in parallel. Every browser gets
+// its own worker thread, whose current session is set to that browser before the keyword runs,
+// so the keywords need no changes. The keywords that configure the library or manage the
+// sessions are annotated with @RunOnce and run once in the calling thread.
+public final class FanOut {
+
+    // runs a keyword in the calling thread
+    public interface Invoker {
+        Object invoke(String keyword, Object[] args);
+    }
+
+    // tells the keywords annotated with @RunOnce
+    private static final KeywordIndex KEYWORDS = new WebDriverKeywordsIndex();
+
+    private static final ExecutorService WORKERS = Executors.newCachedThreadPool(new ThreadFactory() {
+        private final AtomicInteger count = new AtomicInteger();
+        public Thread newThread(final Runnable r) {
+            Thread t = new Thread(r, "fan-out-" + count.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        }
+    });
+
+    private static volatile SessionRegistry registry;
+    private static volatile List<BrowserSession> group = Collections.emptyList();
+
+    private FanOut() {
+    }
+
+    static void start(final SessionRegistry sessions, final List<BrowserSession> browsers) {
+        registry = sessions;
+        group = Collections.unmodifiableList(new ArrayList<BrowserSession>(browsers));
+    }
+
+    static void stop() {
+        group = Collections.emptyList();
+    }
+
+    // the browsers of the group that are still open
+    static List<BrowserSession> browsers() {
+        List<BrowserSession> open = new ArrayList<BrowserSession>();
+        SessionRegistry sessions = registry;
+        for (BrowserSession session : group) {
+            if (sessions.isRegistered(session)) {
+                open.add(session);
+            }
+        }
+        return open;
+    }
+
+    // runs the keyword on every open browser of the group, or once when there is no group or the
+    // keyword does not use a browser. Returns null if no browser returned a value, else the values by alias.
+    public static Object run(final String keyword, final Object[] args, final Invoker invoker) {
+        if (group.isEmpty() || KEYWORDS.runsOnce(keyword)) {
+            return invoker.invoke(keyword, args);
+        }
+        Map<String, Callable<Object>> tasks = new LinkedHashMap<String, Callable<Object>>();
+        final SessionRegistry sessions = registry;
+        for (final BrowserSession session : browsers()) {
+            tasks.put(session.getAlias(), new Callable<Object>() {
+                public Object call() {
+                    sessions.use(session);
+                    return invoker.invoke(keyword, args);
+                }
+            });
+        }
+        if (tasks.isEmpty()) {
+            stop();
+            return invoker.invoke(keyword, args);
+        }
+        Map<String, Object> results = all(tasks);
+        for (Object value : results.values()) {
+            if (value != null) {
+                return results;
+            }
+        }
+        return null;
+    }
+
+    // runs the tasks in parallel and returns their results by name once all have completed,
+    // the failures of all the tasks are reported together
+    static <T> Map<String, T> all(final Map<String, Callable<T>> tasks) {
+        Map<String, Future<T>> futures = new LinkedHashMap<String, Future<T>>();
+        for (Map.Entry<String, Callable<T>> task : tasks.entrySet()) {
+            futures.put(task.getKey(), WORKERS.submit(task.getValue()));
+        }
+        Map<String, T> results = new LinkedHashMap<String, T>();
+        List<String> failures = new ArrayList<String>();
+        for (Map.Entry<String, Future<T>> future : futures.entrySet()) {
+            try {
+                results.put(future.getKey(), future.getValue().get());
+            } catch (ExecutionException e) {
+                failures.add(future.getKey() + ": " + e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                failures.add(future.getKey() + ": interrupted");
+            }
+        }
+        if (!failures.isEmpty()) {
+            throw new IllegalStateException(String.format("Failed on %d of %d browsers:\n%s",
+                                                          failures.size(), tasks.size(), join(failures)));
+        }
+        return results;
+    }
+
+    private static String join(final List<String> lines) {
+        StringBuilder sb = new StringBuilder();
+        for (String line : lines) {
+            sb.append(sb.length() == 0 ? "" : "\n").append(line);
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,411 @@
+package org.robotframework.webdriverlibrary;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+
+// in-process HTTP proxy of the browsers opened after URL blocking or network throttling was set up.
+// Requests to blocked URLs are answered with an empty response without leaving the machine, the
+// others are forwarded with the configured latency and bandwidth, one request per connection.
+// HTTPS requests are tunnelled, so they are blocked and throttled by their host and port only.
+final class FilteringProxy {
+
+    private static final int BUFFER = 16 * 1024;
+    private static final int MAX_LINE = 64 * 1024;
+    private static final int TIMEOUT = 60000;
+
+    private final ServerSocket server;
+    private final ExecutorService workers;
+    private final List<Pattern> blocked = new CopyOnWriteArrayList<Pattern>();
+    private volatile long latencyMillis;
+    private volatile long bytesPerSecond;
+    private final CountDownLatch accepting = new CountDownLatch(1);
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong blockedRequests = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicLong bytes = new AtomicLong();
+    private volatile LatencyHistogram timings = new LatencyHistogram();
+
+    FilteringProxy() throws IOException {
+        server = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+        workers = Executors.newCachedThreadPool(new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+            public Thread newThread(final Runnable r) {
+                Thread t = new Thread(r, "filtering-proxy-" + count.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            }
+        });
+        workers.execute(new Runnable() {
+            public void run() {
+                accept();
+            }
+        });
+    }
+
+    // host:port for the proxy settings of the browsers
+    String address() {
+        return "127.0.0.1:" + server.getLocalPort();
+    }
+
+    // requests whose URL contains a match of the regular expression are blocked
+    void block(final String regex) {
+        blocked.add(Pattern.compile(regex));
+    }
+
+    // true while requests are blocked or throttled
+    boolean isFiltering() {
+        return !blocked.isEmpty() || latencyMillis > 0 || bytesPerSecond > 0;
+    }
+
+    void clear() {
+        blocked.clear();
+        latencyMillis = 0;
+        bytesPerSecond = 0;
+    }
+
+    // zero latency or bandwidth turns that part of the throttling off
+    void throttle(final long latencyMillis, final long kilobitsPerSecond) {
+        if (latencyMillis < 0 || kilobitsPerSecond < 0) {
+            throw new IllegalArgumentException("Latency and bandwidth can not be negative");
+        }
+        this.latencyMillis = latencyMillis;
+        this.bytesPerSecond = kilobitsPerSecond * 1000 / 8;
+    }
+
+    String stats() {
+        return stats(requests.get(), blockedRequests.get(), failures.get(), bytes.get(), timings);
+    }
+
+    // the counters of a proxy that has not been started
+    static String emptyStats() {
+        return stats(0, 0, 0, 0, new LatencyHistogram());
+    }
+
+    private static String stats(final long requests, final long blocked, final long failures, final long bytes, final LatencyHistogram t) {
+        return String.format(Locale.ENGLISH, "requests=%d blocked=%d failures=%d bytes=%d p50Ms=%.1f p95Ms=%.1f maxMs=%.1f",
+                             requests, blocked, failures, bytes,
+                             t.percentile(50) / 1000.0, t.percentile(95) / 1000.0, t.max() / 1000.0);
+    }
+
+    void resetStats() {
+        requests.set(0);
+        blockedRequests.set(0);
+        failures.set(0);
+        bytes.set(0);
+        timings = new LatencyHistogram();
+    }
+
+    // the port is free when this returns: a server socket closed while accept() blocks on it is
+    // released only once the accepting thread has left accept()
+    void close() {
+        closeQuietly(server);
+        workers.shutdownNow();
+        try {
+            accepting.await(TIMEOUT, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void accept() {
+        try {
+            acceptConnections();
+        } finally {
+            accepting.countDown();
+        }
+    }
+
+    private void acceptConnections() {
+        while (!server.isClosed()) {
+            try {
+                final Socket client = server.accept();
+                try {
+                    workers.execute(new Runnable() {
+                        public void run() {
+                            handle(client);
+                        }
+                    });
+                } catch (RejectedExecutionException e) {
+                    // accepted just as the proxy was closed
+                    closeQuietly(client);
+                }
+            } catch (IOException e) {
+                // the server socket was closed
+            }
+        }
+    }
+
+    private void handle(final Socket client) {
+        long start = System.nanoTime();
+        boolean timed = false;
+        try {
+            client.setSoTimeout(TIMEOUT);
+            client.setTcpNoDelay(true);
+            InputStream in = new BufferedInputStream(client.getInputStream());
+            String requestLine = readLine(in);
+            if (requestLine == null || requestLine.length() == 0) {
+                return;
+            }
+            List<String> headers = new ArrayList<String>();
+            for (String line = readLine(in); line != null && line.length() > 0; line = readLine(in)) {
+                headers.add(line);
+            }
+            requests.incrementAndGet();
+            timed = true;
+            String[] parts = requestLine.split(" ");
+            if (parts.length != 3) {
+                respond(client, "400 Bad Request");
+                return;
+            }
+            boolean connect = parts[0].equalsIgnoreCase("CONNECT");
+            if (isBlocked(connect ? "https://" + parts[1] : parts[1])) {
+                blockedRequests.incrementAndGet();
+                // an empty response lets the page go on, a refused tunnel is the nearest for HTTPS
+                respond(client, connect ? "403 Forbidden" : "204 No Content");
+                return;
+            }
+            delay();
+            if (connect) {
+                // a tunnel is timed until it is established, as it stays open for many requests
+                timed = false;
+                tunnel(client, in, parts[1], start);
+            } else {
+                forward(client, in, parts, headers);
+            }
+        } catch (IOException e) {
+            failures.incrementAndGet();
+        } catch (URISyntaxException e) {
+            failures.incrementAndGet();
+        } finally {
+            closeQuietly(client);
+            if (timed) {
+                timings.record((System.nanoTime() - start) / 1000);
+            }
+        }
+    }
+
+    private boolean isBlocked(final String url) {
+        for (Pattern p : blocked) {
+            if (p.matcher(url).find()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void delay() throws InterruptedIOException {
+        long millis = latencyMillis;
+        if (millis > 0) {
+            sleep(millis * 1000000);
+        }
+    }
+
+    // sends the request in origin form and streams the response back until the server closes
+    private void forward(final Socket client, final InputStream in, final String[] request, final List<String> headers)
+        throws IOException, URISyntaxException {
+        URI uri = new URI(request[1]);
+        if (uri.getHost() == null) {
+            respond(client, "400 Bad Request");
+            return;
+        }
+        String path = (uri.getRawPath() == null || uri.getRawPath().length() == 0 ? "/" : uri.getRawPath())
+                    + (uri.getRawQuery() == null ? "" : "?" + uri.getRawQuery());
+        StringBuilder head = new StringBuilder(request[0]).append(' ').append(path).append(' ').append(request[2]).append("\r\n");
+        long contentLength = 0;
+        boolean chunked = false;
+        for (String header : headers) {
+            int colon = header.indexOf(':');
+            String name = colon < 0 ? header : header.substring(0, colon).trim();
+            if (name.regionMatches(true, 0, "Proxy-", 0, 6) || name.equalsIgnoreCase("Connection")
+                || name.equalsIgnoreCase("Keep-Alive")) {
+                continue;
+            }
+            if (name.equalsIgnoreCase("Content-Length")) {
+                contentLength = length(header.substring(colon + 1).trim());
+                if (contentLength < 0) {
+                    respond(client, "400 Bad Request");
+                    return;
+                }
+            } else if (name.equalsIgnoreCase("Transfer-Encoding")) {
+                chunked = !header.substring(colon + 1).trim().equalsIgnoreCase("identity");
+            }
+            head.append(header).append("\r\n");
+        }
+        head.append("Connection: close\r\n\r\n");
+        Socket upstream = open(uri.getHost(), uri.getPort() < 0 ? 80 : uri.getPort());
+        try {
+            OutputStream out = upstream.getOutputStream();
+            out.write(head.toString().getBytes("ISO-8859-1"));
+            // a chunked body ends with its last chunk, the Content-Length is then ignored
+            if (chunked) {
+                copyChunked(in, out);
+            } else {
+                copy(in, out, contentLength, false);
+            }
+            bytes.addAndGet(copy(upstream.getInputStream(), client.getOutputStream(), -1, true));
+        } finally {
+            closeQuietly(upstream);
+        }
+    }
+
+    // the value of a Content-Length header, -1 when it is not a valid length
+    private static long length(final String value) {
+        return value.matches("\\d{1,18}") ? Long.parseLong(value) : -1;
+    }
+
+    // relays a chunked request body as it is, up to the last chunk and the trailer headers after it
+    private void copyChunked(final InputStream in, final OutputStream out) throws IOException {
+        while (true) {
+            String line = readLine(in);
+            if (line == null) {
+                throw new IOException("The chunked request body ended early");
+            }
+            writeLine(out, line);
+            int semicolon = line.indexOf(';');
+            String size = (semicolon < 0 ? line : line.substring(0, semicolon)).trim();
+            if (!size.matches("[0-9a-fA-F]{1,15}")) {
+                throw new IOException("Bad chunk size '" + line + "'");
+            }
+            long length = Long.parseLong(size, 16);
+            if (length == 0) {
+                for (line = readLine(in); line != null && line.length() > 0; line = readLine(in)) {
+                    writeLine(out, line);
+                }
+                writeLine(out, "");
+                return;
+            }
+            if (copy(in, out, length, false) < length || readLine(in) == null) {
+                throw new IOException("The chunked request body ended early");
+            }
+            writeLine(out, "");
+        }
+    }
+
+    private void tunnel(final Socket client, final InputStream in, final String target, final long start) throws IOException {
+        int colon = target.lastIndexOf(':');
+        final Socket upstream = open(target.substring(0, colon), Integer.parseInt(target.substring(colon + 1)));
+        try {
+            client.getOutputStream().write("HTTP/1.1 200 Connection established\r\n\r\n".getBytes("ISO-8859-1"));
+            timings.record((System.nanoTime() - start) / 1000);
+            workers.execute(new Runnable() {
+                public void run() {
+                    try {
+                        copy(in, upstream.getOutputStream(), -1, true);
+                    } catch (IOException e) {
+                        // the other direction ends as well when the sockets are closed
+                    } finally {
+                        closeQuietly(upstream);
+                    }
+                }
+            });
+            bytes.addAndGet(copy(upstream.getInputStream(), client.getOutputStream(), -1, true));
+        } finally {
+            closeQuietly(upstream);
+        }
+    }
+
+    private static Socket open(final String host, final int port) throws IOException {
+        Socket socket = new Socket();
+        socket.connect(new InetSocketAddress(host, port), TIMEOUT);
+        socket.setSoTimeout(TIMEOUT);
+        socket.setTcpNoDelay(true);
+        return socket;
+    }
+
+    // copies limit bytes, or until the end of the stream with a negative limit, at the throttled rate
+    private long copy(final InputStream in, final OutputStream out, final long limit, final boolean throttled) throws IOException {
+        byte[] buffer = new byte[BUFFER];
+        long total = 0;
+        long start = System.nanoTime();
+        while (limit < 0 || total < limit) {
+            int n = in.read(buffer, 0, limit < 0 ? buffer.length : (int) Math.min(buffer.length, limit - total));
+            if (n < 0) {
+                break;
+            }
+            out.write(buffer, 0, n);
+            out.flush();
+            total += n;
+            long rate = bytesPerSecond;
+            if (throttled && rate > 0) {
+                sleep(start + total * 1000000000L / rate - System.nanoTime());
+            }
+        }
+        return total;
+    }
+
+    private static void sleep(final long nanos) throws InterruptedIOException {
+        if (nanos <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(nanos / 1000000, (int) (nanos % 1000000));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while throttling");
+        }
+    }
+
+    private static void respond(final Socket client, final String status) throws IOException {
+        client.getOutputStream().write(("HTTP/1.1 " + status + "\r\nContent-Length: 0\r\nConnection: close\r\n\r\n").getBytes("ISO-8859-1"));
+    }
+
+    private static void writeLine(final OutputStream out, final String line) throws IOException {
+        out.write((line + "\r\n").getBytes("ISO-8859-1"));
+    }
+
+    private static String readLine(final InputStream in) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        for (int b = in.read(); b != '\n'; b = in.read()) {
+            if (b < 0) {
+                return line.size() == 0 ? null : line.toString("ISO-8859-1");
+            }
+            if (line.size() >= MAX_LINE) {
+                throw new IOException("Too long request line or header");
+            }
+            if (b != '\r') {
+                line.write(b);
+            }
+        }
+        return line.toString("ISO-8859-1");
+    }
+
+    private static void closeQuietly(final Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            // nothing to do
+        }
+    }
+
+    private static void closeQuietly(final ServerSocket socket) {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            // nothing to do
+        }
+    }
+}
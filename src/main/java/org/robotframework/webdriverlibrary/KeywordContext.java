@@ -0,0 +1,61 @@
+package org.robotframework.webdriverlibrary;
+
+
+// the keyword being run by the calling thread, set by the library around each keyword call.
+// Collects the wait and sleep times of the call and records them to the keyword metrics when it ends.
+public final class KeywordContext {
+
+    private static final class Frame {
+        final String keyword;
+        final long start = System.nanoTime();
+        long waitNanos;
+        long sleepNanos;
+        long polls;
+        long timeouts;
+
+        Frame(final String keyword) {
+            this.keyword = keyword;
+        }
+    }
+
+    private static final ThreadLocal<Frame> current = new ThreadLocal<Frame>();
+
+    private KeywordContext() {
+    }
+
+    public static void enter(final String keywordName) {
+        current.set(new Frame(keywordName));
+    }
+
+    public static void exit(final boolean passed) {
+        Frame f = current.get();
+        current.remove();
+        if (f != null) {
+            KeywordMetrics.GLOBAL.record(f.keyword, (System.nanoTime() - f.start) / 1000L, f.waitNanos / 1000L,
+                                         f.sleepNanos / 1000L, f.polls, f.timeouts, !passed);
+        }
+    }
+
+    static String current() {
+        Frame f = current.get();
+        return f == null ? null : f.keyword;
+    }
+
+    // time slept between the polls of a wait condition
+    static void addWait(final long sleptNanos, final int polls, final boolean timedOut) {
+        Frame f = current.get();
+        if (f != null) {
+            f.waitNanos += sleptNanos;
+            f.polls += polls;
+            f.timeouts += timedOut ? 1 : 0;
+        }
+    }
+
+    // time spent in deliberate waits after actions
+    static void addSleep(final long nanos) {
+        Frame f = current.get();
+        if (f != null) {
+            f.sleepNanos += nanos;
+        }
+    }
+}
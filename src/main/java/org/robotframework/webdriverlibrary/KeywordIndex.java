@@ -0,0 +1,92 @@
+package org.robotframework.webdriverlibrary;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+
+// the keywords of a keyword class as generated at build time by KeywordIndexProcessor: their names,
+// argument names and documentation, and a switch that calls the keyword methods directly. The
+// library starts from the index without scanning the class path and runs the keywords without
+// reflection. The names are matched like Robot matches them, ignoring case, spaces and underscores.
+public abstract class KeywordIndex {
+
+    private final String[] names;
+    private final String[][] arguments;
+    private final String[] documentation;
+    private final boolean[] runOnce;
+    private final Map<String, Integer> numbers = new HashMap<String, Integer>();
+
+    protected KeywordIndex(final String[] names, final String[][] arguments, final String[] documentation, final boolean[] runOnce) {
+        this.names = names;
+        this.arguments = arguments;
+        this.documentation = documentation;
+        this.runOnce = runOnce;
+        for (int i = 0; i < names.length; i++) {
+            numbers.put(KeywordNames.normalize(names[i]), i);
+        }
+    }
+
+    // calls the keyword with the given number on the target, or throws when no overload takes the arguments
+    protected abstract Object invoke(Object target, int keyword, Object[] args) throws Exception;
+
+    public String[] names() {
+        return names.clone();
+    }
+
+    // the name of the keyword as declared, e.g. clickElement for "Click Element", or the given name when there is no such keyword
+    public String name(final String keyword) {
+        Integer i = numbers.get(KeywordNames.normalize(keyword));
+        return i == null ? keyword : names[i];
+    }
+
+    public String[] arguments(final String keyword) {
+        return arguments[number(keyword)].clone();
+    }
+
+    // the introduction and the constructor of the library are not documented
+    public String documentation(final String keyword) {
+        Integer i = numbers.get(KeywordNames.normalize(keyword));
+        return i == null ? "" : documentation[i];
+    }
+
+    // true for the keywords annotated with @RunOnce, false for the others and unknown names
+    public boolean runsOnce(final String keyword) {
+        Integer i = numbers.get(KeywordNames.normalize(keyword));
+        return i != null && runOnce[i];
+    }
+
+    public Object run(final Object target, final String keyword, final Object[] args) throws Exception {
+        return invoke(target, number(keyword), args == null ? new Object[0] : args);
+    }
+
+    private int number(final String keyword) {
+        Integer i = numbers.get(KeywordNames.normalize(keyword));
+        if (i == null) {
+            throw new IllegalArgumentException("No keyword with name '" + keyword + "'");
+        }
+        return i;
+    }
+
+    protected static String string(final Object[] args, final int i) {
+        Object arg = args[i];
+        if (arg != null && !(arg instanceof String)) {
+            throw new IllegalArgumentException(String.format("Argument %d must be a string, got %s", i + 1, arg.getClass().getName()));
+        }
+        return (String) arg;
+    }
+
+    // the arguments from the given one on for a varargs keyword
+    protected static String[] rest(final Object[] args, final int from) {
+        String[] rest = new String[args.length - from];
+        for (int i = from; i < args.length; i++) {
+            rest[i - from] = string(args, i);
+        }
+        return rest;
+    }
+
+    protected IllegalArgumentException wrongCount(final int keyword, final Object[] args) {
+        return new IllegalArgumentException(String.format("Keyword '%s' expected arguments %s, got %d",
+                                                          names[keyword], Arrays.asList(arguments[keyword]), args.length));
+    }
+}
@@ -0,0 +1,251 @@
+package org.robotframework.webdriverlibrary;
+
+import org.robotframework.javalib.annotation.ArgumentNames;
+import org.robotframework.javalib.annotation.RobotKeyword;
+import org.robotframework.javalib.annotation.RobotKeywordOverload;
+import org.robotframework.javalib.annotation.RobotKeywords;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.tools.Diagnostic;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+
+// generates the KeywordIndex of each @RobotKeywords class at compile time, named after the class
+// with an Index suffix. The keywords are the public methods annotated with @RobotKeyword, and the
+// @RobotKeywordOverload methods of the same name are their overloads, which are chosen by the
+// count of arguments. The parameters are strings, the last one may be a string array for varargs.
+// A keyword runs once with an OpenBrowsers group when one of its methods is annotated with @RunOnce.
+// Run by the compiler in the build, see the default-compile execution in pom.xml.
+public class KeywordIndexProcessor extends AbstractProcessor {
+
+    private static final String STRING = "java.lang.String";
+    private static final String RUN_ONCE = "org.robotframework.webdriverlibrary.RunOnce";
+
+    @Override
+    public Set<String> getSupportedAnnotationTypes() {
+        return Collections.singleton(RobotKeywords.class.getName());
+    }
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(final Set<? extends TypeElement> annotations, final RoundEnvironment round) {
+        for (Element e : round.getElementsAnnotatedWith(RobotKeywords.class)) {
+            if (e.getKind() == ElementKind.CLASS) {
+                try {
+                    write((TypeElement) e);
+                } catch (IOException ex) {
+                    processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "Could not write the keyword index: " + ex, e);
+                }
+            }
+        }
+        return false;
+    }
+
+    private void write(final TypeElement type) throws IOException {
+        Map<String, List<ExecutableElement>> keywords = new LinkedHashMap<String, List<ExecutableElement>>();
+        Map<String, ExecutableElement> documented = new LinkedHashMap<String, ExecutableElement>();
+        Set<String> runOnce = new HashSet<String>();
+        for (Element member : type.getEnclosedElements()) {
+            if (member.getKind() != ElementKind.METHOD || !member.getModifiers().contains(Modifier.PUBLIC)) {
+                continue;
+            }
+            boolean keyword = member.getAnnotation(RobotKeyword.class) != null;
+            if (!keyword && member.getAnnotation(RobotKeywordOverload.class) == null) {
+                continue;
+            }
+            ExecutableElement method = (ExecutableElement) member;
+            if (!checkParameters(method)) {
+                continue;
+            }
+            String name = method.getSimpleName().toString();
+            if (!keywords.containsKey(name)) {
+                keywords.put(name, new ArrayList<ExecutableElement>());
+            }
+            keywords.get(name).add(method);
+            if (keyword) {
+                documented.put(name, method);
+            }
+            if (isAnnotated(method, RUN_ONCE)) {
+                runOnce.add(name);
+            }
+        }
+
+        String pkg = ((PackageElement) type.getEnclosingElement()).getQualifiedName().toString();
+        String simpleName = type.getSimpleName() + "Index";
+        PrintWriter out = new PrintWriter(processingEnv.getFiler().createSourceFile(pkg + "." + simpleName, type).openWriter());
+        try {
+            out.println("package " + pkg + ";");
+            out.println();
+            out.println("// generated by KeywordIndexProcessor from the keywords of " + type.getSimpleName() + ", do not edit");
+            out.println("public final class " + simpleName + " extends KeywordIndex {");
+            out.println();
+            out.println("    private static final String[] NAMES = {");
+            for (String name : keywords.keySet()) {
+                out.println("        " + literal(name) + ",");
+            }
+            out.println("    };");
+            out.println();
+            out.println("    private static final String[][] ARGUMENTS = {");
+            for (String name : keywords.keySet()) {
+                StringBuilder sb = new StringBuilder();
+                for (String argument : argumentNames(documented.containsKey(name) ? documented.get(name) : keywords.get(name).get(0))) {
+                    sb.append(sb.length() == 0 ? "" : ", ").append(literal(argument));
+                }
+                out.println("        {" + sb + "},");
+            }
+            out.println("    };");
+            out.println();
+            out.println("    private static final String[] DOCUMENTATION = {");
+            for (String name : keywords.keySet()) {
+                ExecutableElement method = documented.get(name);
+                out.println("        " + literal(method == null ? "" : method.getAnnotation(RobotKeyword.class).value()) + ",");
+            }
+            out.println("    };");
+            out.println();
+            out.println("    private static final boolean[] RUN_ONCE = {");
+            for (String name : keywords.keySet()) {
+                out.println("        " + runOnce.contains(name) + ",");
+            }
+            out.println("    };");
+            out.println();
+            out.println("    public " + simpleName + "() {");
+            out.println("        super(NAMES, ARGUMENTS, DOCUMENTATION, RUN_ONCE);");
+            out.println("    }");
+            out.println();
+            out.println("    @Override");
+            out.println("    protected Object invoke(final Object target, final int keyword, final Object[] args) throws Exception {");
+            out.println("        " + type.getSimpleName() + " k = (" + type.getSimpleName() + ") target;");
+            out.println("        switch (keyword) {");
+            int number = 0;
+            for (List<ExecutableElement> overloads : keywords.values()) {
+                out.println("            case " + number + ":");
+                // the overloads with a fixed count of arguments are tried before the varargs ones
+                for (boolean varargs : new boolean[] { false, true }) {
+                    for (ExecutableElement method : overloads) {
+                        if (isVarargs(method) == varargs) {
+                            writeCall(out, method);
+                        }
+                    }
+                }
+                out.println("                throw wrongCount(" + number + ", args);");
+                number++;
+            }
+            out.println("            default:");
+            out.println("                throw new IllegalArgumentException(\"No keyword with number \" + keyword);");
+            out.println("        }");
+            out.println("    }");
+            out.println("}");
+        } finally {
+            out.close();
+        }
+    }
+
+    private void writeCall(final PrintWriter out, final ExecutableElement method) {
+        List<? extends VariableElement> parameters = method.getParameters();
+        boolean varargs = isVarargs(method);
+        int fixed = varargs ? parameters.size() - 1 : parameters.size();
+        StringBuilder call = new StringBuilder("k.").append(method.getSimpleName()).append("(");
+        for (int i = 0; i < parameters.size(); i++) {
+            call.append(i == 0 ? "" : ", ").append(i < fixed ? "string(args, " + i + ")" : "rest(args, " + i + ")");
+        }
+        call.append(")");
+        out.println("                if (args.length " + (varargs ? ">= " : "== ") + fixed + ") {");
+        if (method.getReturnType().getKind() == TypeKind.VOID) {
+            out.println("                    " + call + ";");
+            out.println("                    return null;");
+        } else {
+            out.println("                    return " + call + ";");
+        }
+        out.println("                }");
+    }
+
+    private boolean checkParameters(final ExecutableElement method) {
+        List<? extends VariableElement> parameters = method.getParameters();
+        for (int i = 0; i < parameters.size(); i++) {
+            TypeMirror t = parameters.get(i).asType();
+            boolean last = i == parameters.size() - 1;
+            if (!t.toString().equals(STRING) && !(last && t.toString().equals(STRING + "[]"))) {
+                processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+                    "Keyword parameters must be strings, the last one may be a string array", parameters.get(i));
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // by name, so that the processor does not depend on the classes it processes
+    private static boolean isAnnotated(final Element element, final String annotation) {
+        for (AnnotationMirror mirror : element.getAnnotationMirrors()) {
+            if (((TypeElement) mirror.getAnnotationType().asElement()).getQualifiedName().contentEquals(annotation)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isVarargs(final ExecutableElement method) {
+        List<? extends VariableElement> parameters = method.getParameters();
+        return !parameters.isEmpty() && parameters.get(parameters.size() - 1).asType().toString().equals(STRING + "[]");
+    }
+
+    // the names of @ArgumentNames, or the parameter names with a * before the varargs one
+    private static List<String> argumentNames(final ExecutableElement method) {
+        List<String> names = new ArrayList<String>();
+        ArgumentNames annotation = method.getAnnotation(ArgumentNames.class);
+        if (annotation != null) {
+            Collections.addAll(names, annotation.value());
+            return names;
+        }
+        for (VariableElement parameter : method.getParameters()) {
+            names.add(parameter.getSimpleName().toString());
+        }
+        if (isVarargs(method)) {
+            names.set(names.size() - 1, "*" + names.get(names.size() - 1));
+        }
+        return names;
+    }
+
+    private static String literal(final String s) {
+        StringBuilder sb = new StringBuilder("\"");
+        for (char c : s.toCharArray()) {
+            switch (c) {
+                case '"':  sb.append("\\\""); break;
+                case '\\': sb.append("\\\\"); break;
+                case '\n': sb.append("\\n"); break;
+                case '\r': sb.append("\\r"); break;
+                case '\t': sb.append("\\t"); break;
+                default:
+                    if (c < 0x20 || c > 0x7e) {
+                        sb.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        sb.append(c);
+                    }
+            }
+        }
+        return sb.append('"').toString();
+    }
+}
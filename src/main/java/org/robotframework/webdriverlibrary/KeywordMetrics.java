@@ -0,0 +1,146 @@
+package org.robotframework.webdriverlibrary;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+// latency statistics of the keywords, recorded by KeywordContext when each keyword call ends.
+// The wall time of a call is split into the time slept between wait polls, the deliberate sleeps
+// after actions and the rest, which is spent in driver commands, including the condition checks.
+// The calls are counted by the keyword name matched like Robot matches it and reported under the
+// name the first call was recorded with, which the library gives as the declared name.
+final class KeywordMetrics {
+
+    static final KeywordMetrics GLOBAL = new KeywordMetrics();
+
+    static final class Stats {
+        final String keyword;
+        final LatencyHistogram wall = new LatencyHistogram();
+        final AtomicLong waitMicros = new AtomicLong();
+        final AtomicLong sleepMicros = new AtomicLong();
+        final AtomicLong driverMicros = new AtomicLong();
+        final AtomicLong polls = new AtomicLong();
+        final AtomicLong timeouts = new AtomicLong();
+        final AtomicLong failures = new AtomicLong();
+
+        Stats(final String keyword) {
+            this.keyword = keyword;
+        }
+    }
+
+    private final ConcurrentHashMap<String, Stats> stats = new ConcurrentHashMap<String, Stats>();
+
+    void record(final String keyword, final long wallMicros, final long waitMicros, final long sleepMicros,
+                final long polls, final long timeouts, final boolean failed) {
+        String key = KeywordNames.normalize(keyword);
+        Stats s = stats.get(key);
+        if (s == null) {
+            stats.putIfAbsent(key, new Stats(keyword));
+            s = stats.get(key);
+        }
+        s.wall.record(wallMicros);
+        s.waitMicros.addAndGet(waitMicros);
+        s.sleepMicros.addAndGet(sleepMicros);
+        s.driverMicros.addAndGet(Math.max(0, wallMicros - waitMicros - sleepMicros));
+        s.polls.addAndGet(polls);
+        s.timeouts.addAndGet(timeouts);
+        if (failed) {
+            s.failures.incrementAndGet();
+        }
+    }
+
+    Stats get(final String keyword) {
+        return stats.get(KeywordNames.normalize(keyword));
+    }
+
+    void reset() {
+        stats.clear();
+    }
+
+    String toCsv() {
+        StringBuilder sb = new StringBuilder("keyword,calls,failures,timeouts,waitPolls,"
+            + "totalMs,meanMs,p50Ms,p90Ms,p99Ms,maxMs,waitPollingMs,sleepMs,driverMs\n");
+        for (Stats s : sorted()) {
+            sb.append(s.keyword);
+            for (String value : values(s)) {
+                sb.append(',').append(value);
+            }
+            sb.append('\n');
+        }
+        return sb.toString();
+    }
+
+    String toJson() {
+        String[] names = {"calls", "failures", "timeouts", "waitPolls", "totalMs", "meanMs", "p50Ms",
+                          "p90Ms", "p99Ms", "maxMs", "waitPollingMs", "sleepMs", "driverMs"};
+        StringBuilder sb = new StringBuilder("{");
+        String sep = "";
+        for (Stats s : sorted()) {
+            List<String> values = values(s);
+            sb.append(sep).append("\n  \"").append(s.keyword.replace("\\", "\\\\").replace("\"", "\\\"")).append("\": {");
+            for (int i = 0; i < names.length; i++) {
+                sb.append(i == 0 ? "" : ", ").append('"').append(names[i]).append("\": ").append(values.get(i));
+            }
+            sb.append('}');
+            sep = ",";
+        }
+        return sb.append("\n}\n").toString();
+    }
+
+    // writes the metrics as json or, when the file name ends with .csv, as csv
+    void export(final File file) throws IOException {
+        File dir = file.getAbsoluteFile().getParentFile();
+        if (dir != null && !dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Could not create directory " + dir);
+        }
+        Writer out = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+        try {
+            out.write(file.getName().toLowerCase(Locale.ENGLISH).endsWith(".csv") ? toCsv() : toJson());
+        } finally {
+            out.close();
+        }
+    }
+
+    // the stats in the order of the normalized keyword names
+    private List<Stats> sorted() {
+        List<String> keys = new ArrayList<String>(stats.keySet());
+        Collections.sort(keys);
+        List<Stats> sorted = new ArrayList<Stats>();
+        for (String key : keys) {
+            sorted.add(stats.get(key));
+        }
+        return sorted;
+    }
+
+    private static List<String> values(final Stats s) {
+        long calls = s.wall.count();
+        List<String> values = new ArrayList<String>();
+        values.add(String.valueOf(calls));
+        values.add(String.valueOf(s.failures.get()));
+        values.add(String.valueOf(s.timeouts.get()));
+        values.add(String.valueOf(s.polls.get()));
+        values.add(millis(s.wall.sum()));
+        values.add(millis(calls == 0 ? 0 : s.wall.sum() / calls));
+        values.add(millis(s.wall.percentile(50)));
+        values.add(millis(s.wall.percentile(90)));
+        values.add(millis(s.wall.percentile(99)));
+        values.add(millis(s.wall.max()));
+        values.add(millis(s.waitMicros.get()));
+        values.add(millis(s.sleepMicros.get()));
+        values.add(millis(s.driverMicros.get()));
+        return values;
+    }
+
+    private static String millis(final long micros) {
+        return String.format(Locale.ROOT, "%.3f", micros / 1000.0);
+    }
+}
@@ -0,0 +1,15 @@
+package org.robotframework.webdriverlibrary;
+
+import java.util.Locale;
+
+
+// keyword names are matched like Robot does, ignoring case, spaces and underscores
+final class KeywordNames {
+
+    private KeywordNames() {
+    }
+
+    static String normalize(final String keyword) {
+        return keyword.replace(" ", "").replace("_", "").toLowerCase(Locale.ENGLISH);
+    }
+}
@@ -0,0 +1,133 @@
+package org.robotframework.webdriverlibrary;
+
+import org.openqa.selenium.chrome.ChromeOptions;
+import org.openqa.selenium.firefox.FirefoxBinary;
+import org.openqa.selenium.firefox.FirefoxDriver;
+import org.openqa.selenium.firefox.FirefoxProfile;
+import org.openqa.selenium.firefox.internal.Extension;
+import org.openqa.selenium.remote.DesiredCapabilities;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.Locale;
+
+
+// named sets of start-up options given to OpenBrowser as profile=name. Headless browsers start
+// without a window, lightweight ones load no images and run without extensions and GPU, and eager
+// ones return from page loads once the DOM is ready. The Firefox profile of a named launch profile
+// is laid out on disk once, with the WebDriver extension unpacked, and copied for each browser.
+enum LaunchProfile {
+
+    DEFAULT(false, false, false),
+    HEADLESS(true, false, false),
+    FAST(true, true, true);
+
+    // the W3C name of the capability, understood by chromedriver and newer drivers
+    private static final String PAGE_LOAD_STRATEGY = "pageLoadStrategy";
+
+    private final boolean headless;
+    private final boolean lightweight;
+    private final boolean eager;
+    private File firefoxTemplate;
+    private String firefoxRemoteProfile;
+
+    LaunchProfile(final boolean headless, final boolean lightweight, final boolean eager) {
+        this.headless = headless;
+        this.lightweight = lightweight;
+        this.eager = eager;
+    }
+
+    static LaunchProfile named(final String name) {
+        try {
+            return valueOf(name.trim().toUpperCase(Locale.ENGLISH));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown launch profile '" + name + "', use default, headless or fast");
+        }
+    }
+
+    @Override
+    public String toString() {
+        return name().toLowerCase(Locale.ENGLISH);
+    }
+
+    // the arguments set with SetChromeArgument followed by the ones of this profile
+    ChromeOptions chromeOptions(final List<String> arguments) {
+        ChromeOptions options = new ChromeOptions();
+        options.addArguments(arguments);
+        if (headless) {
+            options.addArguments("--headless");
+        }
+        if (lightweight) {
+            options.addArguments("--disable-gpu", "--disable-extensions", "--blink-settings=imagesEnabled=false");
+        }
+        return options;
+    }
+
+    void addCapabilities(final DesiredCapabilities cap) {
+        if (eager) {
+            cap.setCapability(PAGE_LOAD_STRATEGY, "eager");
+        }
+    }
+
+    FirefoxBinary firefoxBinary() {
+        FirefoxBinary binary = new FirefoxBinary();
+        if (headless) {
+            binary.setEnvironmentProperty("MOZ_HEADLESS", "1");
+        }
+        return binary;
+    }
+
+    // a copy of the template laid out on disk, which already contains the WebDriver extension
+    synchronized FirefoxProfile localFirefoxProfile() throws IOException {
+        if (this == DEFAULT) {
+            return firefoxProfile();
+        }
+        if (firefoxTemplate == null) {
+            FirefoxProfile template = firefoxProfile();
+            template.addExtension(FirefoxDriver.class, "webdriver.xpi");
+            firefoxTemplate = template.layoutOnDisk();
+        }
+        FirefoxProfile profile = new FirefoxProfile(firefoxTemplate);
+        profile.setEnableNativeEvents(true);
+        // the extension is in the copied template, so the driver must not unpack it again
+        profile.addExtension("webdriver", new Extension() {
+            public void writeTo(final File parentDir) {
+            }
+        });
+        return profile;
+    }
+
+    // the profile serialized once, as it is sent to the remote server with every new session
+    synchronized Object remoteFirefoxProfile() throws IOException {
+        if (this == DEFAULT) {
+            return firefoxProfile();
+        }
+        if (firefoxRemoteProfile == null) {
+            firefoxRemoteProfile = firefoxProfile().toJson();
+        }
+        return firefoxRemoteProfile;
+    }
+
+    private FirefoxProfile firefoxProfile() {
+        FirefoxProfile profile = new FirefoxProfile();
+        profile.setEnableNativeEvents(true);
+        if (this == DEFAULT) {
+            return profile;
+        }
+        profile.setPreference("browser.shell.checkDefaultBrowser", false);
+        profile.setPreference("browser.startup.homepage_override.mstone", "ignore");
+        profile.setPreference("app.update.enabled", false);
+        profile.setPreference("extensions.update.enabled", false);
+        if (lightweight) {
+            profile.setPreference("permissions.default.image", 2);
+            profile.setPreference("layers.acceleration.disabled", true);
+            // only the extensions of the profile itself, that is the WebDriver extension
+            profile.setPreference("extensions.enabledScopes", 1);
+        }
+        if (eager) {
+            profile.setPreference("webdriver.load.strategy", "unstable");
+        }
+        return profile;
+    }
+}
@@ -0,0 +1,74 @@
+package org.robotframework.webdriverlibrary;
+
+import org.openqa.selenium.By;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+
+// resolves the locator strategy names used in the keywords to By objects without reflection
+final class Locators {
+
+    enum Strategy {
+        ID("id") {
+            By create(final String e) { return By.id(e); }
+        },
+        NAME("name") {
+            By create(final String e) { return By.name(e); }
+        },
+        XPATH("xpath") {
+            By create(final String e) { return By.xpath(e); }
+        },
+        CLASS_NAME("className") {
+            By create(final String e) { return By.className(e); }
+        },
+        LINK_TEXT("linkText") {
+            By create(final String e) { return By.linkText(e); }
+        },
+        PARTIAL_LINK_TEXT("partialLinkText") {
+            By create(final String e) { return By.partialLinkText(e); }
+        },
+        TAG_NAME("tagName") {
+            By create(final String e) { return By.tagName(e); }
+        },
+        CSS_SELECTOR("cssSelector") {
+            By create(final String e) { return By.cssSelector(e); }
+        };
+
+        private final String keywordName;
+
+        Strategy(final String keywordName) {
+            this.keywordName = keywordName;
+        }
+
+        String keywordName() {
+            return keywordName;
+        }
+
+        abstract By create(String expression);
+    }
+
+    private static final Map<String, Strategy> STRATEGIES = new LinkedHashMap<String, Strategy>();
+
+    static {
+        for (Strategy s : Strategy.values()) {
+            STRATEGIES.put(s.keywordName(), s);
+        }
+    }
+
+    private Locators() {
+    }
+
+    static Strategy strategy(final String by) {
+        Strategy s = STRATEGIES.get(by);
+        if (s == null) {
+            throw new IllegalArgumentException(String.format("Unknown locator strategy '%s', use one of: %s", by, STRATEGIES.keySet()));
+        }
+        return s;
+    }
+
+    // a new By for each call, as creating one costs less than a shared cache lookup
+    static By get(final String by, final String expression) {
+        return strategy(by).create(expression);
+    }
+}
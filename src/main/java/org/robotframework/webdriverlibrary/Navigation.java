@@ -0,0 +1,101 @@
+package org.robotframework.webdriverlibrary;
+
+import org.openqa.selenium.JavascriptExecutor;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.support.ui.ExpectedCondition;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+
+// navigation with a page-load strategy chosen per call, and the Navigation Timing and Resource
+// Timing data of the page. The driver's own page-load strategy is fixed when the browser starts,
+// so the eager and none strategies navigate by setting the location from a script and the eager
+// one then polls the readyState of the new document. The old document is marked before leaving
+// it, so that its readyState is not mistaken for the one of the new page.
+final class Navigation {
+
+    enum Strategy {
+        NORMAL, EAGER, NONE;
+
+        static Strategy named(final String name) {
+            try {
+                return valueOf(name.trim().toUpperCase(Locale.ENGLISH));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Unknown page-load strategy '" + name + "', use normal, eager or none");
+            }
+        }
+    }
+
+    private static final String START =
+          "window.wdlLeaving = true;"
+        + "var url = arguments[0];"
+        + "window.setTimeout(function() { window.location.href = url; }, 0);";
+
+    private static final String READY_STATE = "return window.wdlLeaving ? 'leaving' : document.readyState;";
+
+    private static final String TIMING =
+          "var p = window.performance;"
+        + "if (!p || !p.timing) { return null; }"
+        + "var t = p.timing, s = t.navigationStart;"
+        + "var at = function(v) { return v > 0 ? v - s : -1; };"
+        + "return {url: window.location.href,"
+        + "  redirect: t.redirectEnd - t.redirectStart,"
+        + "  dns: t.domainLookupEnd - t.domainLookupStart,"
+        + "  connect: t.connectEnd - t.connectStart,"
+        + "  firstByte: at(t.responseStart),"
+        + "  response: at(t.responseEnd),"
+        + "  domInteractive: at(t.domInteractive),"
+        + "  domContentLoaded: at(t.domContentLoadedEventEnd),"
+        + "  load: at(t.loadEventEnd),"
+        + "  resources: p.getEntriesByType ? p.getEntriesByType('resource').length : -1};";
+
+    // arguments: the count of resources returned, slowest first
+    private static final String RESOURCES =
+          "var p = window.performance, r = [];"
+        + "var list = p && p.getEntriesByType ? p.getEntriesByType('resource') : [];"
+        + "for (var i = 0; i < list.length; i++) {"
+        + "  var e = list[i];"
+        + "  r.push({name: e.name, type: e.initiatorType, start: Math.round(e.startTime),"
+        + "          duration: Math.round(e.duration), size: e.transferSize || 0});"
+        + "}"
+        + "r.sort(function(a, b) { return b.duration - a.duration; });"
+        + "return r.slice(0, arguments[0]);";
+
+    private Navigation() {
+    }
+
+    // starts loading the URL without waiting for it
+    static void start(final WebDriver d, final String url) {
+        ((JavascriptExecutor) d).executeScript(START, url);
+    }
+
+    // the new document has been parsed, its subresources may still be loading
+    static ExpectedCondition<Boolean> interactive() {
+        return new ExpectedCondition<Boolean>() {
+            String state;
+            @Override
+            public Boolean apply(WebDriver d) {
+                state = String.valueOf(((JavascriptExecutor) d).executeScript(READY_STATE));
+                return state.equals("interactive") || state.equals("complete");
+            }
+
+            @Override
+            public String toString() {
+                return String.format("the new page to become interactive, its state was ('%s')", state);
+            }
+        };
+    }
+
+    static Map<?, ?> timing(final WebDriver d) {
+        Object timing = ((JavascriptExecutor) d).executeScript(TIMING);
+        return timing instanceof Map ? (Map<?, ?>) timing : Collections.emptyMap();
+    }
+
+    static List<?> resources(final WebDriver d, final int max) {
+        Object resources = ((JavascriptExecutor) d).executeScript(RESOURCES, max);
+        return resources instanceof List ? (List<?>) resources : Collections.emptyList();
+    }
+}
@@ -0,0 +1,60 @@
+package org.robotframework.webdriverlibrary;
+
+import org.openqa.selenium.JavascriptExecutor;
+
+
+// waits inside the browser until the page is idle: the document is loaded, there are no pending
+// XMLHttpRequests or fetches and the DOM has not changed for a quiet window. The hooks counting the
+// requests and mutations are injected on the first call on each page, so requests started before
+// that are covered only by the ready state. The whole wait is one asynchronous script call.
+final class PageSettle {
+
+    private static final String SCRIPT =
+          "var quiet = arguments[0], max = arguments[1], done = arguments[arguments.length - 1];"
+        + "var w = window, d = document;"
+        + "if (!w.__wdlSettle) {"
+        + "  var t = w.__wdlSettle = {pending: 0, last: new Date().getTime()};"
+        + "  var touch = function() { t.last = new Date().getTime(); };"
+        + "  if (w.MutationObserver) {"
+        + "    new MutationObserver(touch).observe(d, {childList: true, subtree: true, attributes: true, characterData: true});"
+        + "  }"
+        + "  if (w.XMLHttpRequest) {"
+        + "    var send = XMLHttpRequest.prototype.send;"
+        + "    XMLHttpRequest.prototype.send = function() {"
+        + "      var finished = false, finish = function() { if (!finished) { finished = true; t.pending--; touch(); } };"
+        + "      t.pending++;"
+        + "      this.addEventListener('loadend', finish);"
+        + "      try { return send.apply(this, arguments); } catch (e) { finish(); throw e; }"
+        + "    };"
+        + "  }"
+        + "  if (w.fetch) {"
+        + "    var fetch = w.fetch;"
+        + "    w.fetch = function() {"
+        + "      var finish = function() { t.pending--; touch(); };"
+        + "      t.pending++;"
+        + "      try {"
+        + "        return fetch.apply(this, arguments).then(function(r) { finish(); return r; }, function(e) { finish(); throw e; });"
+        + "      } catch (e) { finish(); throw e; }"
+        + "    };"
+        + "  }"
+        + "}"
+        + "var s = w.__wdlSettle, start = new Date().getTime();"
+        + "(function check() {"
+        + "  var now = new Date().getTime();"
+        + "  if (d.readyState == 'complete' && s.pending <= 0 && now - s.last >= quiet) { done(true); }"
+        + "  else if (now - start >= max) { done(false); }"
+        + "  else { setTimeout(check, Math.min(25, quiet)); }"
+        + "})();";
+
+    // extra time given to the script timeout over the maximum wait, to get the script result instead of a timeout
+    private static final long SCRIPT_TIMEOUT_MARGIN = 5000;
+
+    private PageSettle() {
+    }
+
+    // returns true if the page became idle within maxMillis, false if the maximum time was reached
+    static boolean await(final BrowserSession session, final long quietMillis, final long maxMillis) {
+        session.ensureScriptTimeout(maxMillis + SCRIPT_TIMEOUT_MARGIN);
+        return Boolean.TRUE.equals(((JavascriptExecutor) session.getDriver()).executeAsyncScript(SCRIPT, quietMillis, maxMillis));
+    }
+}
@@ -0,0 +1,286 @@
+package org.robotframework.webdriverlibrary;
+
+import org.openqa.selenium.Capabilities;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.remote.CommandExecutor;
+import org.openqa.selenium.remote.HttpCommandExecutor;
+import org.openqa.selenium.remote.RemoteWebDriver;
+
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+// places the remote browsers of an OpenBrowser given several Selenium servers on the least loaded
+// one. The load of a server is the count of its open and starting sessions weighted by how long
+// it has recently taken to start a session, so that slow servers get fewer sessions. A server that
+// fails or times out starting a session is skipped for a cooldown, which doubles with each failure
+// in a row, and the next server is tried. Sessions are counted until their driver is quit.
+final class RemoteScheduler {
+
+    static final class Settings {
+        // milliseconds a server may take to start a session, 0 waits as long as the transport does
+        long startTimeout = 0;
+        long cooldown = 30000;
+
+        // applies name=value options, e.g. startTimeout=60000
+        void set(final String option) {
+            int eq = option.indexOf('=');
+            if (eq < 0) {
+                throw new IllegalArgumentException("Scheduling options are given as name=value, got '" + option + "'");
+            }
+            String name = option.substring(0, eq).trim();
+            long value = Long.parseLong(option.substring(eq + 1).trim());
+            if (value < 0) {
+                throw new IllegalArgumentException(name + " can not be negative");
+            }
+            if (name.equals("startTimeout")) {
+                startTimeout = value;
+            } else if (name.equals("cooldown")) {
+                cooldown = value;
+            } else {
+                throw new IllegalArgumentException("Unknown scheduling option '" + name + "', use startTimeout or cooldown");
+            }
+        }
+    }
+
+    // added to the start time of every server, so that servers with few samples compare mostly by their session count
+    private static final double BASE_MILLIS = 100;
+    private static final int MAX_COOLDOWN_DOUBLINGS = 4;
+
+    private static class Node {
+        final String url;
+        final AtomicInteger open = new AtomicInteger();
+        int starting;
+        long started;
+        long failures;
+        int failuresInRow;
+        double meanStartMillis;
+        long cooldownUntil;
+
+        Node(final String url) {
+            this.url = url;
+        }
+
+        double load() {
+            return (open.get() + starting + 1) * (meanStartMillis + BASE_MILLIS);
+        }
+
+        boolean coolingDown(final long now) {
+            return failuresInRow > 0 && cooldownUntil - now > 0;
+        }
+    }
+
+    // the remote driver of a scheduled session, which gives its place on the server back when quit
+    private static class ScheduledDriver extends RemoteWebDriver {
+        private final Node node;
+        private final AtomicBoolean counted = new AtomicBoolean();
+
+        ScheduledDriver(final CommandExecutor executor, final Capabilities capabilities, final Node node) {
+            super(executor, capabilities);
+            this.node = node;
+        }
+
+        void count() {
+            counted.set(true);
+            node.open.incrementAndGet();
+        }
+
+        @Override
+        public void quit() {
+            try {
+                super.quit();
+            } finally {
+                if (counted.compareAndSet(true, false)) {
+                    node.open.decrementAndGet();
+                }
+            }
+        }
+    }
+
+    private static final ConcurrentHashMap<String, Node> NODES = new ConcurrentHashMap<String, Node>();
+    private static final ExecutorService STARTERS = Executors.newCachedThreadPool(new ThreadFactory() {
+        private final AtomicInteger count = new AtomicInteger();
+        public Thread newThread(final Runnable r) {
+            Thread t = new Thread(r, "remote-session-starter-" + count.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        }
+    });
+    private static volatile Settings settings = new Settings();
+
+    private RemoteScheduler() {
+    }
+
+    static void configure(final Settings newSettings) {
+        settings = newSettings;
+    }
+
+    static Settings settings() {
+        Settings copy = new Settings();
+        copy.startTimeout = settings.startTimeout;
+        copy.cooldown = settings.cooldown;
+        return copy;
+    }
+
+    // starts a session on the least loaded of the servers, trying the others in turn when it fails
+    static WebDriver start(final List<String> urls, final Capabilities capabilities, final boolean seleniumTransport) throws Exception {
+        Settings s = settings;
+        Set<Node> tried = new HashSet<Node>();
+        List<String> failures = new ArrayList<String>();
+        for (Node node = pick(urls, tried); node != null; node = pick(urls, tried)) {
+            long start = System.nanoTime();
+            Future<ScheduledDriver> future = STARTERS.submit(starter(node, capabilities, seleniumTransport));
+            try {
+                ScheduledDriver driver = s.startTimeout > 0 ? future.get(s.startTimeout, TimeUnit.MILLISECONDS) : future.get();
+                driver.count();
+                started(node, System.nanoTime() - start);
+                return driver;
+            } catch (TimeoutException e) {
+                quitWhenStarted(future);
+                failed(node, s);
+                failures.add(node.url + ": no session within " + s.startTimeout + " ms");
+            } catch (ExecutionException e) {
+                failed(node, s);
+                failures.add(node.url + ": " + e.getCause());
+                if (urls.size() == 1 && e.getCause() instanceof Exception) {
+                    // with one server the error is the same as without scheduling
+                    throw (Exception) e.getCause();
+                }
+            } catch (InterruptedException e) {
+                quitWhenStarted(future);
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while starting a session on " + node.url, e);
+            } finally {
+                done(node);
+            }
+        }
+        throw new IllegalStateException(String.format("Could not start a session on any of the %d servers:\n%s",
+                                                      urls.size(), join(failures)));
+    }
+
+    // one line per server
+    static synchronized String stats() {
+        StringBuilder sb = new StringBuilder();
+        long now = System.nanoTime();
+        for (Node node : NODES.values()) {
+            sb.append(sb.length() == 0 ? "" : "\n").append(String.format(Locale.ENGLISH,
+                "%s sessions=%d starting=%d started=%d failures=%d meanStartMs=%.1f cooldownMs=%d",
+                node.url, node.open.get(), node.starting, node.started, node.failures, node.meanStartMillis,
+                node.coolingDown(now) ? TimeUnit.NANOSECONDS.toMillis(node.cooldownUntil - now) : 0));
+        }
+        return sb.toString();
+    }
+
+    // zeroes the counters and start times and ends the cooldowns, the open sessions stay counted
+    static synchronized void resetStats() {
+        for (Node node : NODES.values()) {
+            node.started = 0;
+            node.failures = 0;
+            node.failuresInRow = 0;
+            node.meanStartMillis = 0;
+        }
+    }
+
+    // the available server with the lowest load, or the one whose cooldown ends first when all are cooling down
+    private static synchronized Node pick(final List<String> urls, final Set<Node> tried) {
+        long now = System.nanoTime();
+        Node best = null;
+        for (String url : urls) {
+            Node node = node(url);
+            if (tried.contains(node)) {
+                continue;
+            }
+            if (best == null || better(node, best, now)) {
+                best = node;
+            }
+        }
+        if (best != null) {
+            tried.add(best);
+            best.starting++;
+        }
+        return best;
+    }
+
+    private static boolean better(final Node a, final Node b, final long now) {
+        boolean aCooling = a.coolingDown(now);
+        boolean bCooling = b.coolingDown(now);
+        if (aCooling != bCooling) {
+            return bCooling;
+        }
+        return aCooling ? a.cooldownUntil - b.cooldownUntil < 0 : a.load() < b.load();
+    }
+
+    private static Node node(final String url) {
+        Node node = NODES.get(url);
+        if (node == null) {
+            NODES.putIfAbsent(url, new Node(url));
+            node = NODES.get(url);
+        }
+        return node;
+    }
+
+    // the start on the node has ended, whether it succeeded, failed or was given up
+    private static synchronized void done(final Node node) {
+        node.starting--;
+    }
+
+    private static synchronized void started(final Node node, final long nanos) {
+        double millis = nanos / 1e6;
+        node.started++;
+        node.failuresInRow = 0;
+        node.meanStartMillis = node.meanStartMillis == 0 ? millis : 0.8 * node.meanStartMillis + 0.2 * millis;
+    }
+
+    private static synchronized void failed(final Node node, final Settings s) {
+        node.failures++;
+        node.failuresInRow++;
+        long cooldown = s.cooldown << Math.min(node.failuresInRow - 1, MAX_COOLDOWN_DOUBLINGS);
+        node.cooldownUntil = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(cooldown);
+    }
+
+    private static Callable<ScheduledDriver> starter(final Node node, final Capabilities capabilities, final boolean seleniumTransport) {
+        return new Callable<ScheduledDriver>() {
+            public ScheduledDriver call() throws Exception {
+                URL url = new URL(node.url);
+                CommandExecutor executor = seleniumTransport ? new HttpCommandExecutor(url) : new RemoteTransport(url);
+                return new ScheduledDriver(executor, capabilities, node);
+            }
+        };
+    }
+
+    // a session that starts after its timeout is quit, so that it does not hold a place on the server
+    private static void quitWhenStarted(final Future<ScheduledDriver> future) {
+        STARTERS.execute(new Runnable() {
+            public void run() {
+                try {
+                    future.get().quit();
+                } catch (Exception e) {
+                    // the session did not start
+                }
+            }
+        });
+    }
+
+    private static String join(final List<String> lines) {
+        StringBuilder sb = new StringBuilder();
+        for (String line : lines) {
+            sb.append(sb.length() == 0 ? "" : "\n").append(line);
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,294 @@
+package org.robotframework.webdriverlibrary;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpHost;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpDelete;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.config.SocketConfig;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.conn.socket.PlainConnectionSocketFactory;
+import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
+import org.apache.http.conn.ssl.SSLContexts;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.impl.client.LaxRedirectStrategy;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.pool.PoolStats;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.util.EntityUtils;
+
+import org.openqa.selenium.remote.Command;
+import org.openqa.selenium.remote.CommandExecutor;
+import org.openqa.selenium.remote.DriverCommand;
+import org.openqa.selenium.remote.Response;
+import org.openqa.selenium.remote.SessionNotFoundException;
+import org.openqa.selenium.remote.http.HttpMethod;
+import org.openqa.selenium.remote.http.HttpRequest;
+import org.openqa.selenium.remote.http.HttpResponse;
+import org.openqa.selenium.remote.http.JsonHttpCommandCodec;
+import org.openqa.selenium.remote.http.JsonHttpResponseCodec;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.URI;
+import java.net.URL;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+// command executor of RemoteWebDriver that sends the commands of all remote browsers over one
+// bounded pool of keep-alive connections. Unlike the default HttpCommandExecutor it has
+// configurable connect and read timeouts, can turn off response compression and retries the
+// idempotent (GET and DELETE) commands on I/O errors. The counters show the connection churn.
+final class RemoteTransport implements CommandExecutor {
+
+    static final class Settings {
+        int maxConnections = 64;
+        int maxConnectionsPerHost = 16;
+        int connectTimeout = 10000;
+        int readTimeout = 600000;
+        boolean compression = true;
+        int retries = 2;
+
+        // applies name=value options, e.g. readTimeout=30000
+        void set(final String option) {
+            int eq = option.indexOf('=');
+            if (eq < 0) {
+                throw new IllegalArgumentException("Transport options are given as name=value, got '" + option + "'");
+            }
+            String name = option.substring(0, eq).trim();
+            String value = option.substring(eq + 1).trim();
+            if (name.equals("maxConnections")) {
+                maxConnections = positive(name, value);
+            } else if (name.equals("maxConnectionsPerHost")) {
+                maxConnectionsPerHost = positive(name, value);
+            } else if (name.equals("connectTimeout")) {
+                connectTimeout = Integer.parseInt(value);
+            } else if (name.equals("readTimeout")) {
+                readTimeout = Integer.parseInt(value);
+            } else if (name.equals("compression")) {
+                compression = Boolean.parseBoolean(value);
+            } else if (name.equals("retries")) {
+                retries = Integer.parseInt(value);
+            } else {
+                throw new IllegalArgumentException("Unknown transport option '" + name + "', use one of: maxConnections, "
+                                                   + "maxConnectionsPerHost, connectTimeout, readTimeout, compression, retries");
+            }
+        }
+
+        private static int positive(final String name, final String value) {
+            int n = Integer.parseInt(value);
+            if (n < 1) {
+                throw new IllegalArgumentException(name + " must be positive");
+            }
+            return n;
+        }
+    }
+
+    // the client of the current settings, shared by all the executors
+    private static final class Client {
+        final Settings settings;
+        final PoolingHttpClientConnectionManager connections;
+        final CloseableHttpClient http;
+
+        Client(final Settings settings) {
+            this.settings = settings;
+            connections = new PoolingHttpClientConnectionManager(RegistryBuilder.<ConnectionSocketFactory>create()
+                .register("http", new CountingPlainSocketFactory())
+                .register("https", new CountingSslSocketFactory())
+                .build());
+            connections.setMaxTotal(settings.maxConnections);
+            connections.setDefaultMaxPerRoute(settings.maxConnectionsPerHost);
+            connections.setDefaultSocketConfig(SocketConfig.custom()
+                .setTcpNoDelay(true)
+                .setSoKeepAlive(true)
+                .setSoTimeout(settings.readTimeout)
+                .build());
+            HttpClientBuilder builder = HttpClientBuilder.create()
+                .setConnectionManager(connections)
+                .setRedirectStrategy(new LaxRedirectStrategy())
+                .disableAutomaticRetries()
+                .setDefaultRequestConfig(RequestConfig.custom()
+                    .setConnectTimeout(settings.connectTimeout)
+                    .setConnectionRequestTimeout(settings.connectTimeout)
+                    .setSocketTimeout(settings.readTimeout)
+                    .setStaleConnectionCheckEnabled(true)
+                    .build());
+            if (!settings.compression) {
+                builder.disableContentCompression();
+            }
+            http = builder.build();
+        }
+    }
+
+    private static class CountingPlainSocketFactory extends PlainConnectionSocketFactory {
+        @Override
+        public Socket connectSocket(final int timeout, final Socket socket, final HttpHost host, final InetSocketAddress remote,
+                                    final InetSocketAddress local, final HttpContext context) throws IOException {
+            OPENED.incrementAndGet();
+            return super.connectSocket(timeout, socket, host, remote, local, context);
+        }
+    }
+
+    private static class CountingSslSocketFactory extends SSLConnectionSocketFactory {
+        CountingSslSocketFactory() {
+            super(SSLContexts.createDefault());
+        }
+
+        @Override
+        public Socket connectSocket(final int timeout, final Socket socket, final HttpHost host, final InetSocketAddress remote,
+                                    final InetSocketAddress local, final HttpContext context) throws IOException {
+            OPENED.incrementAndGet();
+            return super.connectSocket(timeout, socket, host, remote, local, context);
+        }
+    }
+
+    private static final AtomicLong OPENED = new AtomicLong();
+    private static final AtomicLong COMMANDS = new AtomicLong();
+    private static final AtomicLong RETRIES = new AtomicLong();
+    private static final AtomicLong FAILURES = new AtomicLong();
+    private static final AtomicLong NANOS = new AtomicLong();
+    private static volatile Client client = new Client(new Settings());
+
+    private final URL remoteServer;
+    private final JsonHttpCommandCodec commandCodec = new JsonHttpCommandCodec();
+    private final JsonHttpResponseCodec responseCodec = new JsonHttpResponseCodec();
+
+    RemoteTransport(final URL remoteServer) {
+        this.remoteServer = remoteServer;
+    }
+
+    // the new settings are used by all remote browsers from their next command on
+    static synchronized void configure(final Settings settings) {
+        Client old = client;
+        client = new Client(settings);
+        // connections in use are closed when they are released, as the old pool is no longer used
+        old.connections.closeIdleConnections(0, TimeUnit.MILLISECONDS);
+    }
+
+    static Settings settings() {
+        Settings current = client.settings;
+        Settings copy = new Settings();
+        copy.maxConnections = current.maxConnections;
+        copy.maxConnectionsPerHost = current.maxConnectionsPerHost;
+        copy.connectTimeout = current.connectTimeout;
+        copy.readTimeout = current.readTimeout;
+        copy.compression = current.compression;
+        copy.retries = current.retries;
+        return copy;
+    }
+
+    static String stats() {
+        PoolStats pool = client.connections.getTotalStats();
+        long commands = COMMANDS.get();
+        return String.format(Locale.ENGLISH, "commands=%d retries=%d failures=%d connectionsOpened=%d leased=%d idle=%d pending=%d meanMs=%.3f",
+                             commands, RETRIES.get(), FAILURES.get(), OPENED.get(), pool.getLeased(), pool.getAvailable(),
+                             pool.getPending(), commands == 0 ? 0.0 : NANOS.get() / 1e6 / commands);
+    }
+
+    static void resetStats() {
+        OPENED.set(0);
+        COMMANDS.set(0);
+        RETRIES.set(0);
+        FAILURES.set(0);
+        NANOS.set(0);
+    }
+
+    public Response execute(final Command command) throws IOException {
+        if (command.getSessionId() == null) {
+            if (DriverCommand.QUIT.equals(command.getName())) {
+                return new Response();
+            }
+            if (!DriverCommand.NEW_SESSION.equals(command.getName()) && !DriverCommand.GET_ALL_SESSIONS.equals(command.getName())) {
+                throw new SessionNotFoundException("Session ID is null. Using WebDriver after calling quit()?");
+            }
+        }
+        HttpRequest request = commandCodec.encode(command);
+        Client c = client;
+        boolean idempotent = request.getMethod() != HttpMethod.POST;
+        long start = System.nanoTime();
+        COMMANDS.incrementAndGet();
+        try {
+            for (int attempt = 0; ; attempt++) {
+                try {
+                    return send(c, request);
+                } catch (IOException e) {
+                    if (!idempotent || attempt >= c.settings.retries) {
+                        FAILURES.incrementAndGet();
+                        throw e;
+                    }
+                    RETRIES.incrementAndGet();
+                }
+            }
+        } finally {
+            NANOS.addAndGet(System.nanoTime() - start);
+        }
+    }
+
+    private Response send(final Client c, final HttpRequest request) throws IOException {
+        String uri = remoteServer.toExternalForm().replaceAll("/$", "") + request.getUri();
+        HttpRequestBase method;
+        if (request.getMethod() == HttpMethod.GET) {
+            method = new HttpGet(uri);
+        } else if (request.getMethod() == HttpMethod.DELETE) {
+            method = new HttpDelete(uri);
+        } else {
+            HttpPost post = new HttpPost(uri);
+            post.setEntity(new ByteArrayEntity(request.getContent()));
+            method = post;
+        }
+        for (Object name : request.getHeaderNames()) {
+            if (!"Content-Length".equalsIgnoreCase((String) name)) {
+                for (Object value : request.getHeaders((String) name)) {
+                    method.addHeader((String) name, (String) value);
+                }
+            }
+        }
+        HttpClientContext context = HttpClientContext.create();
+        CloseableHttpResponse response = c.http.execute(method, context);
+        try {
+            HttpResponse decoded = new HttpResponse();
+            decoded.setStatus(response.getStatusLine().getStatusCode());
+            for (Header header : response.getAllHeaders()) {
+                decoded.addHeader(header.getName(), header.getValue());
+            }
+            HttpEntity entity = response.getEntity();
+            if (entity != null) {
+                decoded.setContent(EntityUtils.toByteArray(entity));
+            }
+            Response result = responseCodec.decode(decoded);
+            if (result.getSessionId() == null) {
+                // servers answering newSession with a redirect give the session id only in the location
+                result.setSessionId(sessionIdOf(context.getRedirectLocations()));
+            }
+            return result;
+        } finally {
+            response.close();
+        }
+    }
+
+    private static String sessionIdOf(final List<URI> redirects) {
+        if (redirects == null || redirects.isEmpty()) {
+            return null;
+        }
+        String path = redirects.get(redirects.size() - 1).getPath();
+        int i = path.indexOf("/session/");
+        if (i < 0) {
+            return null;
+        }
+        String id = path.substring(i + "/session/".length());
+        int slash = id.indexOf('/');
+        return slash < 0 ? id : id.substring(0, slash);
+    }
+}
@@ -0,0 +1,15 @@
+package org.robotframework.webdriverlibrary;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+
+// marks the keywords that configure the library or manage the sessions, which run once in the
+// calling thread instead of on every browser of an OpenBrowsers group. Read at build time by
+// KeywordIndexProcessor, see KeywordIndex.runsOnce.
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+public @interface RunOnce {
+}
@@ -0,0 +1,165 @@
+package org.robotframework.webdriverlibrary;
+
+import javax.imageio.ImageIO;
+
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+// writes captured screenshots to disk in a background thread. The queue is bounded, when it is full
+// the capturing thread writes the screenshot itself. The writer thread is not a daemon, so pending
+// screenshots are written before the JVM exits, and it stops when it has been idle for a while.
+class ScreenshotWriter {
+
+    private final ThreadPoolExecutor executor;
+    private final AtomicInteger sequence = new AtomicInteger();
+    // screenshots queued or being written, flush waits on this until it is zero
+    private final AtomicInteger pending = new AtomicInteger();
+    // the screenshots that could not be written, reported by the next write or flush
+    private final List<String> failures = new ArrayList<String>();
+    private volatile String format = "png";
+    private volatile double scale = 1.0;
+
+    ScreenshotWriter(final int queueSize) {
+        executor = new ThreadPoolExecutor(1, 1, 1, TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>(queueSize),
+            new ThreadFactory() {
+                public Thread newThread(final Runnable r) {
+                    return new Thread(r, "screenshot-writer");
+                }
+            }, new ThreadPoolExecutor.CallerRunsPolicy());
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    // format is png or jpg, scale below 1.0 downscales the images before writing
+    void setOptions(final String format, final double scale) {
+        if (!format.equals("png") && !format.equals("jpg")) {
+            throw new IllegalArgumentException("Screenshot format must be png or jpg, got " + format);
+        }
+        if (scale <= 0.0 || scale > 1.0) {
+            throw new IllegalArgumentException("Screenshot scale must be greater than 0 and at most 1, got " + scale);
+        }
+        this.format = format;
+        this.scale = scale;
+    }
+
+    // reserves a unique file name in the directory and queues the png bytes to be written there.
+    // Throws first if screenshots queued earlier could not be written.
+    File write(final File dir, final byte[] png) throws IOException {
+        reportFailures();
+        if (!dir.isDirectory() && !dir.mkdirs() && !dir.isDirectory()) {
+            throw new IOException("Could not create screenshot directory " + dir);
+        }
+        final String fmt = format;
+        final double scl = scale;
+        String stamp = new SimpleDateFormat("MMddHHmmssSSS").format(new Date());
+        File file = new File(dir, stamp + "." + fmt);
+        while (!file.createNewFile()) {
+            file = new File(dir, stamp + "-" + sequence.incrementAndGet() + "." + fmt);
+        }
+        final File target = file;
+        pending.incrementAndGet();
+        executor.execute(new Runnable() {
+            public void run() {
+                try {
+                    writeFile(target, encode(png, fmt, scl));
+                } catch (IOException e) {
+                    failed(target, e);
+                } catch (RuntimeException e) {
+                    failed(target, e);
+                } finally {
+                    if (pending.decrementAndGet() == 0) {
+                        synchronized (pending) {
+                            pending.notifyAll();
+                        }
+                    }
+                }
+            }
+        });
+        return target;
+    }
+
+    // waits until the screenshots queued so far have been written, throws if any of them could not be
+    void flush() throws InterruptedException, IOException {
+        synchronized (pending) {
+            while (pending.get() > 0) {
+                pending.wait();
+            }
+        }
+        reportFailures();
+    }
+
+    // the reserved file is removed, so that no empty screenshots are left behind
+    private void failed(final File target, final Exception e) {
+        target.delete();
+        synchronized (failures) {
+            failures.add(target.getName() + ": " + e);
+        }
+    }
+
+    private void reportFailures() throws IOException {
+        StringBuilder sb;
+        synchronized (failures) {
+            if (failures.isEmpty()) {
+                return;
+            }
+            sb = new StringBuilder("Writing failed for " + failures.size() + " screenshot(s):");
+            for (String failure : failures) {
+                sb.append("\n").append(failure);
+            }
+            failures.clear();
+        }
+        throw new IOException(sb.toString());
+    }
+
+    private static byte[] encode(final byte[] png, final String format, final double scale) throws IOException {
+        if (format.equals("png") && scale == 1.0) {
+            return png;
+        }
+        BufferedImage src = ImageIO.read(new ByteArrayInputStream(png));
+        if (src == null) {
+            throw new IOException("The screenshot is not an image ImageIO can read");
+        }
+        int w = Math.max(1, (int) (src.getWidth() * scale));
+        int h = Math.max(1, (int) (src.getHeight() * scale));
+        BufferedImage dst = new BufferedImage(w, h, format.equals("jpg") ? BufferedImage.TYPE_INT_RGB : BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = dst.createGraphics();
+        try {
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g.drawImage(src, 0, 0, w, h, null);
+        } finally {
+            g.dispose();
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream(png.length);
+        ImageIO.write(dst, format, out);
+        return out.toByteArray();
+    }
+
+    private static void writeFile(final File file, final byte[] data) throws IOException {
+        FileChannel channel = new FileOutputStream(file).getChannel();
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(data);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        } finally {
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package org.robotframework.webdriverlibrary;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+
+// keeps the open browser sessions by alias and the current session of each calling thread,
+// so that several workers can drive their own browsers concurrently in one JVM
+class SessionRegistry {
+
+    private final ConcurrentHashMap<String, BrowserSession> sessions = new ConcurrentHashMap<String, BrowserSession>();
+    private final ThreadLocal<BrowserSession> current = new ThreadLocal<BrowserSession>();
+    // set once the thread has opened, switched to or been given a session of its own
+    private final ThreadLocal<Boolean> bound = new ThreadLocal<Boolean>() {
+        @Override
+        protected Boolean initialValue() {
+            return Boolean.FALSE;
+        }
+    };
+    // used by threads that have never had a session of their own
+    private volatile BrowserSession latest;
+
+    // default alias for sessions opened without an explicit one
+    static String threadAlias() {
+        return "thread-" + Thread.currentThread().getId();
+    }
+
+    // registers the session and makes it the current one of the calling thread,
+    // returns the session previously registered with the same alias or null
+    BrowserSession register(final BrowserSession session) {
+        BrowserSession old = sessions.put(session.getAlias(), session);
+        bind(session);
+        latest = session;
+        return old;
+    }
+
+    BrowserSession switchTo(final String alias) {
+        BrowserSession session = sessions.get(alias);
+        if (session == null) {
+            throw new IllegalArgumentException(String.format("No browser open with alias '%s', open aliases are %s", alias, sessions.keySet()));
+        }
+        bind(session);
+        latest = session;
+        return session;
+    }
+
+    // makes the session the current one of the calling thread only, e.g. of a fan-out worker
+    void use(final BrowserSession session) {
+        bind(session);
+    }
+
+    // a thread that has had a session of its own never falls back to the browser of another thread
+    BrowserSession current() {
+        BrowserSession session = bound.get() ? current.get() : latest;
+        if (session == null || !isRegistered(session)) {
+            throw new IllegalStateException("No browser is open, use the OpenBrowser keyword first");
+        }
+        return session;
+    }
+
+    void remove(final BrowserSession session) {
+        sessions.remove(session.getAlias(), session);
+        if (current.get() == session) {
+            current.remove();
+        }
+        if (latest == session) {
+            latest = null;
+        }
+    }
+
+    List<BrowserSession> all() {
+        return new ArrayList<BrowserSession>(sessions.values());
+    }
+
+    private void bind(final BrowserSession session) {
+        current.set(session);
+        bound.set(Boolean.TRUE);
+    }
+
+    boolean isRegistered(final BrowserSession session) {
+        return sessions.get(session.getAlias()) == session;
+    }
+}
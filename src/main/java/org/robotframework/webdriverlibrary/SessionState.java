@@ -0,0 +1,173 @@
+package org.robotframework.webdriverlibrary;
+
+import org.apache.commons.io.FileUtils;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import org.openqa.selenium.Cookie;
+import org.openqa.selenium.JavascriptExecutor;
+import org.openqa.selenium.WebDriver;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+
+// the cookies, local and session storage and URL of a browser, captured with two commands and
+// restored by adding only the cookies that differ, setting the storage with one script and
+// loading the URL. Saved states can be written to and read from json files.
+final class SessionState {
+
+    private static final String CAPTURE =
+          "var dump = function(name) {"
+        + "  var r = {}, s;"
+        + "  try { s = window[name]; } catch (e) { return r; }"
+        + "  if (!s) { return r; }"
+        + "  for (var i = 0; i < s.length; i++) { var k = s.key(i); r[k] = s.getItem(k); }"
+        + "  return r;"
+        + "};"
+        + "return {url: window.location.href, local: dump('localStorage'), session: dump('sessionStorage')};";
+
+    // arguments: local storage values, session storage values, reset
+    private static final String RESTORE_STORAGE =
+          "var put = function(name, values, reset) {"
+        + "  var s;"
+        + "  try { s = window[name]; } catch (e) { return; }"
+        + "  if (!s) { return; }"
+        + "  if (reset) { s.clear(); }"
+        + "  for (var k in values) { if (values.hasOwnProperty(k)) { s.setItem(k, values[k]); } }"
+        + "};"
+        + "put('localStorage', arguments[0], arguments[2]);"
+        + "put('sessionStorage', arguments[1], arguments[2]);";
+
+    private final String url;
+    private final List<Cookie> cookies;
+    private final Map<String, String> local;
+    private final Map<String, String> session;
+
+    private SessionState(final String url, final List<Cookie> cookies, final Map<String, String> local, final Map<String, String> session) {
+        this.url = url;
+        this.cookies = cookies;
+        this.local = local;
+        this.session = session;
+    }
+
+    static SessionState capture(final WebDriver d) {
+        List<Cookie> cookies = new ArrayList<Cookie>(d.manage().getCookies());
+        Map<?, ?> page = (Map<?, ?>) ((JavascriptExecutor) d).executeScript(CAPTURE);
+        return new SessionState((String) page.get("url"), cookies, strings(page.get("local")), strings(page.get("session")));
+    }
+
+    // with reset the cookies and storage values that are not in the state are removed as well
+    void restore(final WebDriver d, final boolean reset) {
+        if (!sameOrigin(d.getCurrentUrl(), url)) {
+            // cookies and storage can only be set for the page that is open
+            d.get(url);
+        }
+        Set<String> wanted = new HashSet<String>();
+        for (Cookie c : cookies) {
+            wanted.add(key(c));
+        }
+        Set<String> present = new HashSet<String>();
+        for (Cookie c : d.manage().getCookies()) {
+            if (wanted.contains(key(c))) {
+                present.add(key(c));
+            } else if (reset) {
+                d.manage().deleteCookie(c);
+            }
+        }
+        for (Cookie c : cookies) {
+            if (!present.contains(key(c))) {
+                d.manage().addCookie(c);
+            }
+        }
+        ((JavascriptExecutor) d).executeScript(RESTORE_STORAGE, local, session, reset);
+        d.get(url);
+    }
+
+    void save(final File file) throws IOException {
+        try {
+            JSONObject json = new JSONObject();
+            json.put("url", url);
+            JSONArray list = new JSONArray();
+            for (Cookie c : cookies) {
+                JSONObject cookie = new JSONObject();
+                cookie.put("name", c.getName());
+                cookie.put("value", c.getValue());
+                cookie.put("domain", c.getDomain());
+                cookie.put("path", c.getPath());
+                if (c.getExpiry() != null) {
+                    cookie.put("expiry", c.getExpiry().getTime());
+                }
+                cookie.put("secure", c.isSecure());
+                cookie.put("httpOnly", c.isHttpOnly());
+                list.put(cookie);
+            }
+            json.put("cookies", list);
+            json.put("localStorage", local);
+            json.put("sessionStorage", session);
+            FileUtils.writeStringToFile(file, json.toString(2), "UTF-8");
+        } catch (JSONException e) {
+            throw new IOException("Could not write session state to " + file + ": " + e.getMessage());
+        }
+    }
+
+    static SessionState load(final File file) throws IOException {
+        try {
+            JSONObject json = new JSONObject(FileUtils.readFileToString(file, "UTF-8"));
+            List<Cookie> cookies = new ArrayList<Cookie>();
+            JSONArray list = json.getJSONArray("cookies");
+            for (int i = 0; i < list.length(); i++) {
+                JSONObject c = list.getJSONObject(i);
+                cookies.add(new Cookie(c.getString("name"), c.getString("value"), c.optString("domain", null),
+                                       c.optString("path", "/"), c.has("expiry") ? new Date(c.getLong("expiry")) : null,
+                                       c.optBoolean("secure"), c.optBoolean("httpOnly")));
+            }
+            return new SessionState(json.getString("url"), cookies, strings(json.getJSONObject("localStorage")),
+                                    strings(json.getJSONObject("sessionStorage")));
+        } catch (JSONException e) {
+            throw new IOException("Could not read session state from " + file + ": " + e.getMessage());
+        }
+    }
+
+    private static String key(final Cookie c) {
+        return c.getName() + '\n' + c.getDomain() + '\n' + c.getPath() + '\n' + c.getValue();
+    }
+
+    private static boolean sameOrigin(final String a, final String b) {
+        try {
+            URI x = new URI(a);
+            URI y = new URI(b);
+            return x.getScheme() != null && x.getScheme().equalsIgnoreCase(y.getScheme())
+                && x.getHost() != null && x.getHost().equalsIgnoreCase(y.getHost()) && x.getPort() == y.getPort();
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    private static Map<String, String> strings(final Object values) {
+        Map<String, String> map = new LinkedHashMap<String, String>();
+        if (values instanceof Map) {
+            for (Map.Entry<?, ?> e : ((Map<?, ?>) values).entrySet()) {
+                map.put(String.valueOf(e.getKey()), String.valueOf(e.getValue()));
+            }
+        } else if (values instanceof JSONObject) {
+            JSONObject json = (JSONObject) values;
+            for (Iterator<?> keys = json.keys(); keys.hasNext(); ) {
+                String key = (String) keys.next();
+                map.put(key, json.optString(key));
+            }
+        }
+        return map;
+    }
+}
@@ -0,0 +1,157 @@
+package org.robotframework.webdriverlibrary;
+
+import org.openqa.selenium.NotFoundException;
+import org.openqa.selenium.TimeoutException;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.support.ui.ExpectedCondition;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+
+// polls an ExpectedCondition until it returns a non-null, non-false value, like WebDriverWait,
+// but is created once and shared by all keywords. The polling interval is either fixed,
+// grows exponentially, or adapts to the observed time it takes for conditions to become true.
+class WaitEngine {
+
+    enum Polling { FIXED, EXPONENTIAL, ADAPTIVE }
+
+    // outcome of the latest wait of a thread
+    static class Result {
+        final String condition;
+        final long millis;
+        final int polls;
+        final boolean timedOut;
+
+        Result(final String condition, final long millis, final int polls, final boolean timedOut) {
+            this.condition = condition;
+            this.millis = millis;
+            this.polls = polls;
+            this.timedOut = timedOut;
+        }
+    }
+
+    private volatile Polling polling = Polling.FIXED;
+    private volatile long interval = 500;
+    private volatile long maxInterval = 500;
+    private volatile List<Class<? extends Throwable>> ignored = defaultIgnored();
+    private final ConcurrentHashMap<String, Integer> keywordTimeouts = new ConcurrentHashMap<String, Integer>();
+    private final ThreadLocal<Result> last = new ThreadLocal<Result>();
+    // moving average of the time it took for conditions to become true, for the adaptive polling
+    private volatile long averageMillis = -1;
+
+    void setPolling(final Polling polling, final long interval, final long maxInterval) {
+        if (interval < 1 || maxInterval < interval) {
+            throw new IllegalArgumentException("Polling interval must be positive and not greater than the maximum interval");
+        }
+        this.polling = polling;
+        this.interval = interval;
+        this.maxInterval = maxInterval;
+    }
+
+    // exception class names are resolved from the org.openqa.selenium package unless fully qualified
+    @SuppressWarnings("unchecked")
+    void setIgnoredExceptions(final String names) throws ClassNotFoundException {
+        List<Class<? extends Throwable>> classes = new ArrayList<Class<? extends Throwable>>();
+        for (String name : names.split(",")) {
+            name = name.trim();
+            if (name.length() == 0) {
+                continue;
+            }
+            Class<?> c = Class.forName(name.indexOf('.') < 0 ? "org.openqa.selenium." + name : name);
+            if (!Throwable.class.isAssignableFrom(c)) {
+                throw new IllegalArgumentException(name + " is not an exception class");
+            }
+            classes.add((Class<? extends Throwable>) c);
+        }
+        this.ignored = classes;
+    }
+
+    // a timeout below zero removes the override of the keyword
+    void setKeywordTimeout(final String keyword, final int seconds) {
+        if (seconds < 0) {
+            keywordTimeouts.remove(KeywordNames.normalize(keyword));
+        } else {
+            keywordTimeouts.put(KeywordNames.normalize(keyword), seconds);
+        }
+    }
+
+    Result lastResult() {
+        return last.get();
+    }
+
+    // waits with the timeout set for the running keyword, or with the given default timeout in seconds
+    <T> T until(final WebDriver driver, final ExpectedCondition<T> condition, final int defaultTimeout) throws InterruptedException {
+        String keyword = KeywordContext.current();
+        Integer override = keyword == null ? null : keywordTimeouts.get(KeywordNames.normalize(keyword));
+        int timeout = override == null ? defaultTimeout : override;
+
+        long start = System.nanoTime();
+        long end = start + timeout * 1000000000L;
+        long sleep = firstInterval();
+        int polls = 0;
+        long slept = 0;
+        RuntimeException lastException = null;
+        while (true) {
+            polls++;
+            try {
+                T value = condition.apply(driver);
+                if (value != null && !Boolean.FALSE.equals(value)) {
+                    done(condition, start, polls, slept, false);
+                    return value;
+                }
+            } catch (RuntimeException e) {
+                if (!isIgnored(e)) {
+                    throw e;
+                }
+                lastException = e;
+            }
+            long now = System.nanoTime();
+            if (now >= end) {
+                done(condition, start, polls, slept, true);
+                throw new TimeoutException(String.format("Timed out after %d seconds waiting for %s", timeout, condition), lastException);
+            }
+            Thread.sleep(Math.min(sleep, Math.max(1, (end - now) / 1000000L)));
+            slept += System.nanoTime() - now;
+            sleep = nextInterval(sleep);
+        }
+    }
+
+    private long firstInterval() {
+        if (polling == Polling.ADAPTIVE && averageMillis >= 0) {
+            return Math.min(maxInterval, Math.max(interval, averageMillis / 4));
+        }
+        return interval;
+    }
+
+    private long nextInterval(final long current) {
+        return polling == Polling.EXPONENTIAL ? Math.min(maxInterval, current * 2) : current;
+    }
+
+    private void done(final ExpectedCondition<?> condition, final long start, final int polls, final long slept, final boolean timedOut) {
+        KeywordContext.addWait(slept, polls, timedOut);
+        long millis = (System.nanoTime() - start) / 1000000L;
+        if (!timedOut) {
+            long avg = averageMillis;
+            averageMillis = avg < 0 ? millis : (3 * avg + millis) / 4;
+        }
+        last.set(new Result(condition.toString(), millis, polls, timedOut));
+        System.out.println(String.format("*DEBUG* Waited %d ms in %d polls for %s", millis, polls, condition));
+    }
+
+    private boolean isIgnored(final RuntimeException e) {
+        for (Class<? extends Throwable> c : ignored) {
+            if (c.isInstance(e)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static List<Class<? extends Throwable>> defaultIgnored() {
+        List<Class<? extends Throwable>> classes = new ArrayList<Class<? extends Throwable>>();
+        classes.add(NotFoundException.class);
+        return classes;
+    }
+}
@@ -12,20 +12,21 @@ import org.openqa.selenium.interactions.Action;
 import org.openqa.selenium.interactions.Actions;
 import org.openqa.selenium.JavascriptExecutor;
 import org.openqa.selenium.firefox.FirefoxDriver;
-import org.openqa.selenium.firefox.FirefoxProfile;
 import org.openqa.selenium.chrome.ChromeDriver;
 import org.openqa.selenium.chrome.ChromeOptions;
 import org.openqa.selenium.ie.InternetExplorerDriver;
 import org.openqa.selenium.Keys;
+import org.openqa.selenium.NoSuchElementException;
 import org.openqa.selenium.OutputType;
 import org.openqa.selenium.Point;
+import org.openqa.selenium.Proxy;
 import org.openqa.selenium.TakesScreenshot;
 import org.openqa.selenium.support.ui.ExpectedCondition;
 import org.openqa.selenium.support.ui.ExpectedConditions;
 import org.openqa.selenium.support.ui.Select;
-import org.openqa.selenium.support.ui.WebDriverWait;
 import org.openqa.selenium.StaleElementReferenceException;
 import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebDriverException;
 import org.openqa.selenium.WebElement;
 import org.openqa.selenium.internal.ElementScrollBehavior;
 import org.openqa.selenium.remote.CapabilityType;
@@ -33,30 +34,49 @@ import org.openqa.selenium.remote.DesiredCapabilities;
 import org.openqa.selenium.Capabilities;
 import org.openqa.selenium.remote.RemoteWebDriver;
 
-import org.apache.commons.io.FileUtils;
+import com.gargoylesoftware.htmlunit.html.DomElement;
 
-import java.lang.reflect.Method;
-import java.text.SimpleDateFormat;
 import java.io.File;
-import java.util.Date;
 import java.awt.Robot;
 import java.awt.event.InputEvent;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
-import java.net.URL;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 
 
 @RobotKeywords
 public class WebDriverKeywords {
 
-    private static WebDriver drv;
+    // longest time a text assertion script watches the page for the text to change within one poll
+    private static final long TEXT_WATCH_MILLIS = 1000;
+    // rows read with one script call when a table is written to a csv file
+    private static final int TABLE_CHUNK_ROWS = 1000;
+    private static final SessionRegistry sessions = new SessionRegistry();
+    private static volatile BrowserPool pool;
+    private static FilteringProxy proxy;
     private int elementTimeout = 30;
     private int waitAfterAction = 0;
-    private String mainWindowHandle;
-    private ChromeOptions options;
-
-    public WebDriverKeywords() {
-        options = new ChromeOptions();
-    }
+    private int settleQuietWindow = -1;
+    // page load timeout in seconds set for the browsers, negative when the driver default is used
+    private int pageLoadTimeout = -1;
+    private boolean textAssertionsByScript = false;
+    private boolean selectByScript = true;
+    private boolean seleniumTransport = false;
+    private boolean elementCache = false;
+    private boolean asyncActions = false;
+    private final List<String> chromeArguments = new ArrayList<String>();
+    private final WaitEngine waits = new WaitEngine();
+    private final ScreenshotWriter screenshots = new ScreenshotWriter(16);
+    private File metricsFile;
+    private final Map<String, SessionState> savedStates = new ConcurrentHashMap<String, SessionState>();
 
     @RobotKeyword("Sets a timeout value, which is used for waiting elements to become visible on the page. "
                    + "Very useful when navigating across different pages and waiting for some timed event to occur. "
@@ -65,85 +85,651 @@ public class WebDriverKeywords {
                    + "Example:\n"
                    + "| SetFindElementTimeout | 30 |\n")
     @ArgumentNames({"timeout"})
+    @RunOnce
     public void setFindElementTimeout(final String timeout) {
         this.elementTimeout = Integer.parseInt(timeout);
     }
 
     @RobotKeyword("Sets a waiting time, which is used to slow down the keyword execution. "
-                   + "When given a value 3.25 as argument, each action is executed in those intervals.\n\n"
+                   + "When given a value 3.25 as argument, each action is executed in those intervals. "
+                   + "With SetPageSettleWait the value is the maximum time waited for the page to become idle.\n\n"
                    + "Example:\n"
                    + "| SetWaitAfterAction | 5 |\n")
     @ArgumentNames({"wait"})
+    @RunOnce
     public void setWaitAfterAction(final String wait) {
         this.waitAfterAction = (int) (Float.parseFloat(wait)*1000.0);
     }
 
+    @RobotKeyword("Replaces the fixed wait set by SetWaitAfterAction with a wait for the page to become idle. "
+                   + "The page is idle when it is completely loaded, it has no pending XMLHttpRequests or fetches, "
+                   + "and its DOM has not changed during the quiet window given in milliseconds. "
+                   + "The value of SetWaitAfterAction is then the maximum time waited. "
+                   + "If the idle state cannot be detected, for example when an alert is open, the fixed wait is used. "
+                   + "A negative quiet window turns the settle wait off.\n\n"
+                   + "Examples:\n"
+                   + "| SetWaitAfterAction | 3   |\n"
+                   + "| SetPageSettleWait  | 200 |\n"
+                   + "| SetPageSettleWait  | -1  |\n")
+    @ArgumentNames({"quietWindow"})
+    @RunOnce
+    public void setPageSettleWait(final String quietWindow) {
+        this.settleQuietWindow = Integer.parseInt(quietWindow);
+    }
+
+    @RobotKeyword("Sets how the text assertion keywords ElementTextContains, ElementTextEquals, ElementTextNotContains "
+                   + "and ElementTextNotEquals read the text of the element. The mode driver (the default) reads the text "
+                   + "with the driver on each poll. The mode script finds the element and compares its text in the browser "
+                   + "with one script call per poll, which is much faster for large elements such as tables and logs. "
+                   + "In the script mode a poll also watches the page for a second and passes as soon as the text changes to match. "
+                   + "The text is then read with innerText, so its whitespace may differ slightly from GetTextOfElement.\n\n"
+                   + "Examples:\n"
+                   + "| SetTextAssertionMode | script |\n"
+                   + "| SetTextAssertionMode | driver |\n")
+    @ArgumentNames({"mode"})
+    @RunOnce
+    public void setTextAssertionMode(final String mode) {
+        if (!mode.equalsIgnoreCase("script") && !mode.equalsIgnoreCase("driver")) {
+            throw new IllegalArgumentException("Unknown text assertion mode '" + mode + "', use driver or script");
+        }
+        this.textAssertionsByScript = mode.equalsIgnoreCase("script");
+    }
+
+    @RobotKeyword("Turns the element cache on or off, it is off by default. With the cache on, the keywords that act on "
+                   + "one element remember the element found with each locator and reuse it when the next keyword uses the same "
+                   + "locator, which saves finding the element again and, for visible elements, one round trip to the browser. "
+                   + "A reused element that has been removed from the page is found again with its locator and the action is retried. "
+                   + "The cache is emptied by NavigateToURL, SwitchToFrame, SwitchToDefaultContext and the window switching keywords. "
+                   + "While a cached element stays on the page it is reused even if the locator would now find another element first.\n\n"
+                   + "Examples:\n"
+                   + "| SetElementCache | on  |\n"
+                   + "| SetElementCache | off |\n")
+    @ArgumentNames({"state"})
+    @RunOnce
+    public void setElementCache(final String state) {
+        if (!state.equalsIgnoreCase("on") && !state.equalsIgnoreCase("off")) {
+            throw new IllegalArgumentException("Unknown element cache state '" + state + "', use on or off");
+        }
+        this.elementCache = state.equalsIgnoreCase("on");
+    }
+
+    @RobotKeyword("Turns the async mode of the action keywords on or off, it is off by default. In the async mode the keywords "
+                   + "ClickElement, WriteTextToField, FillForm, FillFormWithScript, SelectDropdownItem, SelectFromMultiSelect, "
+                   + "SelectOptions, SelectCheckbox, UnselectCheckbox and PerformActions check their locators, queue the action on the pipeline "
+                   + "of the current browser and return at once. The queued actions run one at a time in order, each with its "
+                   + "usual waits. WaitForPendingActions and every other keyword that uses the browser first wait until the "
+                   + "queued actions have run, and fail with the first failed action, the actions queued after it being skipped. "
+                   + "Use it for sequences of independent actions such as filling unrelated widgets.\n\n"
+                   + "Examples:\n"
+                   + "| SetAsyncActions       | on          |        |\n"
+                   + "| ClickElement          | id          | accept |\n"
+                   + "| SelectCheckbox        | name        | news   |\n"
+                   + "| WaitForPendingActions |             |        |\n"
+                   + "| SetAsyncActions       | off         |        |\n")
+    @ArgumentNames({"state"})
+    @RunOnce
+    public void setAsyncActions(final String state) {
+        if (!state.equalsIgnoreCase("on") && !state.equalsIgnoreCase("off")) {
+            throw new IllegalArgumentException("Unknown async actions state '" + state + "', use on or off");
+        }
+        this.asyncActions = state.equalsIgnoreCase("on");
+    }
+
+    @RobotKeyword("Waits until the actions queued in the async mode set by SetAsyncActions have run on the current browser. "
+                   + "Fails with the first failed action and its arguments.\n\n"
+                   + "Example:\n"
+                   + "| WaitForPendingActions |\n")
+    public void waitForPendingActions() {
+        sessions.current().getActions().drain();
+    }
+
+    @RobotKeyword("Sets how often the conditions are polled while waiting for elements, windows and alerts. "
+                   + "The strategy is fixed (poll every interval), exponential (double the interval after each poll "
+                   + "up to maxInterval) or adaptive (start from a quarter of the average time the previous waits took, "
+                   + "bounded by interval and maxInterval). Intervals are given in milliseconds, the default is fixed 500.\n\n"
+                   + "Examples:\n"
+                   + "| SetPollingStrategy | fixed       | 100 |\n"
+                   + "| SetPollingStrategy | exponential | 50  | 1000 |\n"
+                   + "| SetPollingStrategy | adaptive    | 20  | 500  |\n")
+    @ArgumentNames({"strategy","interval","maxInterval="})
+    @RunOnce
+    public void setPollingStrategy(final String strategy, final String interval, final String maxInterval) {
+        waits.setPolling(WaitEngine.Polling.valueOf(strategy.toUpperCase(Locale.ENGLISH)), Long.parseLong(interval), Long.parseLong(maxInterval));
+    }
+
+    @RobotKeywordOverload
+    public void setPollingStrategy(final String strategy, final String interval) {
+        setPollingStrategy(strategy, interval, strategy.equalsIgnoreCase("fixed") ? interval : String.valueOf(Long.parseLong(interval) * 16));
+    }
+
+    @RobotKeyword("Sets a wait timeout in seconds used only by the given keyword instead of the timeout set by SetFindElementTimeout. "
+                   + "A negative timeout removes the override.\n\n"
+                   + "Examples:\n"
+                   + "| SetKeywordTimeout | ElementTextContains | 60 |\n"
+                   + "| SetKeywordTimeout | ClickPopupOk        | 2  |\n")
+    @ArgumentNames({"keyword","timeout"})
+    @RunOnce
+    public void setKeywordTimeout(final String keyword, final String timeout) {
+        waits.setKeywordTimeout(keyword, Integer.parseInt(timeout));
+    }
+
+    @RobotKeyword("Sets the exceptions that are ignored while polling a wait condition, given as a comma-separated list. "
+                   + "Names without a package refer to the Selenium exceptions. The default is NotFoundException.\n\n"
+                   + "Example:\n"
+                   + "| SetIgnoredWaitExceptions | NotFoundException,StaleElementReferenceException |\n")
+    @ArgumentNames({"exceptions"})
+    @RunOnce
+    public void setIgnoredWaitExceptions(final String exceptions) throws Exception {
+        waits.setIgnoredExceptions(exceptions);
+    }
+
+    @RobotKeyword("Returns the time in milliseconds the latest wait of the previous keywords took. "
+                   + "The count of polls is written to the log.\n\n"
+                   + "Example:\n"
+                   + "| ${millis}= | GetLastWaitTime |\n")
+    @RunOnce
+    public String getLastWaitTime() {
+        WaitEngine.Result result = waits.lastResult();
+        if (result == null) {
+            return "0";
+        }
+        System.out.println(String.format("%s %s after %d polls", result.condition, result.timedOut ? "timed out" : "was met", result.polls));
+        return String.valueOf(result.millis);
+    }
+
+    @RobotKeyword("Returns the latency statistics of the keywords run so far as json, or as csv when the format csv is given. "
+                   + "For each keyword the count of calls, failures, wait timeouts and wait polls are given, together with "
+                   + "the total, mean, median, 90th and 99th percentile and maximum time in milliseconds. "
+                   + "The total time is further split into the time slept between wait polls, the time slept by "
+                   + "SetWaitAfterAction and the rest, which is mostly spent in driver commands.\n\n"
+                   + "Examples:\n"
+                   + "| ${json}= | GetKeywordMetrics |\n"
+                   + "| ${csv}=  | GetKeywordMetrics | csv |\n")
+    @ArgumentNames({"format="})
+    @RunOnce
+    public String getKeywordMetrics(final String format) {
+        return format.equalsIgnoreCase("csv") ? KeywordMetrics.GLOBAL.toCsv() : KeywordMetrics.GLOBAL.toJson();
+    }
+
+    @RobotKeywordOverload
+    public String getKeywordMetrics() {
+        return getKeywordMetrics("json");
+    }
+
+    @RobotKeyword("Sets a file where the keyword latency statistics are written by CloseBrowser and CloseAllBrowsers. "
+                   + "The statistics are written as csv if the file name ends with .csv, otherwise as json. "
+                   + "See GetKeywordMetrics for the content.\n\n"
+                   + "Examples:\n"
+                   + "| SetKeywordMetricsFile | ./metrics/keywords.json |\n"
+                   + "| SetKeywordMetricsFile | ./metrics/keywords.csv  |\n")
+    @ArgumentNames({"path"})
+    @RunOnce
+    public void setKeywordMetricsFile(final String path) {
+        this.metricsFile = new File(path);
+    }
+
+    @RobotKeyword("Clears the keyword latency statistics collected so far.\n\n"
+                   + "Example:\n"
+                   + "| ResetKeywordMetrics |\n")
+    @RunOnce
+    public void resetKeywordMetrics() {
+        KeywordMetrics.GLOBAL.reset();
+    }
+
     @RobotKeyword("Adds a specific Chrome start-up option one at a time. Must be used before 'OpenBrowser' keyword.\n\n"
                    + "Examples:\n"
                    + "| SetChromeArgument | --start-maximized |\n"
                    + "| SetChromeArgument | user-data-dir=C:\\Users\\user_name\\AppData\\Local\\Google\\Chrome\\User Data |\n")
     @ArgumentNames({"optionString"})
+    @RunOnce
     public void setChromeArgument(final String optionString) {
-        options.addArguments(optionString);
+        chromeArguments.add(optionString);
     }
 
     @RobotKeyword("Opens the sepcified browser. If the optional parameter for remoteUrl is specified, "
-                   + "the browser is opened on the given Selenium remote server. Currently code supports firefox, chrome and ie.\n\n"
+                   + "the browser is opened on the given Selenium remote server. Currently code supports firefox, chrome and ie. "
+                   + "The remoteUrl can also be a comma-separated list of servers, and the browser is then opened on the server "
+                   + "with the fewest open sessions, weighted by how fast the server has started sessions, see SetRemoteScheduling. "
+                   + "The optional parameter alias=name registers the browser with the given name, so that several browsers "
+                   + "can be open at the same time and activated with the SwitchBrowser keyword. "
+                   + "Without an alias the browser is registered for the calling thread. "
+                   + "The optional parameter profile=name selects the launch profile: default starts the browser as before, "
+                   + "headless starts it without a window and fast also disables images, extensions and GPU and returns from "
+                   + "page loads once the DOM is ready. Firefox profiles other than default are built once and reused. "
+                   + "Headless mode needs a browser version that supports it. The launch time is logged and can be read "
+                   + "with GetBrowserLaunchTime. The alias= and profile= parameters can be given in any position, the first "
+                   + "parameter without them is the remoteUrl. The opened browser becomes the current browser for the following keywords.\n\n"
                    + "Examples:\n"
                    + "| OpenBrowser | firefox | http://ip.ip.ip.ip:4444/wd/hub |\n"
                    + "| OpenBrowser | chrome  |\n"
-                   + "| OpenBrowser | ie      |\n")
-    @ArgumentNames({"browser","remoteUrl="})
+                   + "| OpenBrowser | ie      |\n"
+                   + "| OpenBrowser | chrome  | alias=w3 |\n"
+                   + "| OpenBrowser | chrome  | profile=fast |\n"
+                   + "| OpenBrowser | chrome  | http://node1:4444/wd/hub,http://node2:4444/wd/hub |\n"
+                   + "| OpenBrowser | firefox | http://ip.ip.ip.ip:4444/wd/hub | alias=w4 | profile=headless |\n")
+    @ArgumentNames({"browser","remoteUrl=","alias=","profile="})
+    @RunOnce
+    public void openBrowser(final String browser, final String remoteUrl, final String alias, final String profile) throws Exception {
+        openSession(browser, remoteUrl, alias, profile);
+    }
+
+    @RobotKeywordOverload
+    public void openBrowser(final String browser, final String remoteUrl, final String alias) throws Exception {
+        openSession(browser, remoteUrl, alias);
+    }
+
+    @RobotKeywordOverload
     public void openBrowser(final String browser, final String remoteUrl) throws Exception {
-        DesiredCapabilities cap = null;
-        if (browser.equals("ie")) {
-            cap = DesiredCapabilities.internetExplorer();
-        } else if (browser.equals("chrome")) {
-            cap = DesiredCapabilities.chrome();
-        } else {
-            FirefoxProfile prfl = new FirefoxProfile();
-            prfl.setEnableNativeEvents(true);
-            cap = DesiredCapabilities.firefox();
-            cap.setCapability(CapabilityType.ELEMENT_SCROLL_BEHAVIOR, ElementScrollBehavior.BOTTOM);
-            cap.setCapability(FirefoxDriver.PROFILE, prfl);
-        }
-        drv = new RemoteWebDriver(new URL(remoteUrl), cap);
-        drv.get("about:blank");
-        mainWindowHandle = drv.getWindowHandle();
+        openSession(browser, remoteUrl);
     }
 
     @RobotKeywordOverload
     @ArgumentNames({"browser"})
     public void openBrowser(final String browser) throws Exception {
-        if (browser.equals("ie")) {
-            drv = new InternetExplorerDriver();
-        } else if (browser.equals("chrome")) {
-            drv = new ChromeDriver(options);
-        } else {
-            FirefoxProfile prfl = new FirefoxProfile();
-            prfl.setEnableNativeEvents(true);
-            DesiredCapabilities cap = new DesiredCapabilities();
-            cap.setCapability(CapabilityType.ELEMENT_SCROLL_BEHAVIOR, ElementScrollBehavior.BOTTOM);
-            cap.setCapability(FirefoxDriver.PROFILE, prfl);
-            drv = new FirefoxDriver(cap);
+        openSession(browser);
+    }
+
+    @RobotKeyword("Returns the time in milliseconds it took to open the current browser with OpenBrowser or OpenBrowsers, "
+                   + "from starting or leasing the browser to having it ready on a blank page.\n\n"
+                   + "Example:\n"
+                   + "| ${millis}= | GetBrowserLaunchTime |\n")
+    public long getBrowserLaunchTime() {
+        return sessions.current().getLaunchMillis();
+    }
+
+    @RobotKeyword("Enables the pooled mode for OpenBrowser and CloseBrowser. "
+                   + "In pooled mode OpenBrowser leases an already started browser with the same browser type, "
+                   + "remoteUrl and Chrome arguments from the pool, and the pool is refilled in the background. "
+                   + "CloseBrowser deletes the cookies, closes the extra windows, navigates to about:blank and returns the browser "
+                   + "to the pool instead of quitting it. The first argument is the count of idle browsers kept per browser type, "
+                   + "the optional second argument is the count of uses after which a browser is quit (default 50). "
+                   + "Browsers failing the health check on lease or the reset on return are quit as well.\n\n"
+                   + "Examples:\n"
+                   + "| UseBrowserPool | 2 |\n"
+                   + "| UseBrowserPool | 3 | 20 |\n")
+    @ArgumentNames({"size","maxUses="})
+    @RunOnce
+    public void useBrowserPool(final String size, final String maxUses) {
+        BrowserPool old = pool;
+        pool = new BrowserPool(Integer.parseInt(size), Integer.parseInt(maxUses));
+        if (old != null) {
+            old.shutdown();
+        }
+    }
+
+    @RobotKeywordOverload
+    public void useBrowserPool(final String size) {
+        useBrowserPool(size, "50");
+    }
+
+    @RobotKeyword("Starts filling the browser pool in the background for the given browser and optional remoteUrl, "
+                   + "so that already the first OpenBrowser gets a warm browser. Requires UseBrowserPool.\n\n"
+                   + "Examples:\n"
+                   + "| WarmUpBrowserPool | chrome  |\n"
+                   + "| WarmUpBrowserPool | firefox | http://ip.ip.ip.ip:4444/wd/hub |\n")
+    @ArgumentNames({"browser","remoteUrl="})
+    @RunOnce
+    public void warmUpBrowserPool(final String browser, final String remoteUrl) throws Exception {
+        if (pool == null) {
+            throw new IllegalStateException("Browser pool is not in use, use the UseBrowserPool keyword first");
+        }
+        List<String> arguments = new ArrayList<String>(chromeArguments);
+        String proxyAddress = proxyAddress();
+        pool.warmUp(poolKey(browser, remoteUrl, LaunchProfile.DEFAULT, arguments, proxyAddress),
+                    driverFactory(browser, remoteUrl, LaunchProfile.DEFAULT, arguments, proxyAddress));
+    }
+
+    @RobotKeywordOverload
+    public void warmUpBrowserPool(final String browser) throws Exception {
+        warmUpBrowserPool(browser, null);
+    }
+
+    @RobotKeyword("Quits the idle browsers of the pool and disables the pooled mode. "
+                   + "Browsers still open are quit normally by CloseBrowser.\n\n"
+                   + "Example:\n"
+                   + "| ShutdownBrowserPool |\n")
+    @RunOnce
+    public void shutdownBrowserPool() {
+        BrowserPool old = pool;
+        pool = null;
+        if (old != null) {
+            old.shutdown();
+        }
+    }
+
+    @RobotKeyword("Makes the browser opened with the given alias the current browser of the calling thread. "
+                   + "The alias is the one given to OpenBrowser, either as alias=name or as a plain name.\n\n"
+                   + "Examples:\n"
+                   + "| SwitchBrowser | w3       |\n"
+                   + "| SwitchBrowser | alias=w3 |\n")
+    @ArgumentNames({"alias"})
+    @RunOnce
+    public void switchBrowser(final String alias) {
+        FanOut.stop();
+        sessions.switchTo(optionValue("alias", alias));
+    }
+
+    @RobotKeyword("Opens the given comma-separated browsers concurrently and runs the following keywords on all of them in parallel, "
+                   + "each browser in its own thread. The browsers are registered with their names as aliases, "
+                   + "a repeated name gets a number suffix (chrome, chrome-2). The keywords that configure the library "
+                   + "or manage the browsers, such as SetFindElementTimeout, OpenBrowser, SwitchBrowser and CloseAllBrowsers, run once. "
+                   + "A keyword returning values returns a dictionary of the values by alias, "
+                   + "and a keyword failing on any browser fails with the errors of all the failed browsers. "
+                   + "OpenBrowser, SwitchBrowser and CloseAllBrowsers end the fan-out, CloseBrowser closes all the browsers of it.\n\n"
+                   + "Examples:\n"
+                   + "| OpenBrowsers | chrome,firefox |\n"
+                   + "| OpenBrowsers | chrome,firefox,ie | http://ip.ip.ip.ip:4444/wd/hub |\n"
+                   + "| ${titles}=   | GetPageTitle |\n")
+    @ArgumentNames({"browsers","remoteUrl="})
+    @RunOnce
+    public void openBrowsers(final String browsers, final String remoteUrl) throws Exception {
+        FanOut.stop();
+        Map<String, Callable<BrowserSession>> starts = new LinkedHashMap<String, Callable<BrowserSession>>();
+        final List<BrowserSession> opened = Collections.synchronizedList(new ArrayList<BrowserSession>());
+        for (final String browser : splitItems(browsers)) {
+            String alias = browser;
+            for (int n = 2; starts.containsKey(alias); n++) {
+                alias = browser + "-" + n;
+            }
+            final String sessionAlias = alias;
+            starts.put(alias, new Callable<BrowserSession>() {
+                public BrowserSession call() throws Exception {
+                    launchSession(sessionAlias, browser, remoteUrl, LaunchProfile.DEFAULT);
+                    opened.add(sessions.current());
+                    return sessions.current();
+                }
+            });
+        }
+        List<BrowserSession> started;
+        try {
+            started = new ArrayList<BrowserSession>(FanOut.all(starts).values());
+        } catch (IllegalStateException e) {
+            // close the browsers that did start, the failed ones are reported
+            for (BrowserSession session : opened) {
+                endSession(session);
+            }
+            throw e;
+        }
+        sessions.switchTo(started.get(0).getAlias());
+        FanOut.start(sessions, started);
+    }
+
+    @RobotKeywordOverload
+    public void openBrowsers(final String browsers) throws Exception {
+        openBrowsers(browsers, null);
+    }
+
+    @RobotKeyword("Configures the HTTP transport of the browsers opened with a remoteUrl. All remote browsers share one pool "
+                   + "of keep-alive connections, which avoids opening a connection per command. The options are given as name=value: "
+                   + "maxConnections (default 64) and maxConnectionsPerHost (default 16) bound the pool, "
+                   + "connectTimeout (default 10000) and readTimeout (default 600000) are in milliseconds, "
+                   + "compression (default true) asks for compressed responses and retries (default 2) is how many times "
+                   + "the commands that only read or delete are retried after a connection error. "
+                   + "The option executor=selenium makes the browsers opened after it use Selenium's own command executor "
+                   + "and executor=pooled turns the shared pool back on. "
+                   + "The settings apply to the next command of all remote browsers.\n\n"
+                   + "Examples:\n"
+                   + "| SetRemoteTransport | readTimeout=120000 | retries=3 |\n"
+                   + "| SetRemoteTransport | maxConnectionsPerHost=32 | compression=false |\n"
+                   + "| SetRemoteTransport | executor=selenium |\n")
+    @ArgumentNames({"*options"})
+    @RunOnce
+    public void setRemoteTransport(final String[] options) {
+        RemoteTransport.Settings settings = RemoteTransport.settings();
+        Boolean selenium = null;
+        for (String option : options) {
+            if (isOption("executor", option)) {
+                String executor = optionValue("executor", option);
+                if (!executor.equals("pooled") && !executor.equals("selenium")) {
+                    throw new IllegalArgumentException("Unknown executor '" + executor + "', use pooled or selenium");
+                }
+                selenium = executor.equals("selenium");
+            } else {
+                settings.set(option);
+            }
+        }
+        if (selenium != null) {
+            this.seleniumTransport = selenium;
+        }
+        if (options.length > (selenium == null ? 0 : 1)) {
+            RemoteTransport.configure(settings);
+        }
+    }
+
+    @RobotKeyword("Returns the counters of the remote transport set by SetRemoteTransport: the commands sent, "
+                   + "retries, failures, connections opened, the connections in use, idle and waited for in the pool, "
+                   + "and the mean command time in milliseconds. A connectionsOpened value close to commands means "
+                   + "that the connections are not kept alive. The optional argument reset zeroes the counters.\n\n"
+                   + "Examples:\n"
+                   + "| ${stats}= | GetRemoteTransportStats |\n"
+                   + "| ${stats}= | GetRemoteTransportStats | reset |\n")
+    @ArgumentNames({"reset="})
+    @RunOnce
+    public String getRemoteTransportStats(final String reset) {
+        checkReset(reset);
+        String stats = RemoteTransport.stats();
+        RemoteTransport.resetStats();
+        return stats;
+    }
+
+    @RobotKeywordOverload
+    public String getRemoteTransportStats() {
+        return RemoteTransport.stats();
+    }
+
+    @RobotKeyword("Configures how OpenBrowser places browsers when given several remote servers. The options are given as name=value: "
+                   + "startTimeout is the time in milliseconds a server may take to start a session (default 0, no limit) "
+                   + "and cooldown is the time in milliseconds a server that failed or timed out is skipped (default 30000). "
+                   + "The cooldown doubles with each failure in a row. When all the servers are cooling down, "
+                   + "the one whose cooldown ends first is tried.\n\n"
+                   + "Examples:\n"
+                   + "| SetRemoteScheduling | startTimeout=60000 |\n"
+                   + "| SetRemoteScheduling | startTimeout=90000 | cooldown=10000 |\n")
+    @ArgumentNames({"*options"})
+    @RunOnce
+    public void setRemoteScheduling(final String[] options) {
+        RemoteScheduler.Settings settings = RemoteScheduler.settings();
+        for (String option : options) {
+            settings.set(option);
+        }
+        RemoteScheduler.configure(settings);
+    }
+
+    @RobotKeyword("Returns one line per remote server OpenBrowser has used: the URL followed by the open and starting sessions, "
+                   + "the sessions started, the failures, the mean session start time in milliseconds and the time left "
+                   + "of the cooldown in milliseconds. The optional argument reset zeroes the counters and ends the cooldowns.\n\n"
+                   + "Examples:\n"
+                   + "| ${stats}= | GetRemoteNodeStats |\n"
+                   + "| ${stats}= | GetRemoteNodeStats | reset |\n")
+    @ArgumentNames({"reset="})
+    @RunOnce
+    public String getRemoteNodeStats(final String reset) {
+        checkReset(reset);
+        String stats = RemoteScheduler.stats();
+        RemoteScheduler.resetStats();
+        return stats;
+    }
+
+    @RobotKeywordOverload
+    public String getRemoteNodeStats() {
+        return RemoteScheduler.stats();
+    }
+
+    @RobotKeyword("Blocks the requests whose URL matches any of the given regular expressions, so that analytics, fonts, ads "
+                   + "and images the tests do not need are not loaded. The first call starts an in-process proxy, which the "
+                   + "browsers opened after it use, so the keyword is used before OpenBrowser. Blocked requests get an empty "
+                   + "response at once. HTTPS requests are matched only by their host and port, e.g. https://ads.example.com:443. "
+                   + "The proxy listens on the local address, so remote browsers must run on the same machine.\n\n"
+                   + "Examples:\n"
+                   + "| BlockUrlsMatching | google-analytics\\.com | \\.(png|jpg|gif)(\\?|$) |\n"
+                   + "| BlockUrlsMatching | fonts\\.googleapis\\.com |\n")
+    @ArgumentNames({"*patterns"})
+    @RunOnce
+    public void blockUrlsMatching(final String[] patterns) throws Exception {
+        FilteringProxy p = filteringProxy();
+        for (String pattern : patterns) {
+            p.block(pattern);
+        }
+    }
+
+    @RobotKeyword("Slows down the requests of the browsers opened after it to simulate a slower network. The latency in "
+                   + "milliseconds is added to each request and the optional bandwidth limits each response to the given "
+                   + "kilobits per second. Zero turns that part of the throttling off. Uses the same proxy as BlockUrlsMatching.\n\n"
+                   + "Examples:\n"
+                   + "| ThrottleNetwork | 150 |\n"
+                   + "| ThrottleNetwork | 300 | 1600 |\n")
+    @ArgumentNames({"latency","bandwidth="})
+    @RunOnce
+    public void throttleNetwork(final String latency, final String bandwidth) throws Exception {
+        filteringProxy().throttle(Long.parseLong(latency), Long.parseLong(bandwidth));
+    }
+
+    @RobotKeywordOverload
+    public void throttleNetwork(final String latency) throws Exception {
+        throttleNetwork(latency, "0");
+    }
+
+    @RobotKeyword("Removes the blocked URLs and the throttling. Browsers opened after it no longer use the proxy. Browsers "
+                   + "already using it keep using it, but it passes all the requests through unchanged until the last browser "
+                   + "is closed, which stops the proxy. Does nothing when the proxy has not been started.\n\n"
+                   + "Example:\n"
+                   + "| ClearNetworkFilters |\n")
+    @RunOnce
+    public void clearNetworkFilters() throws Exception {
+        FilteringProxy p = runningProxy();
+        if (p != null) {
+            p.clear();
+            stopUnusedProxy();
+        }
+    }
+
+    @RobotKeyword("Returns the counters of the proxy started by BlockUrlsMatching or ThrottleNetwork: the requests, "
+                   + "the blocked requests, failures, the response bytes and the 50th and 95th percentile and maximum request "
+                   + "times in milliseconds, all zero when the proxy is not running. The optional argument reset zeroes "
+                   + "the counters.\n\n"
+                   + "Examples:\n"
+                   + "| ${stats}= | GetProxyStats |\n"
+                   + "| ${stats}= | GetProxyStats | reset |\n")
+    @ArgumentNames({"reset="})
+    @RunOnce
+    public String getProxyStats(final String reset) throws Exception {
+        checkReset(reset);
+        FilteringProxy p = runningProxy();
+        if (p == null) {
+            return FilteringProxy.emptyStats();
         }
-        drv.get("about:blank");
-        mainWindowHandle = drv.getWindowHandle();
+        String stats = p.stats();
+        p.resetStats();
+        return stats;
+    }
+
+    @RobotKeywordOverload
+    public String getProxyStats() throws Exception {
+        FilteringProxy p = runningProxy();
+        return p == null ? FilteringProxy.emptyStats() : p.stats();
     }
 
-    @RobotKeyword("Closes all browsers started by the OpenBrowser keyword.\n\n"
+    @RobotKeyword("Closes the current browser started by the OpenBrowser keyword. After OpenBrowsers the keyword closes "
+                   + "all the browsers of the group in parallel.\n\n"
                    + "Example:\n"
                    + "| CloseBrowser |\n")
-    public void closeBrowser() {
-        drv.quit();
+    @RunOnce
+    public void closeBrowser() throws Exception {
+        List<BrowserSession> group = FanOut.browsers();
+        List<BrowserSession> closing = group.isEmpty() ? Collections.singletonList(sessions.current()) : group;
+        try {
+            screenshots.flush();
+        } finally {
+            endSessions(closing);
+            stopUnusedProxy();
+            exportKeywordMetrics();
+        }
     }
 
-    @RobotKeyword("Navigates to the URL given as argument.\n\n"
+    @RobotKeyword("Closes all browsers started by the OpenBrowser keyword, also the ones opened by other threads.\n\n"
                    + "Example:\n"
-                   + "| NavigateToURL | http://www.google.com |\n")
+                   + "| CloseAllBrowsers |\n")
+    @RunOnce
+    public void closeAllBrowsers() throws Exception {
+        FanOut.stop();
+        try {
+            screenshots.flush();
+        } finally {
+            for (BrowserSession session : sessions.all()) {
+                endSession(session);
+            }
+            stopUnusedProxy();
+            exportKeywordMetrics();
+        }
+    }
+
+    @RobotKeyword("Navigates to the URL given as argument. The optional strategy sets how long the keyword waits for the page: "
+                   + "normal (the default) waits until the page and all its resources have loaded, eager until the page has been "
+                   + "parsed and none does not wait. The eager and none strategies load the URL from a script, and some drivers "
+                   + "still wait for the load before the next command. The optional wait=by:locator then waits with the "
+                   + "elementTimeout until the given element is visible, which is often all the test needs. "
+                   + "The page load is limited by SetPageLoadTimeout.\n\n"
+                   + "Examples:\n"
+                   + "| NavigateToURL | http://www.google.com |\n"
+                   + "| NavigateToURL | http://www.google.com | strategy=eager | wait=name:q |\n"
+                   + "| NavigateToURL | http://www.google.com | none          | wait=xpath://div[@id='main'] |\n")
+    @ArgumentNames({"url","strategy=","wait="})
+    public void navigateToURL(final String url, final String strategy, final String wait) throws Exception {
+        navigate(url, strategy, wait);
+    }
+
+    @RobotKeywordOverload
+    public void navigateToURL(final String url, final String strategy) throws Exception {
+        navigate(url, strategy);
+    }
+
+    @RobotKeywordOverload
     @ArgumentNames({"url"})
-    public void navigateToURL(final String url) {
-        drv.get(url);
+    public void navigateToURL(final String url) throws Exception {
+        navigate(url);
+    }
+
+    @RobotKeyword("Sets the time in seconds the browsers wait for a page to load before the navigation fails. "
+                   + "The timeout applies to the open browsers and the ones opened later. A negative value restores "
+                   + "the default of the driver, which usually waits without a limit.\n\n"
+                   + "Examples:\n"
+                   + "| SetPageLoadTimeout | 20 |\n"
+                   + "| SetPageLoadTimeout | -1 |\n")
+    @ArgumentNames({"timeout"})
+    @RunOnce
+    public void setPageLoadTimeout(final String timeout) {
+        this.pageLoadTimeout = Integer.parseInt(timeout);
+        for (BrowserSession session : sessions.all()) {
+            applyPageLoadTimeout(session.getDriver());
+        }
+    }
+
+    @RobotKeyword("Returns the Navigation Timing data of the current page as a dictionary of milliseconds: redirect, dns and connect "
+                   + "are durations, firstByte, response, domInteractive, domContentLoaded and load are measured from the start "
+                   + "of the navigation (-1 when not reached yet). The dictionary also has the url and the count of resources "
+                   + "loaded. Logging these in functional runs shows page performance regressions.\n\n"
+                   + "Example:\n"
+                   + "| ${timing}= | GetNavigationTiming |\n"
+                   + "| Should Be True | ${timing['load']} < 3000 |\n")
+    public Map<?, ?> getNavigationTiming() {
+        return Navigation.timing(drv());
+    }
+
+    @RobotKeyword("Returns the Resource Timing data of the resources the current page has loaded, slowest first, "
+                   + "as a list of dictionaries with name, type, start, duration and size. Start and duration are in milliseconds, "
+                   + "size is the transferred bytes where the browser reports it. The optional argument limits the count of "
+                   + "resources returned, the default is 20.\n\n"
+                   + "Examples:\n"
+                   + "| ${slowest}= | GetResourceTiming |\n"
+                   + "| ${all}=     | GetResourceTiming | 1000 |\n")
+    @ArgumentNames({"max="})
+    public List<?> getResourceTiming(final String max) {
+        return Navigation.resources(drv(), Integer.parseInt(max));
+    }
+
+    @RobotKeywordOverload
+    public List<?> getResourceTiming() {
+        return getResourceTiming("20");
     }
 
     @RobotKeyword("Deletes all cookies and in many cases clears all previous browsing data. "
@@ -151,7 +737,62 @@ public class WebDriverKeywords {
                    + "Examples:\n"
                    + "| ClearBrowserData |\n")
     public void clearBrowserData() {
-        drv.manage().deleteAllCookies();
+        drv().manage().deleteAllCookies();
+    }
+
+    @RobotKeyword("Saves the cookies, the local and session storage and the URL of the current browser under the given name, "
+                   + "so that RestoreSessionState can later return a browser to this state, for example to a logged in state "
+                   + "without logging in through the UI. The optional file=path argument also writes the state to a json file, "
+                   + "from which RestoreSessionState can read it in another run.\n\n"
+                   + "Examples:\n"
+                   + "| SaveSessionState | loggedIn |\n"
+                   + "| SaveSessionState | loggedIn | file=${TEMPDIR}/loggedIn.json |\n")
+    @ArgumentNames({"name","file="})
+    public void saveSessionState(final String name, final String file) throws Exception {
+        SessionState state = SessionState.capture(drv());
+        savedStates.put(name, state);
+        if (file != null) {
+            state.save(new File(optionValue("file", file)));
+        }
+    }
+
+    @RobotKeywordOverload
+    public void saveSessionState(final String name) throws Exception {
+        saveSessionState(name, null);
+    }
+
+    @RobotKeyword("Restores a state saved with SaveSessionState: opens the saved URL if the browser is on another site, "
+                   + "adds the saved cookies that the browser does not have, sets the saved storage values and loads the saved URL. "
+                   + "The other cookies and storage values are kept unless the option reset is given, which removes them. "
+                   + "If the state has not been saved in this run, it is read from the file given as file=path.\n\n"
+                   + "Examples:\n"
+                   + "| RestoreSessionState | loggedIn |\n"
+                   + "| RestoreSessionState | loggedIn | reset |\n"
+                   + "| RestoreSessionState | loggedIn | file=${TEMPDIR}/loggedIn.json | reset |\n")
+    @ArgumentNames({"name","*options"})
+    public void restoreSessionState(final String name, final String[] options) throws Exception {
+        boolean reset = false;
+        String file = null;
+        for (String option : options) {
+            if (option.equalsIgnoreCase("reset")) {
+                reset = true;
+            } else if (isOption("file", option)) {
+                file = optionValue("file", option);
+            } else {
+                throw new IllegalArgumentException("Unknown option '" + option + "', use reset or file=path");
+            }
+        }
+        SessionState state = savedStates.get(name);
+        if (state == null && file != null) {
+            state = SessionState.load(new File(file));
+            savedStates.put(name, state);
+        }
+        if (state == null) {
+            throw new IllegalArgumentException(String.format("No session state saved with name '%s', saved states are %s",
+                                                             name, savedStates.keySet()));
+        }
+        changeContext();
+        state.restore(drv(), reset);
     }
 
     @RobotKeyword("Sets the size of the current browser window. "
@@ -160,21 +801,21 @@ public class WebDriverKeywords {
                    + "| SetBrowserWindowSize | 1000 | 800 |\n")
     @ArgumentNames({"width","height"})
     public void setBrowserWindowSize(final String w, final String h) {
-        drv.manage().window().setSize(new Dimension(Integer.parseInt(w), Integer.parseInt(h)));
+        drv().manage().window().setSize(new Dimension(Integer.parseInt(w), Integer.parseInt(h)));
     }
 
     @RobotKeyword("Returns the top-left pixel-coordinates of the current browser window.\n\n"
                    + "Example:\n"
                    + "| ${location}= | GetBrowserWindowLocation |\n")
     public String getBrowserWindowLocation() {
-        return drv.manage().window().getPosition().toString();
+        return drv().manage().window().getPosition().toString();
     }
 
     @RobotKeyword("Prints the list of current browser capabilities to the log file.\n\n"
                    + "Example:\n"
                    + "| PrintCapabilitiesToLog |\n")
     public void PrintCapabilitiesToLog() {
-        Map<String,?> maps = ((RemoteWebDriver) drv).getCapabilities().asMap();
+        Map<String,?> maps = ((RemoteWebDriver) drv()).getCapabilities().asMap();
         for (String capa : maps.keySet()) {
             String value = maps.get(capa).toString();  
             System.out.println(capa + " : " + value);  
@@ -186,26 +827,46 @@ public class WebDriverKeywords {
                    + "| SetBrowserWindowLocation | 100 | 100 |\n")
     @ArgumentNames({"x","y"})
     public void setBrowserWindowLocation(final String x, final String y) {
-        drv.manage().window().setPosition(new Point(Integer.parseInt(x),Integer.parseInt(y)));
+        drv().manage().window().setPosition(new Point(Integer.parseInt(x),Integer.parseInt(y)));
     }
 
     @RobotKeyword("Returns the title of the current web page.\n\n"
                    + "Example:\n"
                    + "| ${pageTitle}= | GetPageTitle |\n")
     public String getPageTitle() throws Exception {
-        Thread.sleep(this.waitAfterAction);
-        return drv.getTitle();
+        waitAfterAction();
+        return drv().getTitle();
     }
 
     @RobotKeyword("Saves a screenshot of the current web page. "
-                   + "The screenshot files are saved in a folder './scrshots' in a date-format MMddHHmmss.png.\n\n"
+                   + "The screenshot files are saved in a folder './scrshots' in a date-format MMddHHmmssSSS.png, "
+                   + "a running number is added to the name if the file already exists. "
+                   + "The keyword returns as soon as the screenshot is captured, the file is written in the background "
+                   + "and all pending screenshots are written at the latest when the browser is closed. A screenshot that "
+                   + "could not be written fails the next GetPageScreenshot or the closing of the browser.\n\n"
                    + "Example:\n"
                    + "| GetPageScreenshot |\n")
     public void getPageScreenshot() throws Exception {
-        File scrFile = ((TakesScreenshot)drv).getScreenshotAs(OutputType.FILE);
-        String fileName = new SimpleDateFormat("MMddHHmmss'.png'").format(new Date());
-        FileUtils.copyFile(scrFile, new File("./scrshots/"+fileName));
-        System.out.println("*HTML* <img src='./scrshots/"+fileName+"'></img>");
+        byte[] png = ((TakesScreenshot)drv()).getScreenshotAs(OutputType.BYTES);
+        File file = screenshots.write(new File("./scrshots"), png);
+        System.out.println("*HTML* <img src='./scrshots/"+file.getName()+"'></img>");
+    }
+
+    @RobotKeyword("Sets the image format and scale of the screenshots saved by GetPageScreenshot. "
+                   + "The format is png (default) or jpg, and a scale below 1.0 downscales the screenshots. "
+                   + "Re-encoding and scaling is done in the background writer.\n\n"
+                   + "Examples:\n"
+                   + "| SetScreenshotOptions | jpg |\n"
+                   + "| SetScreenshotOptions | png | 0.5 |\n")
+    @ArgumentNames({"format","scale="})
+    @RunOnce
+    public void setScreenshotOptions(final String format, final String scale) {
+        screenshots.setOptions(format, Double.parseDouble(scale));
+    }
+
+    @RobotKeywordOverload
+    public void setScreenshotOptions(final String format) {
+        setScreenshotOptions(format, "1.0");
     }
 
     @RobotKeyword("Executes the javascript snippet given as argument. "
@@ -217,8 +878,8 @@ public class WebDriverKeywords {
                    + "| ${contentType}=     | ExecuteJavascript | return window.document.contentType;                       |\n")
     @ArgumentNames({"jScript"})
     public String executeJavascript(final String jScript) throws Exception {
-        Thread.sleep(this.waitAfterAction);
-        return (String)((JavascriptExecutor) drv).executeScript(jScript);
+        waitAfterAction();
+        return (String)((JavascriptExecutor) drv()).executeScript(jScript);
     }
 
     @RobotKeyword("Executes a left mouse button click on the given coordinates. "
@@ -231,7 +892,7 @@ public class WebDriverKeywords {
                    + "| ClickOnCoordinate | 100 | 100 |\n")
     @ArgumentNames({"x","y"})
     public void clickOnCoordinate(final String x, final String y) throws Exception {
-            Thread.sleep(this.waitAfterAction);
+            waitAfterAction();
             Robot robot = new Robot();
             robot.mouseMove(Integer.parseInt(x), Integer.parseInt(y));
             robot.mousePress(InputEvent.BUTTON1_MASK);
@@ -248,7 +909,13 @@ public class WebDriverKeywords {
                    + "| ClickElement | linkText | myLinkText              |\n")
     @ArgumentNames({"by","id"})
     public void clickElement(final String by, final String id) throws Exception {
-        getE(ExpectedConditions.elementToBeClickable(getBy(by,id))).click();
+        Locators.strategy(by);
+        act("ClickElement", new Callable<Void>() {
+            public Void call() throws Exception {
+                waitUntil(clickableElement(getBy(by,id))).click();
+                return null;
+            }
+        }, by, id);
     }
 
     @RobotKeyword("Writes given text on the indicated text field element given as argument. "
@@ -262,9 +929,71 @@ public class WebDriverKeywords {
                    + "| WriteTextToField | name  | myTextField             | givenText |\n")
     @ArgumentNames({"by","id","text"})
     public void writeTextToField(final String by, final String id, final String text) throws Exception {
-        WebElement e = getE(ExpectedConditions.visibilityOfElementLocated(getBy(by,id)));
-        e.clear();
-        e.sendKeys(text);
+        Locators.strategy(by);
+        act("WriteTextToField", new Callable<Void>() {
+            public Void call() throws Exception {
+                WebElement e = waitUntil(visibleElement(getBy(by,id)));
+                e.clear();
+                e.sendKeys(text);
+                return null;
+            }
+        }, by, id, text);
+    }
+
+    @RobotKeyword("Writes the given texts to many text fields at once. The fields are given as a list of "
+                   + "locator strategy, locator and text triples. The keyword uses the specified elementTimeout to wait until "
+                   + "all the fields are visible, locating all of them in one call per poll, and then clears and types "
+                   + "each field like WriteTextToField. Each field is the first visible element matching its locator, whereas "
+                   + "WriteTextToField waits until the first matching element is visible, so hidden matches before it are "
+                   + "skipped. The fields that could not be written are all reported in the error. "
+                   + "The fields can be located by using their DOM definition via the selectors: "
+                   + "id, name, xpath, className, tagName or cssSelector.\n\n"
+                   + "Examples:\n"
+                   + "| FillForm | id | firstName | John | name | lastName | Doe | xpath | //input[@name='city'] | Oulu |\n"
+                   + "| FillForm | @{fields} |\n")
+    @ArgumentNames({"*fields"})
+    public void fillForm(final String[] fields) throws Exception {
+        act("FillForm", new Callable<Void>() {
+            public Void call() throws Exception {
+                List<WebElement> elements = waitUntil(visibilityOfAllFields(formLocators(fields, 3)));
+                List<String> errors = new ArrayList<String>();
+                for (int i = 0; i < elements.size(); i++) {
+                    try {
+                        elements.get(i).clear();
+                        elements.get(i).sendKeys(fields[i * 3 + 2]);
+                    } catch (WebDriverException e) {
+                        errors.add(fields[i * 3] + "=" + fields[i * 3 + 1] + ": " + e.getMessage());
+                    }
+                }
+                failOnFieldErrors(errors);
+                return null;
+            }
+        }, (Object) fields);
+    }
+
+    @RobotKeyword("Like FillForm, but sets all the field values with one injected javascript call once all the fields are visible. "
+                   + "The values are set directly to the fields and input and change events are fired for each field, "
+                   + "no key events are generated. Checkboxes and radio buttons are checked with the text true. "
+                   + "Disabled and read-only fields are reported as errors.\n\n"
+                   + "Examples:\n"
+                   + "| FillFormWithScript | id | firstName | John | name | lastName | Doe |\n"
+                   + "| FillFormWithScript | @{fields} |\n")
+    @ArgumentNames({"*fields"})
+    public void fillFormWithScript(final String[] fields) throws Exception {
+        act("FillFormWithScript", new Callable<Void>() {
+            public Void call() throws Exception {
+                formLocators(fields, 3);
+                List<?> status = waitUntil(formFilledByScript(fields));
+                List<String> errors = new ArrayList<String>();
+                for (int i = 0; i < status.size(); i++) {
+                    if (!"".equals(status.get(i))) {
+                        errors.add(fields[i * 3] + "=" + fields[i * 3 + 1] + ": " + status.get(i));
+                    }
+                }
+                failOnFieldErrors(errors);
+                return null;
+            }
+        }, (Object) fields);
     }
 
     @RobotKeyword("Selects given item on the indicated dropdown element given as argument. "
@@ -278,7 +1007,13 @@ public class WebDriverKeywords {
                    + "| SelectDropdownItem | name  | myDropdown              | itemText |\n")
     @ArgumentNames({"by","id","text"})
     public void selectDropdownItem(final String by, final String id, final String text) throws Exception {
-        new Select(getE(ExpectedConditions.visibilityOfElementLocated(getBy(by,id)))).selectByVisibleText(text);
+        Locators.strategy(by);
+        act("SelectDropdownItem", new Callable<Void>() {
+            public Void call() throws Exception {
+                applySelection(by, id, "text", new String[] {text}, false);
+                return null;
+            }
+        }, by, id, text);
     }
 
     @RobotKeyword("Selects given item or items on the indicated <select multiple> element given as argument. "
@@ -294,19 +1029,62 @@ public class WebDriverKeywords {
                    + "| SelectFromMultiSelect | name  | myMultiSelect           | itemText1 | deselectAll |\n")
     @ArgumentNames({"by","id","texts","deselectAll="})
     public void selectFromMultiSelect(final String by, final String id, final String texts, final String ds) throws Exception {
-        Select x = new Select(getE(ExpectedConditions.visibilityOfElementLocated(getBy(by,id))));
-        x.deselectAll();
-        for (String s: texts.split(",")) {
-           x.selectByVisibleText(s.trim()); 
-        }
+        Locators.strategy(by);
+        act("SelectFromMultiSelect", new Callable<Void>() {
+            public Void call() throws Exception {
+                applySelection(by, id, "text", splitItems(texts), true);
+                return null;
+            }
+        }, by, id, texts, ds);
     }
 
     @RobotKeywordOverload
     public void selectFromMultiSelect(final String by, final String id, final String texts) throws Exception {
-        Select x = new Select(getE(ExpectedConditions.visibilityOfElementLocated(getBy(by,id))));
-        for (String s: texts.split(",")) {
-           x.selectByVisibleText(s.trim()); 
+        Locators.strategy(by);
+        act("SelectFromMultiSelect", new Callable<Void>() {
+            public Void call() throws Exception {
+                applySelection(by, id, "text", splitItems(texts), false);
+                return null;
+            }
+        }, by, id, texts);
+    }
+
+    @RobotKeyword("Selects exactly the given options of a dropdown or a <select multiple> element, "
+                   + "deselecting the other options of a multi-select. The options are matched by their visible text, "
+                   + "their value or their index, as given by the match argument, and a single select takes one option. "
+                   + "The keyword uses the specified elementTimeout to wait until the element is visible and has all the options. "
+                   + "The element can be located by using its DOM definition via the selectors: "
+                   + "id, name, xpath, className, tagName or cssSelector.\n\n"
+                   + "Examples:\n"
+                   + "| SelectOptions | id   | country  | text  | Finland |\n"
+                   + "| SelectOptions | name | products | value | p-1     | p-7 | p-9 |\n"
+                   + "| SelectOptions | name | products | index | 0       | 2   |\n"
+                   + "| SelectOptions | name | products | text  | @{productNames} |\n")
+    @ArgumentNames({"by","id","match","*options"})
+    public void selectOptions(final String by, final String id, final String match, final String[] options) throws Exception {
+        Locators.strategy(by);
+        act("SelectOptions", new Callable<Void>() {
+            public Void call() throws Exception {
+                applySelection(by, id, match.toLowerCase(Locale.ENGLISH), options, true);
+                return null;
+            }
+        }, by, id, match, options);
+    }
+
+    @RobotKeyword("Sets how the select keywords SelectDropdownItem, SelectFromMultiSelect and SelectOptions select the options. "
+                   + "The mode script (the default) finds the options and selects them in the browser with one script call, "
+                   + "firing input and change events on the select element. The mode driver selects each option "
+                   + "with Selenium's Select class, which reads and clicks the options one command at a time.\n\n"
+                   + "Examples:\n"
+                   + "| SetSelectMode | driver |\n"
+                   + "| SetSelectMode | script |\n")
+    @ArgumentNames({"mode"})
+    @RunOnce
+    public void setSelectMode(final String mode) {
+        if (!mode.equalsIgnoreCase("script") && !mode.equalsIgnoreCase("driver")) {
+            throw new IllegalArgumentException("Unknown select mode '" + mode + "', use script or driver");
         }
+        this.selectByScript = mode.equalsIgnoreCase("script");
     }
 
     @RobotKeyword("Clicks the checkbox given as argument, if the checkbox is not already checked. "
@@ -319,8 +1097,14 @@ public class WebDriverKeywords {
                    + "| SelectCheckbox | name  | myCheckbox              |\n")
     @ArgumentNames({"by","id"})
     public void selectCheckbox(final String by, final String id) throws Exception {
-        WebElement e = getE(ExpectedConditions.visibilityOfElementLocated(getBy(by,id)));
-        if ( !e.isSelected() ) { e.click(); }
+        Locators.strategy(by);
+        act("SelectCheckbox", new Callable<Void>() {
+            public Void call() throws Exception {
+                WebElement e = waitUntil(visibleElement(getBy(by,id)));
+                if ( !e.isSelected() ) { e.click(); }
+                return null;
+            }
+        }, by, id);
     }
 
     @RobotKeyword("Clicks the checkbox given as argument, if the checkbox is already checked. "
@@ -333,8 +1117,14 @@ public class WebDriverKeywords {
                    + "| UnselectCheckbox | name  | myCheckbox              |\n")
     @ArgumentNames({"by","id"})
     public void unselectCheckbox(final String by, final String id) throws Exception {
-        WebElement e = getE(ExpectedConditions.visibilityOfElementLocated(getBy(by,id)));
-        if ( e.isSelected() ) { e.click(); }
+        Locators.strategy(by);
+        act("UnselectCheckbox", new Callable<Void>() {
+            public Void call() throws Exception {
+                WebElement e = waitUntil(visibleElement(getBy(by,id)));
+                if ( e.isSelected() ) { e.click(); }
+                return null;
+            }
+        }, by, id);
     }
 
     @RobotKeyword("Returns the text enclosed by the given web element. "
@@ -348,7 +1138,80 @@ public class WebDriverKeywords {
                    + "| ${text}= | GetTextOfElement | name  | myElement               |\n")
     @ArgumentNames({"by","id"})
     public String getTextOfElement(final String by, final String id) throws Exception {
-        return getE(ExpectedConditions.presenceOfElementLocated(getBy(by,id))).getText().replace("\n"," ");
+        return waitUntil(presentElement(getBy(by,id))).getText().replace("\n"," ");
+    }
+
+    @RobotKeyword("Returns the texts of all the elements matching the locator as a list, read in one script call. "
+                   + "The whitespace of each text line is collapsed and the lines are concatenated by a space. "
+                   + "The keyword uses the specified elementTimeout to wait until at least one element is present in DOM. "
+                   + "The elements can be located by using their DOM definition via the selectors: "
+                   + "id, name, xpath, className, linkText, partialLinkText, tagName or cssSelector.\n\n"
+                   + "Examples:\n"
+                   + "| @{texts}= | GetTextsOfElements | xpath       | //table[@id='results']//td[2] |\n"
+                   + "| @{texts}= | GetTextsOfElements | cssSelector | ul.items > li                 |\n")
+    @ArgumentNames({"by","id"})
+    public List<String> getTextsOfElements(final String by, final String id) throws Exception {
+        getBy(by, id);
+        return waitUntil(elementValuesByScript(DomScripts.ELEMENT_TEXTS, by, id, null));
+    }
+
+    @RobotKeyword("Returns the value of the given attribute or property of all the elements matching the locator as a list, "
+                   + "read in one script call. Elements without the attribute have the value None. "
+                   + "The keyword uses the specified elementTimeout to wait until at least one element is present in DOM. "
+                   + "The elements can be located by using their DOM definition via the selectors: "
+                   + "id, name, xpath, className, linkText, partialLinkText, tagName or cssSelector.\n\n"
+                   + "Examples:\n"
+                   + "| @{links}=  | GetAttributesOfElements | tagName     | a               | href  |\n"
+                   + "| @{values}= | GetAttributesOfElements | cssSelector | form input      | value |\n")
+    @ArgumentNames({"by","id","attribute"})
+    public List<String> getAttributesOfElements(final String by, final String id, final String attribute) throws Exception {
+        getBy(by, id);
+        return waitUntil(elementValuesByScript(DomScripts.ELEMENT_ATTRIBUTES, by, id, attribute));
+    }
+
+    @RobotKeyword("Returns the cell texts of a table as a list of rows, each row being a list of cell texts. "
+                   + "The header and footer rows are included. The whole table is read in one script call. "
+                   + "With the optional file argument the rows are instead written to the given csv file in chunks "
+                   + "of " + TABLE_CHUNK_ROWS + " rows, which keeps the memory use low for very large tables, "
+                   + "and the number of rows written is returned. "
+                   + "The keyword uses the specified elementTimeout to wait until the table is present in DOM. "
+                   + "The table can be located by using its DOM definition via the selectors: "
+                   + "id, name, xpath, className, linkText, partialLinkText, tagName or cssSelector.\n\n"
+                   + "Examples:\n"
+                   + "| ${rows}=  | GetTableData | id | results |\n"
+                   + "| ${count}= | GetTableData | id | results | ${OUTPUT DIR}/results.csv |\n")
+    @ArgumentNames({"by","id","file="})
+    public Object getTableData(final String by, final String id, final String file) throws Exception {
+        getBy(by, id);
+        Map<?, ?> chunk = waitUntil(tableRows(by, id, 0, TABLE_CHUNK_ROWS));
+        long total = ((Number) chunk.get("total")).longValue();
+        long written = 0;
+        CsvWriter csv = new CsvWriter(new File(file));
+        try {
+            while (true) {
+                List<?> rows = (List<?>) chunk.get("rows");
+                for (Object row : rows) {
+                    csv.writeRow((List<?>) row);
+                }
+                written += rows.size();
+                if (rows.isEmpty() || written >= total) {
+                    break;
+                }
+                chunk = tableRows(by, id, written, TABLE_CHUNK_ROWS).apply(drv());
+                if (chunk == null) {
+                    throw new IllegalStateException("The table disappeared after " + written + " rows were written to " + file);
+                }
+            }
+        } finally {
+            csv.close();
+        }
+        return written;
+    }
+
+    @RobotKeywordOverload
+    public List<?> getTableData(final String by, final String id) throws Exception {
+        getBy(by, id);
+        return (List<?>) waitUntil(tableRows(by, id, 0, Integer.MAX_VALUE)).get("rows");
     }
 
     @RobotKeyword("Verifies that given element exists and is visible in DOM. "
@@ -361,7 +1224,7 @@ public class WebDriverKeywords {
                    + "| ElementExists | name  | myElement               |\n")
     @ArgumentNames({"by","id"})
     public void elementExists(final String by, final String id) throws Exception {
-        getE(ExpectedConditions.visibilityOfElementLocated(getBy(by,id)));
+        waitUntil(visibleElement(getBy(by,id)));
     }
 
     @RobotKeyword("Verifies that given element does not exist in DOM. "
@@ -374,7 +1237,7 @@ public class WebDriverKeywords {
                    + "| ElementDoesNotExist | name  | myElement               |\n")
     @ArgumentNames({"by","id"})
     public void elementDoesNotExist(final String by, final String id) throws Exception {
-        getB(ExpectedConditions.invisibilityOfElementLocated(getBy(by,id)));
+        waitUntil(ExpectedConditions.invisibilityOfElementLocated(getBy(by,id)));
     }
 
     @RobotKeyword("Verifies that given element exists and is visible in DOM and it contains expected text. "
@@ -387,7 +1250,7 @@ public class WebDriverKeywords {
                    + "| ElementTextContains | name  | myElement               | text |\n")
     @ArgumentNames({"by","id","text"})
     public void elementTextContains(final String by, final String id, final String text) throws Exception {
-        getB(textInElement(getBy(by,id), text, true));
+        waitUntil(textAssertion(by, id, text, true, false));
     }
 
     @RobotKeyword("Verifies that given element exists and is visible in DOM and it has expected text. "
@@ -400,7 +1263,7 @@ public class WebDriverKeywords {
                    + "| ElementTextEquals | name  | myElement               | text |\n")
     @ArgumentNames({"by","id","text"})
     public void elementTextEquals(final String by, final String id, final String text) throws Exception {
-        getB(textInElement(getBy(by,id), text, false));
+        waitUntil(textAssertion(by, id, text, false, false));
     }
 
     @RobotKeyword("Verifies that given element exists and is visible in DOM and it does not contain expected text. "
@@ -413,7 +1276,7 @@ public class WebDriverKeywords {
                    + "| ElementTextNotContains | name  | myElement               | text |\n")
     @ArgumentNames({"by","id","text"})
     public void elementTextNotContains(final String by, final String id, final String text) throws Exception {
-        getB(ExpectedConditions.not(textInElement(getBy(by,id), text, true)));
+        waitUntil(textAssertion(by, id, text, true, true));
     }
 
     @RobotKeyword("Verifies that given element exists and is visible in DOM and it does not contain expected text. "
@@ -426,7 +1289,138 @@ public class WebDriverKeywords {
                    + "| ElementTextNotEquals | name  | myElement               | text |\n")
     @ArgumentNames({"by","id","text"})
     public void elementTextNotEquals(final String by, final String id, final String text) throws Exception {
-        getB(ExpectedConditions.not(textInElement(getBy(by,id), text, false)));
+        waitUntil(textAssertion(by, id, text, false, true));
+    }
+
+    @RobotKeyword("Reads the page source of the current browser once and parses it into an in-memory snapshot, in which the "
+                   + "keywords ending with FromSnapshot or InSnapshot find their elements without a round trip to the browser. "
+                   + "Use it for the assertions on a page that no longer changes. The snapshot is not updated by clicks or "
+                   + "scripts, it is dropped by NavigateToURL, the frame and window switching keywords and DropDomSnapshot. "
+                   + "Style sheets and scripts are not applied to the snapshot, so an element is hidden in it only by its "
+                   + "hidden attribute, its inline style or as a hidden input. The snapshot keywords do not wait: "
+                   + "they fail at once if the element is not in the snapshot. "
+                   + "The optional maxChars limits the length of the page source, which is "
+                   + DomSnapshot.DEFAULT_MAX_CHARS + " characters by default, so that a very large page does not use up the memory.\n\n"
+                   + "Examples:\n"
+                   + "| TakeDomSnapshot |\n"
+                   + "| TakeDomSnapshot | 10000000 |\n")
+    @ArgumentNames({"maxChars="})
+    public void takeDomSnapshot(final String maxChars) throws Exception {
+        BrowserSession session = sessions.current();
+        long start = System.nanoTime();
+        DomSnapshot snapshot = DomSnapshot.take(drv(), Integer.parseInt(maxChars));
+        session.setSnapshot(snapshot);
+        System.out.println(String.format("*INFO* Took a snapshot of %d characters in %d ms", snapshot.length(),
+                                         TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)));
+    }
+
+    @RobotKeywordOverload
+    public void takeDomSnapshot() throws Exception {
+        takeDomSnapshot(String.valueOf(DomSnapshot.DEFAULT_MAX_CHARS));
+    }
+
+    @RobotKeyword("Drops the snapshot taken with TakeDomSnapshot, for example after an action that changed the page.\n\n"
+                   + "Example:\n"
+                   + "| DropDomSnapshot |\n")
+    public void dropDomSnapshot() {
+        sessions.current().setSnapshot(null);
+    }
+
+    @RobotKeyword("Like GetTextOfElement, but reads the text from the snapshot taken with TakeDomSnapshot.\n\n"
+                   + "Examples:\n"
+                   + "| ${text}= | GetTextOfElementFromSnapshot | id    | someId                  |\n"
+                   + "| ${text}= | GetTextOfElementFromSnapshot | xpath | //element[@id='someId'] |\n")
+    @ArgumentNames({"by","id"})
+    public String getTextOfElementFromSnapshot(final String by, final String id) {
+        return DomSnapshot.text(snapshotElement(by, id));
+    }
+
+    @RobotKeyword("Like GetTextsOfElements, but reads the texts from the snapshot taken with TakeDomSnapshot. "
+                   + "Returns an empty list if no element matches.\n\n"
+                   + "Examples:\n"
+                   + "| @{texts}= | GetTextsOfElementsFromSnapshot | xpath       | //table[@id='results']//td[2] |\n"
+                   + "| @{texts}= | GetTextsOfElementsFromSnapshot | cssSelector | ul.items > li                 |\n")
+    @ArgumentNames({"by","id"})
+    public List<String> getTextsOfElementsFromSnapshot(final String by, final String id) {
+        List<String> texts = new ArrayList<String>();
+        for (DomElement e : snapshot().find(by, id)) {
+            texts.add(DomSnapshot.text(e));
+        }
+        return texts;
+    }
+
+    @RobotKeyword("Like GetAttributesOfElements, but reads the attributes from the snapshot taken with TakeDomSnapshot. "
+                   + "The values are the ones of the page source, so properties changed by scripts or typing are not seen. "
+                   + "Returns an empty list if no element matches.\n\n"
+                   + "Examples:\n"
+                   + "| @{links}= | GetAttributesOfElementsFromSnapshot | tagName | a | href |\n")
+    @ArgumentNames({"by","id","attribute"})
+    public List<String> getAttributesOfElementsFromSnapshot(final String by, final String id, final String attribute) {
+        List<String> values = new ArrayList<String>();
+        for (DomElement e : snapshot().find(by, id)) {
+            values.add(DomSnapshot.attribute(e, attribute));
+        }
+        return values;
+    }
+
+    @RobotKeyword("Like ElementExists, but verifies that the element is visible in the snapshot taken with TakeDomSnapshot.\n\n"
+                   + "Examples:\n"
+                   + "| ElementExistsInSnapshot | id    | someId                  |\n"
+                   + "| ElementExistsInSnapshot | xpath | //element[@id='someId'] |\n")
+    @ArgumentNames({"by","id"})
+    public void elementExistsInSnapshot(final String by, final String id) {
+        if (!DomSnapshot.displayed(snapshotElement(by, id))) {
+            throw new AssertionError(String.format("Element found by %s=%s is not visible in the snapshot", by, id));
+        }
+    }
+
+    @RobotKeyword("Like ElementDoesNotExist, but verifies that no visible element matches in the snapshot taken with TakeDomSnapshot.\n\n"
+                   + "Examples:\n"
+                   + "| ElementDoesNotExistInSnapshot | id    | someId                  |\n"
+                   + "| ElementDoesNotExistInSnapshot | xpath | //element[@id='someId'] |\n")
+    @ArgumentNames({"by","id"})
+    public void elementDoesNotExistInSnapshot(final String by, final String id) {
+        for (DomElement e : snapshot().find(by, id)) {
+            if (DomSnapshot.displayed(e)) {
+                throw new AssertionError(String.format("Element found by %s=%s is visible in the snapshot", by, id));
+            }
+        }
+    }
+
+    @RobotKeyword("Like ElementTextContains, but reads the text from the snapshot taken with TakeDomSnapshot.\n\n"
+                   + "Examples:\n"
+                   + "| ElementTextContainsInSnapshot | id    | someId                  | text |\n"
+                   + "| ElementTextContainsInSnapshot | xpath | //element[@id='someId'] | text |\n")
+    @ArgumentNames({"by","id","text"})
+    public void elementTextContainsInSnapshot(final String by, final String id, final String text) {
+        snapshotTextAssertion(by, id, text, true, false);
+    }
+
+    @RobotKeyword("Like ElementTextEquals, but reads the text from the snapshot taken with TakeDomSnapshot.\n\n"
+                   + "Examples:\n"
+                   + "| ElementTextEqualsInSnapshot | id    | someId                  | text |\n"
+                   + "| ElementTextEqualsInSnapshot | xpath | //element[@id='someId'] | text |\n")
+    @ArgumentNames({"by","id","text"})
+    public void elementTextEqualsInSnapshot(final String by, final String id, final String text) {
+        snapshotTextAssertion(by, id, text, false, false);
+    }
+
+    @RobotKeyword("Like ElementTextNotContains, but reads the text from the snapshot taken with TakeDomSnapshot.\n\n"
+                   + "Examples:\n"
+                   + "| ElementTextNotContainsInSnapshot | id    | someId                  | text |\n"
+                   + "| ElementTextNotContainsInSnapshot | xpath | //element[@id='someId'] | text |\n")
+    @ArgumentNames({"by","id","text"})
+    public void elementTextNotContainsInSnapshot(final String by, final String id, final String text) {
+        snapshotTextAssertion(by, id, text, true, true);
+    }
+
+    @RobotKeyword("Like ElementTextNotEquals, but reads the text from the snapshot taken with TakeDomSnapshot.\n\n"
+                   + "Examples:\n"
+                   + "| ElementTextNotEqualsInSnapshot | id    | someId                  | text |\n"
+                   + "| ElementTextNotEqualsInSnapshot | xpath | //element[@id='someId'] | text |\n")
+    @ArgumentNames({"by","id","text"})
+    public void elementTextNotEqualsInSnapshot(final String by, final String id, final String text) {
+        snapshotTextAssertion(by, id, text, false, true);
     }
 
     @RobotKeyword("Clicks OK button on a javascript alert window. "
@@ -434,7 +1428,7 @@ public class WebDriverKeywords {
                    + "Example:\n"
                    + "| ClickPopupOk |\n")
     public void clickPopupOk() throws Exception {
-        getA(ExpectedConditions.alertIsPresent()).accept();
+        waitUntil(ExpectedConditions.alertIsPresent()).accept();
     }
 
     @RobotKeyword("Clicks Cancel button on a javascript alert window. "
@@ -442,7 +1436,7 @@ public class WebDriverKeywords {
                    + "Example:\n"
                    + "| ClickPopupCancel |\n")
     public void clickPopupCancel() throws Exception {
-        getA(ExpectedConditions.alertIsPresent()).dismiss();
+        waitUntil(ExpectedConditions.alertIsPresent()).dismiss();
     }
 
     @RobotKeyword("Switches the current context to the specified iFrame. "
@@ -451,40 +1445,49 @@ public class WebDriverKeywords {
                    + "| SwitchToFrame | someID |\n")
     @ArgumentNames({"id"})
     public void switchToFrame(final String id) throws Exception {
-        drv = getD(ExpectedConditions.frameToBeAvailableAndSwitchToIt(id));
+        changeContext();
+        waitUntil(ExpectedConditions.frameToBeAvailableAndSwitchToIt(id));
     }
 
     @RobotKeyword("Switches the current context out from an iFrame.\n\n"
                    + "Example:\n"
                    + "| SwitchToDefaultContext |\n")
     public void switchToDefaultContext() throws Exception {
-        drv.switchTo().defaultContent();
+        changeContext();
+        drv().switchTo().defaultContent();
     }
 
     @RobotKeyword("Switches the current context to other window, which can be referenced by giving a part of its title text as an argument. "
-                   + "The keyword uses the specified elementTimeout to wait until the window is available.\n\n"
+                   + "The keyword uses the specified elementTimeout to wait until the window is available. While waiting, the "
+                   + "current window and the windows opened during the wait are checked on every poll, the windows opened "
+                   + "before the wait once, so a background window whose title changes later in the wait is not found.\n\n"
                    + "Example:\n"
                    + "| SwitchToWindowWithTitle | partial title text |\n")
     @ArgumentNames({"title"})
     public void switchToWindowWithTitle(final String title) throws Exception {
-        drv = getD(switchToBrowserWindow("return window.document.title;", title, false));
+        changeContext();
+        waitUntil(switchToIndexedWindow(sessions.current().getWindows(), false, title));
     }
 
     @RobotKeyword("Switches the current context to other window, which can be referenced by giving its URL text as an argument. "
-                   + "The keyword uses the specified elementTimeout to wait until the window is available.\n\n"
+                   + "The keyword uses the specified elementTimeout to wait until the window is available. The windows are "
+                   + "checked during the wait as with SwitchToWindowWithTitle.\n\n"
                    + "Example:\n"
                    + "| SwitchToWindowWithURL | URL text |\n")
     @ArgumentNames({"url"})
     public void switchToWindowWithURL(final String url) throws Exception {
-        drv = getD(switchToBrowserWindow("return window.document.URL;", url, false));
+        changeContext();
+        waitUntil(switchToIndexedWindow(sessions.current().getWindows(), true, url));
     }
 
-    @RobotKeyword("Switches the current context to next window, the 'next' is defined internally. "
+    @RobotKeyword("Switches the current context to next window, which is the window opened after the current one. "
+                   + "From the last opened window the keyword switches back to the first one. "
                    + "The keyword uses the specified elementTimeout to wait until the window is available.\n\n"
                    + "Example:\n"
                    + "| SwitchToNextWindow |\n")
     public void switchToNextWindow() throws Exception {
-        drv = getD(switchToBrowserWindow("window handle", "next index", true));
+        changeContext();
+        waitUntil(switchToNextIndexedWindow(sessions.current().getWindows()));
     }
 
     @RobotKeyword("Assuming that the current focus is on some temporary pop-up window, "
@@ -496,13 +1499,15 @@ public class WebDriverKeywords {
                    + "| SwitchToMainWindow | closeOldWindow |\n")
     @ArgumentNames({"oldWindow="})
     public void switchToMainWindow(final String oldWindow) throws Exception {
-        drv.close();
-        drv = drv.switchTo().window(mainWindowHandle);
+        drv().close();
+        changeContext();
+        drv().switchTo().window(sessions.current().getMainWindowHandle());
     }
 
     @RobotKeywordOverload
     public void switchToMainWindow() throws Exception {
-        drv = drv.switchTo().window(mainWindowHandle);
+        changeContext();
+        drv().switchTo().window(sessions.current().getMainWindowHandle());
     }
 
     @RobotKeyword("Simulates a drag and drop from element1 to element2. "
@@ -517,9 +1522,9 @@ public class WebDriverKeywords {
                    + "| DragAndDrop | name  | myElement               | name  | myElement               |\n")
     @ArgumentNames({"by1","id1","by2","id2"})
     public void dragAndDrop(String by1, String id1, String by2, String id2) throws Exception {
-        WebElement e1 = getE(ExpectedConditions.visibilityOfElementLocated(getBy(by1,id1)));
-        WebElement e2 = getE(ExpectedConditions.visibilityOfElementLocated(getBy(by2,id2)));
-        new Actions(drv).dragAndDrop(e1, e2).perform();
+        WebElement e1 = waitUntil(visibleElement(getBy(by1,id1)));
+        WebElement e2 = waitUntil(visibleElement(getBy(by2,id2)));
+        new Actions(drv()).dragAndDrop(e1, e2).perform();
     }
 
     @RobotKeyword("Simulates a drag and drop measured by pixel-coordinate distance from given element. "
@@ -535,8 +1540,8 @@ public class WebDriverKeywords {
                    + "| dragAndDropBy | name  | myElement               | 10  | 10  |\n")
     @ArgumentNames({"by","id","x","y"})
     public void dragAndDropBy(String by, String id, String x, String y) throws Exception { 
-        WebElement e = getE(ExpectedConditions.visibilityOfElementLocated(getBy(by,id)));
-        new Actions(drv).dragAndDropBy(e, Integer.parseInt(x), Integer.parseInt(y)).perform();
+        WebElement e = waitUntil(visibleElement(getBy(by,id)));
+        new Actions(drv()).dragAndDropBy(e, Integer.parseInt(x), Integer.parseInt(y)).perform();
     }
 
     @RobotKeyword("Just like a click, but does not release the left mouse button. "
@@ -551,8 +1556,8 @@ public class WebDriverKeywords {
                    + "| MouseDownOnElement | name  | myElement               |\n")
     @ArgumentNames({"by","id"})
     public void mouseDownOnElement(final String by, final String id) throws Exception { 
-        WebElement e = getE(ExpectedConditions.visibilityOfElementLocated(getBy(by,id)));
-        new Actions(drv).clickAndHold(e).perform();
+        WebElement e = waitUntil(visibleElement(getBy(by,id)));
+        new Actions(drv()).clickAndHold(e).perform();
     }
 
     @RobotKeyword("Releases the left mouse button after mousedown has been used. "
@@ -567,8 +1572,8 @@ public class WebDriverKeywords {
                    + "| MouseUpOnElement | name  | myElement               |\n")
     @ArgumentNames({"by","id"})
     public void mouseUpOnElement(final String by, final String id) throws Exception { 
-        WebElement e = getE(ExpectedConditions.visibilityOfElementLocated(getBy(by,id)));
-        new Actions(drv).release(e).perform();
+        WebElement e = waitUntil(visibleElement(getBy(by,id)));
+        new Actions(drv()).release(e).perform();
     }
 
     @RobotKeyword("Simulates hovering a mouse over a web element. "
@@ -583,8 +1588,8 @@ public class WebDriverKeywords {
                    + "| HoverOnElement | name  | myElement               |\n")
     @ArgumentNames({"by","id"})
     public void hoverOnElement(final String by, final String id) throws Exception { 
-        WebElement e = getE(ExpectedConditions.visibilityOfElementLocated(getBy(by,id)));
-        new Actions(drv).moveToElement(e).perform();
+        WebElement e = waitUntil(visibleElement(getBy(by,id)));
+        new Actions(drv()).moveToElement(e).perform();
     }
 
     @RobotKeyword("Double clicks the left mouse mouse button over a web element. "
@@ -599,8 +1604,8 @@ public class WebDriverKeywords {
                    + "| DoubleClickOnElement | name  | myElement               |\n")
     @ArgumentNames({"by","id"})
     public void doubleClickOnElement(final String by, final String id) throws Exception { 
-        WebElement e = getE(ExpectedConditions.visibilityOfElementLocated(getBy(by,id)));
-        new Actions(drv).doubleClick(e).perform();
+        WebElement e = waitUntil(visibleElement(getBy(by,id)));
+        new Actions(drv()).doubleClick(e).perform();
     }
 
     @RobotKeyword("Clicks the right mouse mouse button over a web element. "
@@ -615,8 +1620,8 @@ public class WebDriverKeywords {
                    + "| RightClickOnElement | name  | myElement               |\n")
     @ArgumentNames({"by","id"})
     public void rightClickOnElement(final String by, final String id) throws Exception { 
-        WebElement e = getE(ExpectedConditions.visibilityOfElementLocated(getBy(by,id)));
-        new Actions(drv).contextClick(e).perform();
+        WebElement e = waitUntil(visibleElement(getBy(by,id)));
+        new Actions(drv()).contextClick(e).perform();
     }
 
     @RobotKeyword("Clicks the left mouse button at a pixel-coordinate distance from given element. "
@@ -631,8 +1636,38 @@ public class WebDriverKeywords {
                    + "| ClickOffsetOnElement | name  | myElement               | 10  | 10  |\n")
     @ArgumentNames({"by","id","x","y"})
     public void clickOffsetOnElement(String by, String id, String x, String y) throws Exception { 
-        WebElement e = getE(ExpectedConditions.visibilityOfElementLocated(getBy(by,id)));
-        new Actions(drv).moveToElement(e).moveByOffset(Integer.parseInt(x),Integer.parseInt(y)).click().perform();
+        WebElement e = waitUntil(visibleElement(getBy(by,id)));
+        new Actions(drv()).moveToElement(e).moveByOffset(Integer.parseInt(x),Integer.parseInt(y)).click().perform();
+    }
+
+    @RobotKeyword("Performs a sequence of mouse and keyboard steps as one chain of the webdriver's ActionBuilder class, "
+                   + "so that there are no keyword gaps between the steps of a gesture such as drawing on a canvas, a drag "
+                   + "over several points or opening a hover menu. Each argument is one step: the name of the step followed "
+                   + "by its element as by:expression and its numbers. The steps are move by:expr [x y] (to the center of "
+                   + "the element or to an offset from its top-left corner), moveBy x y, click [by:expr], doubleClick [by:expr], "
+                   + "rightClick [by:expr], down [by:expr] and up [by:expr] (press and release the left button), keyDown KEY "
+                   + "and keyUp KEY (a modifier such as SHIFT or CONTROL), key KEY... (keys such as ENTER or TAB), type text "
+                   + "and pause ms. The steps are checked before anything is done, and all the elements they refer to are "
+                   + "waited for together with the specified elementTimeout until they are visible. "
+                   + "NOTE! Like the other mouse keywords this might not work on all newest browsers.\n\n"
+                   + "Examples:\n"
+                   + "| PerformActions | down id:canvas     | moveBy 40 0      | moveBy 0 40      | up                  |\n"
+                   + "| PerformActions | move css:nav .menu | pause 200        | click linkText:Log out |              |\n"
+                   + "| PerformActions | click name:q       | keyDown CONTROL  | key A            | keyUp CONTROL       | type new text |\n")
+    @ArgumentNames({"*steps"})
+    public void performActions(final String[] steps) throws Exception {
+        final ActionChain chain = ActionChain.parse(steps);
+        act("PerformActions", new Callable<Void>() {
+            public Void call() throws Exception {
+                List<WebElement> elements = Collections.emptyList();
+                if (!chain.locators().isEmpty()) {
+                    waitAfterAction();
+                    elements = waitUntil(visibilityOfAllFields(chain.locators()));
+                }
+                chain.build(drv(), elements).perform();
+                return null;
+            }
+        }, (Object) steps);
     }
 
     @RobotKeyword("Refreshes the current page by pressing F5. "
@@ -640,46 +1675,486 @@ public class WebDriverKeywords {
                    + "Example:\n"
                    + "| RefreshPage |\n")
     public void refreshPage() {
-        new Actions(drv).sendKeys(Keys.F5).perform();
+        new Actions(drv()).sendKeys(Keys.F5).perform();
     }
 
 
     // *** PRIVATE SUPPORT METHODS ***
 
-    // return Alert object after dynamic wait
-    private Alert getA(ExpectedCondition<Alert> condition) throws Exception {
-        return new WebDriverWait(drv, this.elementTimeout).until(condition);
+    // the driver of the current session once the actions queued on the session have run
+    private WebDriver drv() {
+        BrowserSession session = sessions.current();
+        session.getActions().drain();
+        return session.getDriver();
+    }
+
+    // drops the cached elements and the snapshot of the current session once the actions queued on the old
+    // page, frame or window have run, so that they cannot put their elements back in the cache
+    private void changeContext() {
+        drv();
+        sessions.current().contextChanged();
+    }
+
+    // runs the action now, or queues it on the pipeline of the current session in the async mode
+    private void act(final String keyword, final Callable<Void> action, final Object... args) throws Exception {
+        if (!this.asyncActions) {
+            action.call();
+            return;
+        }
+        final BrowserSession session = sessions.current();
+        session.getActions().submit(keyword + " " + Arrays.deepToString(args), new Callable<Void>() {
+            public Void call() throws Exception {
+                sessions.use(session);
+                return action.call();
+            }
+        });
     }
 
-    // return Boolean value after dynamic wait
-    private Boolean getB(ExpectedCondition<Boolean> condition) throws Exception {
-        return new WebDriverWait(drv, this.elementTimeout).until(condition);
+    // the optional arguments of OpenBrowser are the remoteUrl, the alias and the launch profile. The alias= and
+    // profile= options can be given in any position, the arguments without them fill the rest in this order
+    private void openSession(final String browser, final String... args) throws Exception {
+        String alias = null;
+        String profile = null;
+        List<String> plain = new ArrayList<String>();
+        for (String arg : args) {
+            if (isOption("profile", arg)) {
+                profile = optionValue("profile", arg);
+            } else if (isOption("alias", arg)) {
+                alias = optionValue("alias", arg);
+            } else {
+                plain.add(arg);
+            }
+        }
+        Iterator<String> rest = plain.iterator();
+        String remoteUrl = rest.hasNext() ? rest.next() : null;
+        if (alias == null) {
+            alias = rest.hasNext() ? rest.next() : SessionRegistry.threadAlias();
+        }
+        if (profile == null && rest.hasNext()) {
+            profile = rest.next();
+        }
+        FanOut.stop();
+        launchSession(alias, browser, remoteUrl, profile == null ? LaunchProfile.DEFAULT : LaunchProfile.named(profile));
     }
-    
-    // return WebDriver object after dynamic wait
-    private WebDriver getD(ExpectedCondition<WebDriver> condition) throws Exception {
-        return new WebDriverWait(drv, this.elementTimeout).until(condition);
+
+    // start or lease a browser for a new session and record how long it took
+    private void launchSession(final String alias, final String browser, final String remoteUrl,
+                               final LaunchProfile profile) throws Exception {
+        long start = System.nanoTime();
+        BrowserSession session = startSession(alias, leaseDriver(browser, remoteUrl, profile));
+        if (this.pageLoadTimeout >= 0) {
+            applyPageLoadTimeout(session.getDriver());
+        }
+        session.setLaunchMillis((System.nanoTime() - start) / 1000000);
+        System.out.println(String.format("*INFO* Opened %s with launch profile %s in %d ms", browser, profile, session.getLaunchMillis()));
     }
 
-    // return WebElement object after dynamic wait
-    private WebElement getE(ExpectedCondition<WebElement> condition) throws Exception {
-        return new WebDriverWait(drv, this.elementTimeout).until(condition);
+    // start a new browser, or lease one from the pool when the pooled mode is in use. The chrome arguments and the
+    // proxy are read once here, so that a browser the pool starts later is the one its key describes
+    private WebDriver leaseDriver(final String browser, final String remoteUrl, final LaunchProfile profile) throws Exception {
+        List<String> arguments = new ArrayList<String>(chromeArguments);
+        String proxyAddress = proxyAddress();
+        BrowserPool p = pool;
+        if (p == null) {
+            return driverFactory(browser, remoteUrl, profile, arguments, proxyAddress).create();
+        }
+        return p.lease(poolKey(browser, remoteUrl, profile, arguments, proxyAddress),
+                       driverFactory(browser, remoteUrl, profile, arguments, proxyAddress));
     }
 
-    // return By object using reflection to the static By class
+    // the optional arguments of NavigateToURL are the strategy and the wait target, given plain or as options
+    private void navigate(final String url, final String... args) throws Exception {
+        Navigation.Strategy strategy = Navigation.Strategy.NORMAL;
+        By target = null;
+        for (String arg : args) {
+            if (isOption("wait", arg)) {
+                String locator = optionValue("wait", arg);
+                int colon = locator.indexOf(':');
+                if (colon < 0) {
+                    throw new IllegalArgumentException("The wait option is given as wait=by:locator, got '" + arg + "'");
+                }
+                target = Locators.get(locator.substring(0, colon), locator.substring(colon + 1));
+            } else {
+                strategy = Navigation.Strategy.named(optionValue("strategy", arg));
+            }
+        }
+        changeContext();
+        if (strategy == Navigation.Strategy.NORMAL) {
+            drv().get(url);
+        } else {
+            Navigation.start(drv(), url);
+            if (strategy == Navigation.Strategy.EAGER) {
+                waitUntil(Navigation.interactive());
+            }
+        }
+        if (target != null) {
+            waitUntil(visibleElement(target));
+        }
+    }
+
+    private DomSnapshot snapshot() {
+        DomSnapshot snapshot = sessions.current().getSnapshot();
+        if (snapshot == null) {
+            throw new IllegalStateException("No snapshot of the current page, use the TakeDomSnapshot keyword first");
+        }
+        return snapshot;
+    }
+
+    private DomElement snapshotElement(final String by, final String id) {
+        DomElement e = snapshot().first(by, id);
+        if (e == null) {
+            throw new NoSuchElementException(String.format("No element found by %s=%s in the snapshot", by, id));
+        }
+        return e;
+    }
+
+    private void snapshotTextAssertion(final String by, final String id, final String text, final boolean contains, final boolean negate) {
+        String elementText = DomSnapshot.text(snapshotElement(by, id));
+        if ((contains ? elementText.contains(text) : elementText.equals(text)) == negate) {
+            throw new AssertionError(String.format("Expected text ('%s') %sto be %s in element found by %s=%s in the snapshot, "
+                                                   + "which had text ('%s')", text, negate ? "not " : "",
+                                                   contains ? "present" : "equal", by, id, elementText));
+        }
+    }
+
+    private void applyPageLoadTimeout(final WebDriver driver) {
+        driver.manage().timeouts().pageLoadTimeout(this.pageLoadTimeout, TimeUnit.SECONDS);
+    }
+
+    // the filtering proxy shared by all the browsers, started on first use
+    private static synchronized FilteringProxy filteringProxy() throws Exception {
+        if (proxy == null) {
+            proxy = new FilteringProxy();
+        }
+        return proxy;
+    }
+
+    // the filtering proxy if BlockUrlsMatching or ThrottleNetwork has started it, otherwise null
+    private static synchronized FilteringProxy runningProxy() {
+        return proxy;
+    }
+
+    // stops the filtering proxy once it has no filters left and no open browser can be using it
+    private static synchronized void stopUnusedProxy() {
+        if (proxy != null && !proxy.isFiltering() && sessions.all().isEmpty()) {
+            proxy.close();
+            proxy = null;
+        }
+    }
+
+    // browsers are started with the filtering proxy while it has filters set, see proxyAddress
+    private static void addProxy(final DesiredCapabilities cap, final String address) {
+        if (address != null) {
+            Proxy settings = new Proxy();
+            settings.setHttpProxy(address);
+            settings.setSslProxy(address);
+            cap.setCapability(CapabilityType.PROXY, settings);
+        }
+    }
+
+    // the address of the filtering proxy the browsers are started with, null when they are started without it
+    private static synchronized String proxyAddress() {
+        return proxy != null && proxy.isFiltering() ? proxy.address() : null;
+    }
+
+    // pooled browsers are shared only between OpenBrowser calls that would start an identical browser
+    private static String poolKey(final String browser, final String remoteUrl, final LaunchProfile profile,
+                                  final List<String> arguments, final String proxyAddress) throws Exception {
+        String key = browser + " " + remoteUrl + " " + profile + (proxyAddress == null ? "" : " proxy " + proxyAddress);
+        // the chrome options are sent to remote browsers only with a launch profile, see createRemoteDriver
+        boolean options = browser.equals("chrome") && (remoteUrl == null || profile != LaunchProfile.DEFAULT);
+        return options ? key + " " + profile.chromeOptions(arguments).toJson() : key;
+    }
+
+    private DriverFactory driverFactory(final String browser, final String remoteUrl, final LaunchProfile profile,
+                                        final List<String> arguments, final String proxyAddress) {
+        return new DriverFactory() {
+            public WebDriver create() throws Exception {
+                return remoteUrl == null ? createLocalDriver(browser, profile, arguments, proxyAddress)
+                                         : createRemoteDriver(browser, remoteUrl, profile, arguments, proxyAddress);
+            }
+        };
+    }
+
+    private WebDriver createRemoteDriver(final String browser, final String remoteUrl, final LaunchProfile profile,
+                                         final List<String> arguments, final String proxyAddress) throws Exception {
+        DesiredCapabilities cap = null;
+        if (browser.equals("ie")) {
+            cap = DesiredCapabilities.internetExplorer();
+        } else if (browser.equals("chrome")) {
+            cap = DesiredCapabilities.chrome();
+            if (profile != LaunchProfile.DEFAULT) {
+                cap.setCapability(ChromeOptions.CAPABILITY, profile.chromeOptions(arguments));
+            }
+        } else {
+            cap = DesiredCapabilities.firefox();
+            cap.setCapability(CapabilityType.ELEMENT_SCROLL_BEHAVIOR, ElementScrollBehavior.BOTTOM);
+            cap.setCapability(FirefoxDriver.PROFILE, profile.remoteFirefoxProfile());
+        }
+        profile.addCapabilities(cap);
+        addProxy(cap, proxyAddress);
+        return RemoteScheduler.start(Arrays.asList(splitItems(remoteUrl)), cap, this.seleniumTransport);
+    }
+
+    private WebDriver createLocalDriver(final String browser, final LaunchProfile profile, final List<String> arguments,
+                                        final String proxyAddress) throws Exception {
+        if (browser.equals("ie")) {
+            DesiredCapabilities cap = DesiredCapabilities.internetExplorer();
+            profile.addCapabilities(cap);
+            addProxy(cap, proxyAddress);
+            return new InternetExplorerDriver(cap);
+        } else if (browser.equals("chrome")) {
+            DesiredCapabilities cap = DesiredCapabilities.chrome();
+            cap.setCapability(ChromeOptions.CAPABILITY, profile.chromeOptions(arguments));
+            profile.addCapabilities(cap);
+            addProxy(cap, proxyAddress);
+            return new ChromeDriver(cap);
+        }
+        DesiredCapabilities cap = new DesiredCapabilities();
+        cap.setCapability(CapabilityType.ELEMENT_SCROLL_BEHAVIOR, ElementScrollBehavior.BOTTOM);
+        profile.addCapabilities(cap);
+        addProxy(cap, proxyAddress);
+        return new FirefoxDriver(profile.firefoxBinary(), profile.localFirefoxProfile(), cap);
+    }
+
+    // register a freshly started browser as the current session, replacing one with the same alias
+    private BrowserSession startSession(final String alias, final WebDriver driver) {
+        driver.get("about:blank");
+        BrowserSession session = new BrowserSession(alias, driver);
+        session.setMainWindowHandle(driver.getWindowHandle());
+        BrowserSession old = sessions.register(session);
+        if (old != null) {
+            endSession(old);
+        }
+        return session;
+    }
+
+    private void exportKeywordMetrics() throws Exception {
+        if (metricsFile != null) {
+            KeywordMetrics.GLOBAL.export(metricsFile);
+        }
+    }
+
+    // closes the browsers of an OpenBrowsers group in parallel and ends the group
+    private void endSessions(final List<BrowserSession> closing) {
+        if (closing.size() == 1) {
+            endSession(closing.get(0));
+            return;
+        }
+        FanOut.stop();
+        Map<String, Callable<Void>> ends = new LinkedHashMap<String, Callable<Void>>();
+        for (final BrowserSession session : closing) {
+            ends.put(session.getAlias(), new Callable<Void>() {
+                public Void call() {
+                    endSession(session);
+                    return null;
+                }
+            });
+        }
+        FanOut.all(ends);
+    }
+
+    // give a pooled browser back to the pool, quit others
+    private void endSession(final BrowserSession session) {
+        String failure = session.getActions().close();
+        if (failure != null) {
+            System.out.println("*WARN* " + failure);
+        }
+        sessions.remove(session);
+        BrowserPool p = pool;
+        if (p == null || !p.release(session.getDriver())) {
+            session.getDriver().quit();
+        }
+    }
+
+    // optional keyword arguments are given as name=value, e.g. alias=w3
+    private static boolean isOption(final String name, final String arg) {
+        return arg.startsWith(name + "=");
+    }
+
+    private static String optionValue(final String name, final String arg) {
+        return isOption(name, arg) ? arg.substring(name.length() + 1) : arg;
+    }
+
+    // the optional argument of the stats keywords, reset is the only value they take
+    private static void checkReset(final String reset) {
+        if (!reset.equalsIgnoreCase("reset")) {
+            throw new IllegalArgumentException("Unknown argument '" + reset + "', use reset to zero the counters");
+        }
+    }
+
+    // return the value of the condition after dynamic wait
+    private <T> T waitUntil(ExpectedCondition<T> condition) throws Exception {
+        return waits.until(drv(), condition, this.elementTimeout);
+    }
+
+    // wait for the page to settle or sleep the fixed time set by SetWaitAfterAction, after the queued actions
+    // have run so that the wait covers the page they leave and does not share the driver with them
+    private void waitAfterAction() throws InterruptedException {
+        if (this.waitAfterAction <= 0) {
+            return;
+        }
+        drv();
+        long start = System.nanoTime();
+        try {
+            if (this.settleQuietWindow >= 0) {
+                try {
+                    PageSettle.await(sessions.current(), this.settleQuietWindow, this.waitAfterAction);
+                    return;
+                } catch (RuntimeException e) {
+                    System.out.println("*DEBUG* Page settle detection failed, using the fixed wait: " + e);
+                }
+            }
+            Thread.sleep(this.waitAfterAction);
+        } finally {
+            KeywordContext.addSleep(System.nanoTime() - start);
+        }
+    }
+
+    // return the By object of the locator strategy
     // id, name, xpath, className, linkText, partialLinkText, tagName, cssSelector
     private By getBy(final String by, final String id) throws Exception {
-        Thread.sleep(this.waitAfterAction);
-        return (By) By.class.getMethod(by, String.class).invoke(null,id);
+        waitAfterAction();
+        return Locators.get(by, id);
+    }
+
+    // element conditions that reuse the elements of the session while the element cache is on
+    private ExpectedCondition<WebElement> presentElement(final By locator) {
+        return this.elementCache ? sessions.current().getElements().present(locator) : ExpectedConditions.presenceOfElementLocated(locator);
+    }
+
+    private ExpectedCondition<WebElement> visibleElement(final By locator) {
+        return this.elementCache ? sessions.current().getElements().visible(locator) : ExpectedConditions.visibilityOfElementLocated(locator);
+    }
+
+    private ExpectedCondition<WebElement> clickableElement(final By locator) {
+        return this.elementCache ? sessions.current().getElements().clickable(locator) : ExpectedConditions.elementToBeClickable(locator);
+    }
+
+    // condition of the text assertion keywords in the mode set by SetTextAssertionMode
+    private ExpectedCondition<Boolean> textAssertion(final String by, final String id, final String text,
+                                                     final boolean contains, final boolean negate) throws Exception {
+        By locator = getBy(by, id);
+        if (!this.textAssertionsByScript) {
+            ExpectedCondition<Boolean> condition = textInElement(presentElement(locator), locator, text, contains);
+            return negate ? ExpectedConditions.not(condition) : condition;
+        }
+        sessions.current().ensureScriptTimeout(TEXT_WATCH_MILLIS + 5000);
+        return textInElementByScript(by, id, text, contains, negate);
+    }
+
+    // select options matched by text, value or index, with exclusive deselecting the other options of a multi-select
+    private void applySelection(final String by, final String id, final String match, final String[] options,
+                                final boolean exclusive) throws Exception {
+        if (!match.equals("text") && !match.equals("value") && !match.equals("index")) {
+            throw new IllegalArgumentException("Unknown option match '" + match + "', use text, value or index");
+        }
+        By locator = getBy(by, id);
+        if (this.selectByScript) {
+            Object error = waitUntil(optionsSelectedByScript(by, id, match, options, exclusive)).get("error");
+            if (!"".equals(error)) {
+                throw new IllegalStateException(String.format("Could not select options %s of element found by %s=%s: %s",
+                                                              Arrays.asList(options), by, id, error));
+            }
+            return;
+        }
+        Select select = new Select(waitUntil(visibleElement(locator)));
+        if (exclusive && select.isMultiple()) {
+            select.deselectAll();
+        }
+        for (String option : options) {
+            if (match.equals("value")) {
+                select.selectByValue(option);
+            } else if (match.equals("index")) {
+                select.selectByIndex(Integer.parseInt(option));
+            } else {
+                select.selectByVisibleText(option);
+            }
+        }
+    }
+
+    private static String[] splitItems(final String items) {
+        String[] split = items.split(",");
+        for (int i = 0; i < split.length; i++) {
+            split[i] = split[i].trim();
+        }
+        return split;
+    }
+
+    // validate groups of (by, id, ...) keyword arguments and return the (by, id) pairs of the groups
+    private List<String> formLocators(final String[] args, final int groupSize) throws Exception {
+        if (args.length == 0 || args.length % groupSize != 0) {
+            throw new IllegalArgumentException(String.format("Expected the arguments in groups of %d, got %d arguments", groupSize, args.length));
+        }
+        waitAfterAction();
+        List<String> locators = new ArrayList<String>();
+        for (int i = 0; i < args.length; i += groupSize) {
+            Locators.strategy(args[i]);
+            locators.add(args[i]);
+            locators.add(args[i + 1]);
+        }
+        return locators;
+    }
+
+    private static void failOnFieldErrors(final List<String> errors) {
+        if (!errors.isEmpty()) {
+            StringBuilder sb = new StringBuilder("Writing failed for " + errors.size() + " field(s):");
+            for (String error : errors) {
+                sb.append("\n").append(error);
+            }
+            throw new IllegalStateException(sb.toString());
+        }
+    }
+
+    private static ExpectedCondition<List<WebElement>> visibilityOfAllFields(final List<String> locators) {
+        return new ExpectedCondition<List<WebElement>>() {
+            List<String> missing = new ArrayList<String>();
+            @Override
+            @SuppressWarnings("unchecked")
+            public List<WebElement> apply(WebDriver d) {
+                List<WebElement> elements = (List<WebElement>) ((JavascriptExecutor) d).executeScript(DomScripts.RESOLVE_VISIBLE, locators);
+                missing.clear();
+                for (int i = 0; i < elements.size(); i++) {
+                    if (elements.get(i) == null) missing.add(locators.get(i * 2) + "=" + locators.get(i * 2 + 1));
+                }
+                return missing.isEmpty() ? elements : null;
+            }
+
+            @Override
+            public String toString() {
+                return String.format("all fields to be visible, missing fields %s", missing);
+            }
+        };
     }
 
-    private static ExpectedCondition<Boolean> textInElement(final By locator, final String text, final Boolean contains) {
+    private static ExpectedCondition<List<?>> formFilledByScript(final String[] fields) {
+        return new ExpectedCondition<List<?>>() {
+            List<String> missing = new ArrayList<String>();
+            @Override
+            public List<?> apply(WebDriver d) {
+                List<?> status = (List<?>) ((JavascriptExecutor) d).executeScript(DomScripts.FILL_FORM, Arrays.asList(fields));
+                missing.clear();
+                for (int i = 0; i < status.size(); i++) {
+                    if ("missing".equals(status.get(i))) missing.add(fields[i * 3] + "=" + fields[i * 3 + 1]);
+                }
+                return missing.isEmpty() ? status : null;
+            }
+
+            @Override
+            public String toString() {
+                return String.format("all fields to be visible, missing fields %s", missing);
+            }
+        };
+    }
+
+    private static ExpectedCondition<Boolean> textInElement(final ExpectedCondition<WebElement> element, final By locator,
+                                                            final String text, final Boolean contains) {
         return new ExpectedCondition<Boolean>() {
             String elementText;
             @Override
             public Boolean apply(WebDriver d) {
                 try {
-                    elementText = d.findElement(locator).getText().replace("\n", " ");
+                    elementText = element.apply(d).getText().replace("\n", " ");
                     if (contains) return elementText.contains(text);
                     else          return elementText.equals(text);
                 } catch (StaleElementReferenceException e) {
@@ -694,31 +2169,111 @@ public class WebDriverKeywords {
         };
     }
 
-    private static ExpectedCondition<WebDriver> switchToBrowserWindow(final String jScript, final String text, final Boolean next) {
+    // the select element and all the options are waited for, the outcome of the selection is in the "error" entry
+    private static ExpectedCondition<Map<?, ?>> optionsSelectedByScript(final String by, final String id, final String match,
+                                                                        final String[] options, final boolean exclusive) {
+        return new ExpectedCondition<Map<?, ?>>() {
+            Object missing;
+            @Override
+            public Map<?, ?> apply(WebDriver d) {
+                Map<?, ?> result = (Map<?, ?>) ((JavascriptExecutor) d).executeScript(
+                        DomScripts.SELECT_OPTIONS, by, id, match, Arrays.asList(options), exclusive);
+                missing = result == null ? null : result.get("missing");
+                return result == null || missing != null ? null : result;
+            }
+
+            @Override
+            public String toString() {
+                return String.format("select element found by %s=%s to be visible with options %s by %s, missing options %s",
+                                     by, id, Arrays.asList(options), match, missing);
+            }
+        };
+    }
+
+    // one value of each element matching the locator, or null until there is a matching element
+    private static ExpectedCondition<List<String>> elementValuesByScript(final String script, final String by, final String id, final String name) {
+        return new ExpectedCondition<List<String>>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public List<String> apply(WebDriver d) {
+                return (List<String>) ((JavascriptExecutor) d).executeScript(script, by, id, name == null ? "" : name);
+            }
+
+            @Override
+            public String toString() {
+                return String.format("elements to be present found by %s=%s", by, id);
+            }
+        };
+    }
+
+    private static ExpectedCondition<Map<?, ?>> tableRows(final String by, final String id, final long first, final long count) {
+        return new ExpectedCondition<Map<?, ?>>() {
+            @Override
+            public Map<?, ?> apply(WebDriver d) {
+                return (Map<?, ?>) ((JavascriptExecutor) d).executeScript(DomScripts.TABLE_ROWS, by, id, first, count);
+            }
+
+            @Override
+            public String toString() {
+                return String.format("table to be present found by %s=%s", by, id);
+            }
+        };
+    }
+
+    // the element text is compared in the browser, which returns only the outcome and an excerpt of the text
+    private static ExpectedCondition<Boolean> textInElementByScript(final String by, final String id, final String text,
+                                                                    final boolean contains, final boolean negate) {
+        return new ExpectedCondition<Boolean>() {
+            Object excerpt;
+            @Override
+            public Boolean apply(WebDriver d) {
+                List<?> result = (List<?>) ((JavascriptExecutor) d).executeAsyncScript(
+                        DomScripts.TEXT_MATCHES, by, id, text, contains, negate, TEXT_WATCH_MILLIS);
+                if (result == null) {
+                    excerpt = null;
+                    return null;
+                }
+                excerpt = result.get(1);
+                return Boolean.TRUE.equals(result.get(0));
+            }
+
+            @Override
+            public String toString() {
+                return String.format("text ('%s') %sto be %s in element found by %s=%s, which had text ('%s')",
+                                     text, negate ? "not " : "", contains ? "present" : "equal", by, id, excerpt);
+            }
+        };
+    }
+
+    // the first poll looks only at cached and new windows, the later ones re-read all of them, as an
+    // open window may navigate to the title or URL while waiting
+    private static ExpectedCondition<WebDriver> switchToIndexedWindow(final WindowIndex index, final boolean byUrl, final String text) {
         return new ExpectedCondition<WebDriver>() {
+            final long since = System.nanoTime();
+            int polls;
             @Override
             public WebDriver apply(WebDriver d) {
-                    String wText = "";
-                    String origHandle = d.getWindowHandle();
-                    for (String handle : d.getWindowHandles()) {
-                        if (next && !handle.equals(origHandle)) {
-                            return d.switchTo().window(handle);
-                        }
-                        if (!next) {
-                            d.switchTo().window(handle);
-                            wText = (String)((JavascriptExecutor) d).executeScript(jScript);
-                            if (wText.contains(text)) {
-                                return d.switchTo().window(handle);
-                            }
-                        }
-                    }
-                    d.switchTo().window(origHandle);
-                    return null;
+                // the windows opened before the wait are read again once, on the first miss
+                return index.switchTo(d, byUrl, text, since, ++polls == 2) == null ? null : d;
+            }
+
+            @Override
+            public String toString() {
+                return String.format("window containing ('%s') to be present found by %s", text, byUrl ? "URL" : "title");
+            }
+        };
+    }
+
+    private static ExpectedCondition<WebDriver> switchToNextIndexedWindow(final WindowIndex index) {
+        return new ExpectedCondition<WebDriver>() {
+            @Override
+            public WebDriver apply(WebDriver d) {
+                return index.switchToNext(d) == null ? null : d;
             }
 
             @Override
             public String toString() {
-                return String.format("window containing ('%s') to be present found by %s", text, jScript);
+                return "another window to be present";
             }
         };
     }
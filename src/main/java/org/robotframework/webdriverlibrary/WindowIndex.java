@@ -0,0 +1,117 @@
+package org.robotframework.webdriverlibrary;
+
+import org.openqa.selenium.JavascriptExecutor;
+import org.openqa.selenium.WebDriver;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Set;
+
+
+// the windows of a browser session in the order they were first seen, with their title and URL
+// cached, so that switching by title or URL does not have to visit every window on every poll.
+// New handles are found by diffing getWindowHandles() against the index, cached values are
+// verified when a window is switched to. The current window and the windows that appeared during
+// the current wait are re-read on every miss, as their title changes while they load, older
+// windows only on request, since reading a window other than the current one means switching to it.
+class WindowIndex {
+
+    private static final String TITLE_AND_URL = "return [window.document.title, window.document.URL];";
+
+    private static class Window {
+        final String handle;
+        final long seen = System.nanoTime();
+        String title;
+        String url;
+
+        Window(final String handle) {
+            this.handle = handle;
+        }
+
+        boolean matches(final boolean byUrl, final String text) {
+            String value = byUrl ? url : title;
+            return value != null && value.contains(text);
+        }
+    }
+
+    private final LinkedHashMap<String, Window> windows = new LinkedHashMap<String, Window>();
+
+    // adds a window known without asking the driver, e.g. the main window
+    synchronized void add(final String handle) {
+        if (!windows.containsKey(handle)) {
+            windows.put(handle, new Window(handle));
+        }
+    }
+
+    synchronized List<String> handles() {
+        return new ArrayList<String>(windows.keySet());
+    }
+
+    // switches to the first window whose title or URL contains the text and returns its handle,
+    // or returns null with the original window focused again. The current window and the windows
+    // first seen after the since timestamp (System.nanoTime) are read again, with rescan set all are.
+    synchronized String switchTo(final WebDriver d, final boolean byUrl, final String text, final long since, final boolean rescan) {
+        String original = d.getWindowHandle();
+        String focused = original;
+        refresh(d);
+        Set<Window> read = new HashSet<Window>();
+        for (Window w : new ArrayList<Window>(windows.values())) {
+            if (w.title != null && w.matches(byUrl, text)) {
+                focused = read(d, w, focused);
+                read.add(w);
+                if (w.matches(byUrl, text)) {
+                    return w.handle;
+                }
+            }
+        }
+        for (Window w : new ArrayList<Window>(windows.values())) {
+            if (read.contains(w) || w.title != null && w.seen < since && !rescan && !w.handle.equals(original)) {
+                continue;
+            }
+            focused = read(d, w, focused);
+            if (w.matches(byUrl, text)) {
+                return w.handle;
+            }
+        }
+        if (!focused.equals(original)) {
+            d.switchTo().window(original);
+        }
+        return null;
+    }
+
+    // switches to the window opened after the current one, wrapping around to the first, or
+    // returns null when there is no other window
+    synchronized String switchToNext(final WebDriver d) {
+        String focused = d.getWindowHandle();
+        refresh(d);
+        List<String> order = new ArrayList<String>(windows.keySet());
+        if (order.size() < 2) {
+            return null;
+        }
+        String next = order.get((order.indexOf(focused) + 1) % order.size());
+        d.switchTo().window(next);
+        return next;
+    }
+
+    // drops closed windows and appends new ones in the order the driver lists them
+    private void refresh(final WebDriver d) {
+        Set<String> current = d.getWindowHandles();
+        windows.keySet().retainAll(current);
+        for (String handle : current) {
+            add(handle);
+        }
+    }
+
+    // reads the title and URL of the window, which is left focused
+    private static String read(final WebDriver d, final Window w, final String focused) {
+        if (!w.handle.equals(focused)) {
+            d.switchTo().window(w.handle);
+        }
+        List<?> values = (List<?>) ((JavascriptExecutor) d).executeScript(TITLE_AND_URL);
+        w.title = String.valueOf(values.get(0));
+        w.url = String.valueOf(values.get(1));
+        return w.handle;
+    }
+}
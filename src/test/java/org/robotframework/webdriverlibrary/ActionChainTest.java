@@ -0,0 +1,40 @@
+package org.robotframework.webdriverlibrary;
+
+import junit.framework.TestCase;
+
+import java.util.Arrays;
+
+/**
+ * Unit test for the steps of PerformActions.
+ */
+public class ActionChainTest
+    extends TestCase
+{
+    public void testElementsAreListedOnce()
+    {
+        ActionChain chain = ActionChain.parse( new String[] {
+            "move xpath://div[@class='menu bar'] 10 -5", "click id:save", "down", "moveBy 40 0", "up id:save",
+            "keyDown shift", "key TAB ENTER", "type  two words", "pause 50" } );
+        assertEquals( Arrays.asList( "xpath", "//div[@class='menu bar']", "id", "save" ), chain.locators() );
+    }
+
+    public void testInvalidStepsAreRejected()
+    {
+        String[][] invalid = {
+            {}, { "hover id:x" }, { "move" }, { "moveBy 10" }, { "click byId:x" }, { "click x" },
+            { "key F99" }, { "keyDown" }, { "type" }, { "pause -1" } };
+        for ( String[] steps : invalid ) {
+            try {
+                ActionChain.parse( steps );
+                fail( "expected " + Arrays.toString( steps ) + " to be rejected" );
+            } catch ( IllegalArgumentException expected ) {
+            }
+        }
+        try {
+            ActionChain.parse( new String[] { "click", "moveBy a b" } );
+            fail( "expected the offsets to be checked" );
+        } catch ( IllegalArgumentException expected ) {
+            assertTrue( expected.getMessage(), expected.getMessage().startsWith( "Step 2 'moveBy a b': " ) );
+        }
+    }
+}
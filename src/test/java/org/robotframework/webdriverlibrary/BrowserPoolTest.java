@@ -0,0 +1,84 @@
+package org.robotframework.webdriverlibrary;
+
+import junit.framework.TestCase;
+
+import org.openqa.selenium.WebDriver;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Collections;
+import java.util.List;
+import java.util.ArrayList;
+
+/**
+ * Unit test for the browser pool, using drivers that only answer the calls made by the pool.
+ */
+public class BrowserPoolTest
+    extends TestCase
+{
+    private final List<WebDriver> created = Collections.synchronizedList( new ArrayList<WebDriver>() );
+    private final List<WebDriver> quitted = Collections.synchronizedList( new ArrayList<WebDriver>() );
+
+    private final DriverFactory factory = new DriverFactory() {
+        public WebDriver create() {
+            WebDriver d = fakeDriver();
+            created.add( d );
+            return d;
+        }
+    };
+
+    public void testWarmedBrowserIsLeased() throws Exception
+    {
+        BrowserPool pool = new BrowserPool( 1, 10 );
+        pool.warmUp( "chrome", factory );
+        waitForIdle( pool, "chrome" );
+        assertSame( created.get( 0 ), pool.lease( "chrome", factory ) );
+        pool.shutdown();
+    }
+
+    public void testBrowserIsQuitAfterMaxUses() throws Exception
+    {
+        BrowserPool pool = new BrowserPool( 1, 1 );
+        WebDriver d = pool.lease( "firefox", factory );
+        assertTrue( pool.release( d ) );
+        assertTrue( quitted.contains( d ) );
+        pool.shutdown();
+    }
+
+    public void testUnknownDriverIsNotReleased() throws Exception
+    {
+        BrowserPool pool = new BrowserPool( 1, 1 );
+        assertFalse( pool.release( fakeDriver() ) );
+        pool.shutdown();
+    }
+
+    private static void waitForIdle( BrowserPool pool, String key ) throws InterruptedException
+    {
+        for ( int i = 0; i < 100 && pool.idleCount( key ) == 0; i++ ) {
+            Thread.sleep( 20 );
+        }
+        assertEquals( 1, pool.idleCount( key ) );
+    }
+
+    private WebDriver fakeDriver()
+    {
+        return (WebDriver) Proxy.newProxyInstance( getClass().getClassLoader(), new Class<?>[] { WebDriver.class },
+            new InvocationHandler() {
+                public Object invoke( Object proxy, Method method, Object[] args ) {
+                    if ( method.getName().equals( "quit" ) ) {
+                        quitted.add( (WebDriver) proxy );
+                    } else if ( method.getName().equals( "getWindowHandle" ) ) {
+                        return "main";
+                    } else if ( method.getName().equals( "getWindowHandles" ) ) {
+                        return Collections.singleton( "main" );
+                    } else if ( method.getName().equals( "hashCode" ) ) {
+                        return System.identityHashCode( proxy );
+                    } else if ( method.getName().equals( "equals" ) ) {
+                        return proxy == args[0];
+                    }
+                    return null;
+                }
+            } );
+    }
+}
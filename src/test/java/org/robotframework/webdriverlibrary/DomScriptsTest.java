@@ -0,0 +1,55 @@
+package org.robotframework.webdriverlibrary;
+
+import junit.framework.TestCase;
+
+import com.gargoylesoftware.htmlunit.BrowserVersion;
+
+import org.openqa.selenium.htmlunit.HtmlUnitDriver;
+
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * Unit test for the injected scripts, run in HtmlUnit.
+ */
+public class DomScriptsTest
+    extends TestCase
+{
+    private HtmlUnitDriver driver;
+
+    @Override
+    protected void setUp() throws Exception
+    {
+        driver = new HtmlUnitDriver( BrowserVersion.FIREFOX_24 );
+        driver.setJavascriptEnabled( true );
+        driver.get( "about:blank" );
+        driver.executeScript( "document.body.innerHTML = arguments[0];",
+            "<select id='multi' multiple><option>A</option><option>B</option><option value='x'>A</option></select>"
+            + "<select id='single'><option>B</option><option>A</option><option>A</option></select>" );
+    }
+
+    @Override
+    protected void tearDown() throws Exception
+    {
+        driver.quit();
+    }
+
+    public void testSelectOptionsSelectsEveryOptionWithTheText()
+    {
+        assertEquals( "", select( "multi", "A" ).get( "error" ) );
+        assertEquals( Arrays.asList( true, false, true ), selected( "multi" ) );
+        assertEquals( "", select( "single", "A" ).get( "error" ) );
+        assertEquals( Arrays.asList( false, true, false ), selected( "single" ) );
+    }
+
+    private Map<?, ?> select( String id, String text )
+    {
+        return (Map<?, ?>) driver.executeScript( DomScripts.SELECT_OPTIONS, "id", id, "text", Arrays.asList( text ), true );
+    }
+
+    private Object selected( String id )
+    {
+        return driver.executeScript( "var o = document.getElementById(arguments[0]).options, r = [];"
+            + "for (var i = 0; i < o.length; i++) { r.push(o[i].selected); } return r;", id );
+    }
+}
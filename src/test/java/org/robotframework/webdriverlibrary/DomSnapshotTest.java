@@ -0,0 +1,89 @@
+package org.robotframework.webdriverlibrary;
+
+import junit.framework.TestCase;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import com.gargoylesoftware.htmlunit.html.DomElement;
+
+/**
+ * Unit test for DomSnapshot.
+ */
+public class DomSnapshotTest
+    extends TestCase
+{
+    private static final String PAGE =
+          "<html><head><title>Results</title></head><body>"
+        + "<div id='summary' class='box wide'>Found <b>3</b>\n   results</div>"
+        + "<p id='hidden' style='color: red; display: none'>secret</p>"
+        + "<input type='hidden' name='token' value='abc'>"
+        + "<input name='q' value='query'>"
+        + "<ul><li class='item'>one</li><li class='item'>two</li><li class='item' hidden>three</li></ul>"
+        + "<a href='/next'>Next page</a>"
+        + "</body></html>";
+
+    private DomSnapshot snapshot;
+
+    @Override
+    protected void setUp() throws Exception
+    {
+        snapshot = DomSnapshot.parse( PAGE, "about:blank" );
+    }
+
+    public void testLocators()
+    {
+        assertEquals( "Found 3 results", DomSnapshot.text( snapshot.first( "id", "summary" ) ) );
+        assertEquals( "summary", snapshot.first( "className", "wide" ).getAttribute( "id" ) );
+        assertEquals( "summary", snapshot.first( "cssSelector", "div.box" ).getAttribute( "id" ) );
+        assertEquals( "summary", snapshot.first( "xpath", "//div[b='3']" ).getAttribute( "id" ) );
+        assertEquals( "query", DomSnapshot.attribute( snapshot.first( "name", "q" ), "value" ) );
+        assertNull( DomSnapshot.attribute( snapshot.first( "name", "q" ), "placeholder" ) );
+        assertEquals( 3, snapshot.find( "tagName", "li" ).size() );
+        assertEquals( "/next", snapshot.first( "linkText", "Next page" ).getAttribute( "href" ) );
+        assertNotNull( snapshot.first( "partialLinkText", "Next" ) );
+        assertNull( snapshot.first( "id", "missing" ) );
+        assertEquals( 0, snapshot.find( "xpath", "//div/text()" ).size() );
+    }
+
+    public void testHiddenElements()
+    {
+        assertFalse( DomSnapshot.displayed( snapshot.first( "id", "hidden" ) ) );
+        assertEquals( "", DomSnapshot.text( snapshot.first( "id", "hidden" ) ) );
+        assertFalse( DomSnapshot.displayed( snapshot.first( "name", "token" ) ) );
+        assertFalse( DomSnapshot.displayed( snapshot.first( "tagName", "title" ) ) );
+        List<DomElement> items = snapshot.find( "className", "item" );
+        assertTrue( DomSnapshot.displayed( items.get( 1 ) ) );
+        assertFalse( DomSnapshot.displayed( items.get( 2 ) ) );
+    }
+
+    public void testThreadsParseTheirOwnSnapshots() throws Exception
+    {
+        final List<DomSnapshot> parsed = new CopyOnWriteArrayList<DomSnapshot>();
+        Thread[] threads = new Thread[4];
+        for ( int i = 0; i < threads.length; i++ ) {
+            final int n = i;
+            threads[i] = new Thread() {
+                public void run()
+                {
+                    try {
+                        for ( int j = 0; j < 20; j++ ) {
+                            parsed.add( DomSnapshot.parse( "<html><body><p id='n'>" + n + "</p></body></html>", "about:blank" ) );
+                        }
+                    } catch ( Exception e ) {
+                        throw new RuntimeException( e );
+                    }
+                }
+            };
+            threads[i].start();
+        }
+        for ( Thread t : threads ) {
+            t.join();
+        }
+        assertEquals( 80, parsed.size() );
+        for ( DomSnapshot s : parsed ) {
+            assertEquals( 1, s.find( "id", "n" ).size() );
+        }
+        assertEquals( "Found 3 results", DomSnapshot.text( snapshot.first( "id", "summary" ) ) );
+    }
+}
@@ -0,0 +1,103 @@
+package org.robotframework.webdriverlibrary;
+
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Unit test for running keywords on several browsers in parallel.
+ */
+public class FanOutTest
+    extends TestCase
+{
+    private StubWebDriverServer stub;
+    private WebDriverKeywords keywords;
+    private final AtomicInteger calls = new AtomicInteger();
+
+    private final FanOut.Invoker title = new FanOut.Invoker() {
+        public Object invoke( String keyword, Object[] args )
+        {
+            calls.incrementAndGet();
+            try {
+                return keywords.getPageTitle();
+            } catch ( Exception e ) {
+                throw new RuntimeException( e );
+            }
+        }
+    };
+
+    @Override
+    protected void setUp() throws Exception
+    {
+        stub = new StubWebDriverServer();
+        keywords = new WebDriverKeywords();
+        keywords.openBrowsers( "chrome, chrome", stub.url() );
+    }
+
+    @Override
+    protected void tearDown() throws Exception
+    {
+        keywords.closeAllBrowsers();
+        stub.stop();
+    }
+
+    public void testKeywordRunsOnEveryBrowser()
+    {
+        Map<?, ?> titles = (Map<?, ?>) FanOut.run( "Get Page Title", new Object[0], title );
+        assertEquals( "[chrome, chrome-2]", titles.keySet().toString() );
+        assertEquals( "main", titles.get( "chrome-2" ) );
+        assertEquals( 2, calls.get() );
+
+        assertEquals( "main", FanOut.run( "set_find_element_timeout", new Object[0], title ) );
+        assertEquals( 3, calls.get() );
+    }
+
+    public void testFailuresAreReportedPerBrowser()
+    {
+        try {
+            FanOut.run( "clickElement", new Object[0], new FanOut.Invoker() {
+                public Object invoke( String keyword, Object[] args )
+                {
+                    throw new IllegalArgumentException( "no such element" );
+                }
+            } );
+            fail( "expected the failures to be reported" );
+        } catch ( IllegalStateException expected ) {
+            assertEquals( "Failed on 2 of 2 browsers:\n"
+                + "chrome: java.lang.IllegalArgumentException: no such element\n"
+                + "chrome-2: java.lang.IllegalArgumentException: no such element", expected.getMessage() );
+        }
+    }
+
+    public void testSwitchBrowserEndsTheFanOut()
+    {
+        keywords.switchBrowser( "chrome-2" );
+        assertEquals( "main", FanOut.run( "getPageTitle", new Object[0], title ) );
+        assertEquals( 1, calls.get() );
+    }
+
+    public void testCloseBrowserClosesTheGroupOnce() throws Exception
+    {
+        File metrics = File.createTempFile( "metrics", ".csv" );
+        metrics.deleteOnExit();
+        metrics.delete();
+        keywords.setKeywordMetricsFile( metrics.getPath() );
+        assertNull( FanOut.run( "Close Browser", new Object[0], new FanOut.Invoker() {
+            public Object invoke( String keyword, Object[] args )
+            {
+                calls.incrementAndGet();
+                try {
+                    keywords.closeBrowser();
+                } catch ( Exception e ) {
+                    throw new RuntimeException( e );
+                }
+                return null;
+            }
+        } ) );
+        assertEquals( 1, calls.get() );
+        assertTrue( FanOut.browsers().isEmpty() );
+        assertTrue( "the metrics are exported once", metrics.isFile() );
+    }
+}
@@ -0,0 +1,118 @@
+package org.robotframework.webdriverlibrary;
+
+import junit.framework.TestCase;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.apache.commons.io.IOUtils;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.net.Socket;
+import java.net.URL;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Unit test for the URL blocking and throttling proxy against an in-process origin server.
+ */
+public class FilteringProxyTest
+    extends TestCase
+{
+    private HttpServer origin;
+    private FilteringProxy proxy;
+    private final AtomicInteger served = new AtomicInteger();
+
+    @Override
+    protected void setUp() throws Exception
+    {
+        origin = HttpServer.create( new InetSocketAddress( "127.0.0.1", 0 ), 0 );
+        origin.createContext( "/", new HttpHandler() {
+            public void handle( HttpExchange exchange ) throws IOException {
+                served.incrementAndGet();
+                String request = IOUtils.toString( exchange.getRequestBody(), "UTF-8" );
+                byte[] body = ( "served " + exchange.getRequestURI() + ( request.length() == 0 ? "" : " " + request ) ).getBytes( "UTF-8" );
+                exchange.sendResponseHeaders( 200, body.length );
+                exchange.getResponseBody().write( body );
+                exchange.close();
+            }
+        } );
+        origin.start();
+        proxy = new FilteringProxy();
+    }
+
+    @Override
+    protected void tearDown() throws Exception
+    {
+        proxy.close();
+        origin.stop( 0 );
+    }
+
+    public void testRequestsAreForwarded() throws Exception
+    {
+        HttpURLConnection c = open( "/page?q=1" );
+        assertEquals( 200, c.getResponseCode() );
+        assertEquals( "served /page?q=1", IOUtils.toString( c.getInputStream(), "UTF-8" ) );
+        assertEquals( 1, served.get() );
+        assertTrue( proxy.stats(), proxy.stats().startsWith( "requests=1 blocked=0 failures=0 bytes=" ) );
+    }
+
+    public void testBlockedRequestsGetAnEmptyResponse() throws Exception
+    {
+        proxy.block( "/ads/" );
+        proxy.block( "\\.png$" );
+        assertEquals( 204, open( "/ads/banner.js" ).getResponseCode() );
+        assertEquals( 204, open( "/logo.png" ).getResponseCode() );
+        assertEquals( 200, open( "/logo.png?v=2" ).getResponseCode() );
+        assertEquals( 1, served.get() );
+        assertTrue( proxy.stats(), proxy.stats().startsWith( "requests=3 blocked=2 " ) );
+
+        proxy.clear();
+        assertEquals( 200, open( "/ads/banner.js" ).getResponseCode() );
+    }
+
+    public void testLatencyIsAdded() throws Exception
+    {
+        proxy.throttle( 200, 0 );
+        long start = System.nanoTime();
+        assertEquals( 200, open( "/slow" ).getResponseCode() );
+        assertTrue( System.nanoTime() - start >= 200000000L );
+    }
+
+    public void testChunkedRequestBodyIsForwarded() throws Exception
+    {
+        HttpURLConnection c = open( "/form" );
+        c.setDoOutput( true );
+        c.setChunkedStreamingMode( 4 );
+        c.getOutputStream().write( "name=value&other=second".getBytes( "UTF-8" ) );
+        assertEquals( 200, c.getResponseCode() );
+        assertEquals( "served /form name=value&other=second", IOUtils.toString( c.getInputStream(), "UTF-8" ) );
+    }
+
+    public void testMalformedContentLengthIsRejected() throws Exception
+    {
+        String[] address = proxy.address().split( ":" );
+        Socket socket = new Socket( address[0], Integer.parseInt( address[1] ) );
+        try {
+            socket.getOutputStream().write( ( "POST http://127.0.0.1:" + origin.getAddress().getPort() + "/form HTTP/1.1\r\n"
+                + "Content-Length: 12abc\r\n\r\n" ).getBytes( "ISO-8859-1" ) );
+            String response = IOUtils.toString( socket.getInputStream(), "ISO-8859-1" );
+            assertTrue( response, response.startsWith( "HTTP/1.1 400 Bad Request" ) );
+        } finally {
+            socket.close();
+        }
+        assertEquals( 0, served.get() );
+        assertEquals( 200, open( "/after" ).getResponseCode() );
+    }
+
+    private HttpURLConnection open( String path ) throws IOException
+    {
+        String[] address = proxy.address().split( ":" );
+        Proxy http = new Proxy( Proxy.Type.HTTP, new InetSocketAddress( address[0], Integer.parseInt( address[1] ) ) );
+        URL url = new URL( "http://127.0.0.1:" + origin.getAddress().getPort() + path );
+        return (HttpURLConnection) url.openConnection( http );
+    }
+}
@@ -0,0 +1,83 @@
+package org.robotframework.webdriverlibrary;
+
+import junit.framework.TestCase;
+
+import org.robotframework.javalib.annotation.RobotKeyword;
+import org.robotframework.javalib.library.RobotJavaLibrary;
+
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Unit test for the generated WebDriverKeywordsIndex.
+ */
+public class KeywordIndexTest
+    extends TestCase
+{
+    private final KeywordIndex index = new WebDriverKeywordsIndex();
+
+    public void testIndexMatchesTheAnnotations()
+    {
+        Set<String> annotated = new HashSet<String>();
+        for ( Method m : WebDriverKeywords.class.getMethods() ) {
+            if ( m.getAnnotation( RobotKeyword.class ) != null ) {
+                annotated.add( m.getName() );
+                assertEquals( m.getAnnotation( RobotKeyword.class ).value(), index.documentation( m.getName() ) );
+            }
+        }
+        assertEquals( annotated, new HashSet<String>( Arrays.asList( index.names() ) ) );
+        assertEquals( Arrays.asList( "browser", "remoteUrl=", "alias=", "profile=" ), Arrays.asList( index.arguments( "Open Browser" ) ) );
+        assertEquals( Arrays.asList( "*fields" ), Arrays.asList( index.arguments( "fill_form" ) ) );
+        assertEquals( "", index.documentation( "__intro__" ) );
+    }
+
+    public void testRunOnceKeywordsFollowTheAnnotation()
+    {
+        for ( Method m : WebDriverKeywords.class.getMethods() ) {
+            if ( m.getAnnotation( RobotKeyword.class ) != null ) {
+                assertEquals( m.getName(), m.getAnnotation( RunOnce.class ) != null, index.runsOnce( m.getName() ) );
+            }
+        }
+        assertTrue( index.runsOnce( "Set Find Element Timeout" ) );
+        assertFalse( index.runsOnce( "click_element" ) );
+        assertFalse( index.runsOnce( "noSuchKeyword" ) );
+    }
+
+    public void testDispatch() throws Exception
+    {
+        WebDriverKeywords keywords = new WebDriverKeywords();
+        try {
+            index.run( keywords, "Set Remote Scheduling", new Object[] { "cooldown=5", "startTimeout=7" } );
+            assertEquals( 5, RemoteScheduler.settings().cooldown );
+            assertEquals( 7, RemoteScheduler.settings().startTimeout );
+        } finally {
+            index.run( keywords, "set_remote_scheduling", new Object[] { "cooldown=30000", "startTimeout=0" } );
+        }
+        assertTrue( String.valueOf( index.run( keywords, "getKeywordMetrics", new Object[] { "csv" } ) ).startsWith( "keyword," ) );
+        assertTrue( String.valueOf( index.run( keywords, "getKeywordMetrics", new Object[0] ) ).startsWith( "{" ) );
+        try {
+            index.run( keywords, "setWaitAfterAction", new Object[0] );
+            fail( "expected a wrong argument count" );
+        } catch ( IllegalArgumentException expected ) {
+            assertTrue( expected.getMessage(), expected.getMessage().contains( "[wait]" ) );
+        }
+        try {
+            index.run( keywords, "noSuchKeyword", new Object[0] );
+            fail( "expected an unknown keyword" );
+        } catch ( IllegalArgumentException expected ) {
+        }
+    }
+
+    public void testLibraryKeepsTheExceptionTypes() throws Exception
+    {
+        // the library class is in the default package
+        RobotJavaLibrary library = (RobotJavaLibrary) Class.forName( "WebDriverLibrary" ).newInstance();
+        try {
+            library.runKeyword( "Set Wait After Action", new Object[] { "soon" } );
+            fail( "expected an invalid number" );
+        } catch ( NumberFormatException expected ) {
+        }
+    }
+}
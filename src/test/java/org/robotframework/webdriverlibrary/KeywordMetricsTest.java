@@ -0,0 +1,61 @@
+package org.robotframework.webdriverlibrary;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit test for the keyword latency histograms and metrics export.
+ */
+public class KeywordMetricsTest
+    extends TestCase
+{
+    public void testBucketsCoverTheValues()
+    {
+        for ( long v : new long[] { 0, 1, 15, 16, 17, 1000, 123456789L, Long.MAX_VALUE } ) {
+            int index = LatencyHistogram.index( v );
+            assertTrue( v + " above its bucket", v <= LatencyHistogram.upperBound( index ) );
+            assertTrue( v + " below its bucket", index == 0 || v > LatencyHistogram.upperBound( index - 1 ) );
+        }
+    }
+
+    public void testPercentilesAreWithinBucketPrecision()
+    {
+        LatencyHistogram h = new LatencyHistogram();
+        for ( int i = 1; i <= 1000; i++ ) {
+            h.record( i * 1000L );
+        }
+        assertEquals( 1000, h.count() );
+        assertEquals( 1000000L, h.max() );
+        assertEquals( 500000.0, h.percentile( 50 ), 500000 * 0.07 );
+        assertEquals( 990000.0, h.percentile( 99 ), 990000 * 0.07 );
+    }
+
+    public void testCallTimeIsSplit()
+    {
+        KeywordMetrics metrics = new KeywordMetrics();
+        metrics.record( "clickElement", 10000, 6000, 3000, 4, 0, false );
+        metrics.record( "clickElement", 20000, 0, 0, 1, 1, true );
+        KeywordMetrics.Stats s = metrics.get( "clickElement" );
+        assertEquals( 2, s.wall.count() );
+        assertEquals( 1, s.failures.get() );
+        assertEquals( 1, s.timeouts.get() );
+        assertEquals( 5, s.polls.get() );
+        assertEquals( 21000, s.driverMicros.get() );
+        assertTrue( metrics.toCsv().contains( "\nclickElement,2,1,1,5,30.000," ) );
+        assertTrue( metrics.toJson().contains( "\"clickElement\": {\"calls\": 2," ) );
+    }
+
+    public void testSpellingsOfAKeywordShareOneRow()
+    {
+        KeywordMetrics metrics = new KeywordMetrics();
+        KeywordIndex index = new WebDriverKeywordsIndex();
+        for ( String name : new String[] { "Click Element", "ClickElement", "click_element" } ) {
+            metrics.record( index.name( name ), 1000, 0, 0, 1, 0, false );
+        }
+        metrics.record( "Click Element", 1000, 0, 0, 1, 0, false );
+        assertEquals( 4, metrics.get( "click element" ).wall.count() );
+        String csv = metrics.toCsv();
+        assertTrue( csv, csv.contains( "\nclickElement,4," ) );
+        assertEquals( "the header and one row", 2, csv.split( "\n" ).length );
+        assertEquals( "Unknown Keyword", index.name( "Unknown Keyword" ) );
+    }
+}
@@ -0,0 +1,37 @@
+package org.robotframework.webdriverlibrary;
+
+import junit.framework.TestCase;
+
+import org.openqa.selenium.By;
+
+/**
+ * Unit test for the locator strategy table.
+ */
+public class LocatorsTest
+    extends TestCase
+{
+    public void testStrategiesMatchByFactories()
+    {
+        assertEquals( By.id( "someId" ), Locators.get( "id", "someId" ) );
+        assertEquals( By.xpath( "//a" ), Locators.get( "xpath", "//a" ) );
+        assertEquals( By.partialLinkText( "link" ), Locators.get( "partialLinkText", "link" ) );
+        assertEquals( By.cssSelector( "div > a" ), Locators.get( "cssSelector", "div > a" ) );
+    }
+
+    public void testLocatorsAreEqualByValue()
+    {
+        // the element cache looks elements up by locator, which works without sharing the By objects
+        assertEquals( Locators.get( "name", "textField" ), Locators.get( "name", "textField" ) );
+        assertEquals( Locators.get( "name", "textField" ).hashCode(), Locators.get( "name", "textField" ).hashCode() );
+    }
+
+    public void testUnknownStrategyFailsFast()
+    {
+        try {
+            Locators.get( "byId", "someId" );
+            fail( "expected unknown strategy to fail" );
+        } catch ( IllegalArgumentException e ) {
+            assertTrue( e.getMessage().contains( "'byId'" ) );
+        }
+    }
+}
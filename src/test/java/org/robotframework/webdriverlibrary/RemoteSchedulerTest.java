@@ -0,0 +1,94 @@
+package org.robotframework.webdriverlibrary;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit test for placing remote sessions on several in-process stub WebDriver servers.
+ */
+public class RemoteSchedulerTest
+    extends TestCase
+{
+    private StubWebDriverServer first;
+    private StubWebDriverServer second;
+    private WebDriverKeywords keywords;
+
+    @Override
+    protected void setUp() throws Exception
+    {
+        first = new StubWebDriverServer();
+        second = new StubWebDriverServer();
+        keywords = new WebDriverKeywords();
+    }
+
+    @Override
+    protected void tearDown() throws Exception
+    {
+        keywords.closeAllBrowsers();
+        RemoteScheduler.configure( new RemoteScheduler.Settings() );
+        first.stop();
+        second.stop();
+    }
+
+    public void testSessionsAreSpreadOverServers() throws Exception
+    {
+        // warm up both servers, so that the start times compared are not the ones of the first sessions
+        for ( StubWebDriverServer server : new StubWebDriverServer[] { first, second } ) {
+            keywords.openBrowser( "chrome", server.url(), "alias=warm" );
+            keywords.closeBrowser();
+        }
+        keywords.getRemoteNodeStats( "reset" );
+        String servers = first.url() + "," + second.url();
+        keywords.openBrowser( "chrome", servers, "alias=a" );
+        keywords.openBrowser( "chrome", servers, "alias=b" );
+        assertEquals( 2, first.sessionCount() );
+        assertEquals( 2, second.sessionCount() );
+        String stats = keywords.getRemoteNodeStats();
+        assertTrue( stats, stats.contains( first.url() + " sessions=1 starting=0 started=1 " ) );
+
+        keywords.switchBrowser( "a" );
+        keywords.closeBrowser();
+        keywords.openBrowser( "chrome", servers, "alias=c" );
+        assertEquals( "the server with fewer open sessions is chosen", 3, first.sessionCount() );
+    }
+
+    public void testFailingServerCoolsDown() throws Exception
+    {
+        keywords.setRemoteScheduling( new String[] { "cooldown=60000" } );
+        first.stop();
+        String servers = first.url() + "," + second.url();
+        keywords.openBrowser( "chrome", servers, "alias=a" );
+        keywords.openBrowser( "chrome", servers, "alias=b" );
+        assertEquals( 2, second.sessionCount() );
+        String stats = keywords.getRemoteNodeStats();
+        assertTrue( stats, stats.contains( first.url() + " sessions=0 starting=0 started=0 failures=1 " ) );
+        assertFalse( stats, stats.contains( first.url() + " sessions=0 starting=0 started=0 failures=1 meanStartMs=0.0 cooldownMs=0" ) );
+    }
+
+    public void testInterruptedStartIsNoLongerCounted() throws Exception
+    {
+        Thread.currentThread().interrupt();
+        try {
+            keywords.openBrowser( "chrome", first.url() + "," + second.url(), "alias=interrupted" );
+            fail( "expected the interrupted start to fail" );
+        } catch ( IllegalStateException expected ) {
+            assertTrue( "the interrupt is kept", Thread.interrupted() );
+        }
+        String stats = keywords.getRemoteNodeStats();
+        assertTrue( stats, stats.contains( first.url() + " sessions=0 starting=0 " ) );
+        assertTrue( stats, stats.contains( second.url() + " sessions=0 starting=0 " ) );
+    }
+
+    public void testUnknownOptionIsRejected() throws Exception
+    {
+        try {
+            keywords.setRemoteScheduling( new String[] { "retries=2" } );
+            fail( "expected an unknown option to be rejected" );
+        } catch ( IllegalArgumentException expected ) {
+        }
+        try {
+            keywords.getRemoteNodeStats( "false" );
+            fail( "expected only reset to be accepted" );
+        } catch ( IllegalArgumentException expected ) {
+        }
+    }
+}
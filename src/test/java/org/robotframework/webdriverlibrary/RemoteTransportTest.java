@@ -0,0 +1,74 @@
+package org.robotframework.webdriverlibrary;
+
+import junit.framework.TestCase;
+
+import org.openqa.selenium.WebDriverException;
+
+/**
+ * Unit test for the pooled remote transport against the in-process stub WebDriver server.
+ */
+public class RemoteTransportTest
+    extends TestCase
+{
+    private StubWebDriverServer stub;
+    private WebDriverKeywords keywords;
+
+    @Override
+    protected void setUp() throws Exception
+    {
+        stub = new StubWebDriverServer();
+        keywords = new WebDriverKeywords();
+        RemoteTransport.resetStats();
+    }
+
+    @Override
+    protected void tearDown() throws Exception
+    {
+        try {
+            keywords.closeAllBrowsers();
+        } catch ( WebDriverException stopped ) {
+        }
+        RemoteTransport.configure( new RemoteTransport.Settings() );
+        stub.stop();
+    }
+
+    public void testConnectionsAreKeptAlive() throws Exception
+    {
+        keywords.openBrowser( "chrome", stub.url(), "alias=pooled" );
+        for ( int i = 0; i < 20; i++ ) {
+            keywords.getPageTitle();
+        }
+        String stats = RemoteTransport.stats();
+        assertTrue( stats, stats.startsWith( "commands=" + stub.commandCount() + " " ) );
+        assertTrue( stats, stats.contains( "connectionsOpened=1 " ) );
+    }
+
+    public void testReadCommandsAreRetried() throws Exception
+    {
+        keywords.setRemoteTransport( new String[] { "retries=3", "connectTimeout=1000" } );
+        keywords.openBrowser( "chrome", stub.url(), "alias=retried" );
+        stub.stop();
+        try {
+            keywords.getPageTitle();
+            fail( "expected the stopped server to fail the command" );
+        } catch ( WebDriverException expected ) {
+        }
+        String stats = RemoteTransport.stats();
+        assertTrue( stats, stats.contains( "retries=3 failures=1 " ) );
+    }
+
+    public void testUnknownOptionIsRejected()
+    {
+        try {
+            keywords.setRemoteTransport( new String[] { "keepAlive=true" } );
+            fail( "expected an unknown option to fail" );
+        } catch ( IllegalArgumentException expected ) {
+        }
+        try {
+            keywords.getRemoteTransportStats( "false" );
+            fail( "expected only reset to be accepted" );
+        } catch ( IllegalArgumentException expected ) {
+        }
+        assertTrue( keywords.getRemoteTransportStats( "RESET" ).startsWith( "commands=" ) );
+    }
+}
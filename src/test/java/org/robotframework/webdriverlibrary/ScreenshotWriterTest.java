@@ -0,0 +1,88 @@
+package org.robotframework.webdriverlibrary;
+
+import junit.framework.TestCase;
+
+import javax.imageio.ImageIO;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Unit test for the background screenshot writer.
+ */
+public class ScreenshotWriterTest
+    extends TestCase
+{
+    private File dir;
+
+    @Override
+    protected void setUp() throws Exception
+    {
+        dir = File.createTempFile( "scrshots", "" );
+        dir.delete();
+    }
+
+    @Override
+    protected void tearDown()
+    {
+        File[] files = dir.listFiles();
+        if ( files != null ) {
+            for ( File f : files ) f.delete();
+        }
+        dir.delete();
+    }
+
+    private static byte[] png( int w, int h ) throws Exception
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write( new BufferedImage( w, h, BufferedImage.TYPE_INT_ARGB ), "png", out );
+        return out.toByteArray();
+    }
+
+    public void testScreenshotsInSameMillisecondGetOwnFiles() throws Exception
+    {
+        ScreenshotWriter writer = new ScreenshotWriter( 2 );
+        byte[] image = png( 4, 4 );
+        for ( int i = 0; i < 10; i++ ) {
+            writer.write( dir, image );
+        }
+        writer.flush();
+        File[] files = dir.listFiles();
+        assertEquals( 10, files.length );
+        for ( File f : files ) {
+            assertEquals( image.length, f.length() );
+        }
+    }
+
+    public void testScreenshotIsScaledAndReencoded() throws Exception
+    {
+        ScreenshotWriter writer = new ScreenshotWriter( 2 );
+        writer.setOptions( "jpg", 0.5 );
+        File file = writer.write( dir, png( 40, 20 ) );
+        writer.flush();
+        assertTrue( file.getName().endsWith( ".jpg" ) );
+        BufferedImage written = ImageIO.read( file );
+        assertEquals( 20, written.getWidth() );
+        assertEquals( 10, written.getHeight() );
+    }
+
+    public void testFailedWriteIsReportedAndLeavesNoFile() throws Exception
+    {
+        ScreenshotWriter writer = new ScreenshotWriter( 2 );
+        writer.setOptions( "jpg", 1.0 );
+        File file = writer.write( dir, new byte[] { 1, 2, 3 } );
+        try {
+            writer.flush();
+            fail( "expected the unreadable screenshot to fail" );
+        } catch ( IOException expected ) {
+            assertTrue( expected.getMessage(), expected.getMessage().startsWith( "Writing failed for 1 screenshot(s):\n" + file.getName() ) );
+        }
+        assertFalse( file.exists() );
+        writer.flush();
+        writer.write( dir, png( 4, 4 ) );
+        writer.flush();
+        assertEquals( 1, dir.listFiles().length );
+    }
+}
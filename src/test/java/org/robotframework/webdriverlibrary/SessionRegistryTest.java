@@ -0,0 +1,87 @@
+package org.robotframework.webdriverlibrary;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit test for the browser session registry.
+ */
+public class SessionRegistryTest
+    extends TestCase
+{
+    public void testRegisteredSessionBecomesCurrent()
+    {
+        SessionRegistry registry = new SessionRegistry();
+        BrowserSession first = new BrowserSession( "first", null );
+        BrowserSession second = new BrowserSession( "second", null );
+        registry.register( first );
+        registry.register( second );
+        assertSame( second, registry.current() );
+        assertSame( first, registry.switchTo( "first" ) );
+        assertSame( first, registry.current() );
+    }
+
+    public void testThreadsKeepTheirOwnSession() throws Exception
+    {
+        final SessionRegistry registry = new SessionRegistry();
+        final BrowserSession mine = new BrowserSession( "mine", null );
+        final BrowserSession[] seen = new BrowserSession[1];
+        registry.register( mine );
+        Thread worker = new Thread() {
+            public void run() {
+                registry.register( new BrowserSession( "worker", null ) );
+                seen[0] = registry.current();
+            }
+        };
+        worker.start();
+        worker.join();
+        assertEquals( "worker", seen[0].getAlias() );
+        assertSame( mine, registry.current() );
+    }
+
+    public void testRemovedSessionIsNotCurrent()
+    {
+        SessionRegistry registry = new SessionRegistry();
+        BrowserSession session = new BrowserSession( "only", null );
+        registry.register( session );
+        registry.remove( session );
+        try {
+            registry.current();
+            fail( "expected no current session" );
+        } catch ( IllegalStateException expected ) {
+        }
+    }
+
+    public void testThreadDoesNotFallBackToAnotherThreadsSession() throws Exception
+    {
+        final SessionRegistry registry = new SessionRegistry();
+        final Object[] seen = new Object[2];
+        Thread worker = new Thread() {
+            public void run() {
+                seen[0] = registry.current();
+                BrowserSession own = new BrowserSession( "worker", null );
+                registry.register( own );
+                registry.remove( own );
+                try {
+                    seen[1] = registry.current();
+                } catch ( IllegalStateException expected ) {
+                    seen[1] = expected;
+                }
+            }
+        };
+        BrowserSession main = new BrowserSession( "main", null );
+        registry.register( main );
+        worker.start();
+        worker.join();
+        assertSame( "a thread without a session of its own uses the latest one", main, seen[0] );
+        assertTrue( "after closing its own browser", seen[1] instanceof IllegalStateException );
+    }
+
+    public void testUnknownAliasFails()
+    {
+        try {
+            new SessionRegistry().switchTo( "missing" );
+            fail( "expected unknown alias to fail" );
+        } catch ( IllegalArgumentException expected ) {
+        }
+    }
+}
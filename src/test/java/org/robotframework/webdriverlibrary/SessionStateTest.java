@@ -0,0 +1,73 @@
+package org.robotframework.webdriverlibrary;
+
+import junit.framework.TestCase;
+
+import org.json.JSONObject;
+
+import org.openqa.selenium.Cookie;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.remote.DesiredCapabilities;
+import org.openqa.selenium.remote.RemoteWebDriver;
+
+import java.io.File;
+import java.net.URL;
+
+/**
+ * Unit test for saving and restoring the cookies, storage and URL of a browser.
+ */
+public class SessionStateTest
+    extends TestCase
+{
+    private StubWebDriverServer stub;
+    private WebDriver driver;
+
+    @Override
+    protected void setUp() throws Exception
+    {
+        stub = new StubWebDriverServer();
+        driver = new RemoteWebDriver( new URL( stub.url() ), DesiredCapabilities.chrome() );
+        driver.get( "http://app/home" );
+        driver.manage().addCookie( new Cookie( "sid", "s3cr3t", "/" ) );
+        stub.setScriptResult( "dump('localStorage')",
+            new JSONObject( "{\"url\": \"http://app/home\", \"local\": {\"token\": \"t\"}, \"session\": {}}" ) );
+    }
+
+    @Override
+    protected void tearDown() throws Exception
+    {
+        driver.quit();
+        stub.stop();
+    }
+
+    public void testRestoreAddsMissingCookiesAndLoadsTheUrl() throws Exception
+    {
+        SessionState state = SessionState.capture( driver );
+        File file = File.createTempFile( "state", ".json" );
+        try {
+            state.save( file );
+            state = SessionState.load( file );
+        } finally {
+            file.delete();
+        }
+
+        driver.manage().deleteAllCookies();
+        driver.get( "http://other/login" );
+        state.restore( driver, false );
+        assertEquals( "s3cr3t", driver.manage().getCookieNamed( "sid" ).getValue() );
+        assertEquals( "http://app/home", driver.getCurrentUrl() );
+    }
+
+    public void testRestoreOnTheSameSiteSkipsPresentCookies()
+    {
+        SessionState state = SessionState.capture( driver );
+        int before = stub.commandCount();
+        state.restore( driver, false );
+        // current URL, cookies, storage script and the page load
+        assertEquals( 4, stub.commandCount() - before );
+
+        driver.manage().addCookie( new Cookie( "tracking", "1", "/" ) );
+        state.restore( driver, true );
+        assertNull( driver.manage().getCookieNamed( "tracking" ) );
+        assertNotNull( driver.manage().getCookieNamed( "sid" ) );
+    }
+}
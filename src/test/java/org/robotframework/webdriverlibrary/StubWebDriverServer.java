@@ -0,0 +1,475 @@
+package org.robotframework.webdriverlibrary;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import org.apache.commons.codec.binary.Base64;
+import org.apache.commons.io.IOUtils;
+
+import javax.imageio.ImageIO;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * In-process server speaking the WebDriver JSON wire protocol for a RemoteWebDriver, so that the
+ * keywords can be tested and benchmarked without a browser. The page is a set of elements registered
+ * by locator, each command can be delayed by a configurable latency.
+ */
+public class StubWebDriverServer
+{
+    public static class Element
+    {
+        public final String id;
+        public volatile String tagName = "div";
+        public volatile String text = "";
+        public volatile boolean displayed = true;
+        public volatile boolean enabled = true;
+        public volatile boolean selected = false;
+        public final Map<String, String> attributes = new ConcurrentHashMap<String, String>();
+
+        Element( String id )
+        {
+            this.id = id;
+        }
+    }
+
+    public static class Window
+    {
+        public final String handle;
+        public volatile String title;
+        public volatile String url;
+
+        Window( String handle, String title, String url )
+        {
+            this.handle = handle;
+            this.title = title;
+            this.url = url;
+        }
+    }
+
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private final Map<String, Element> elements = new ConcurrentHashMap<String, Element>();
+    private final Map<String, Element> locators = new ConcurrentHashMap<String, Element>();
+    private final Map<String, Object> scriptResults = new ConcurrentHashMap<String, Object>();
+    private final Map<String, String> scriptErrors = new ConcurrentHashMap<String, String>();
+    private final List<Window> windows = new CopyOnWriteArrayList<Window>();
+    private final Map<String, JSONObject> cookies = new ConcurrentHashMap<String, JSONObject>();
+    private final AtomicInteger ids = new AtomicInteger();
+    private final AtomicInteger commands = new AtomicInteger();
+    private final List<String> commandLog = new CopyOnWriteArrayList<String>();
+    private final String screenshot;
+    private volatile Window current;
+    private volatile String alertText;
+    private volatile String pageSource = "<html><head></head><body></body></html>";
+    private volatile long latencyMillis;
+    private volatile long scriptTimeoutMillis;
+    private volatile JSONObject desiredCapabilities;
+    private final AtomicInteger sessions = new AtomicInteger();
+
+    public StubWebDriverServer() throws IOException
+    {
+        this( 0 );
+    }
+
+    public StubWebDriverServer( long latencyMillis ) throws IOException
+    {
+        this.latencyMillis = latencyMillis;
+        ByteArrayOutputStream png = new ByteArrayOutputStream();
+        ImageIO.write( new BufferedImage( 1280, 800, BufferedImage.TYPE_INT_RGB ), "png", png );
+        screenshot = Base64.encodeBase64String( png.toByteArray() );
+        current = addWindow( "main", "about:blank" );
+        // without TCP_NODELAY the response body waits for the delayed ACK of the headers, about 40 ms
+        if ( System.getProperty( "sun.net.httpserver.nodelay" ) == null ) {
+            System.setProperty( "sun.net.httpserver.nodelay", "true" );
+        }
+        server = HttpServer.create( new InetSocketAddress( "127.0.0.1", 0 ), 50 );
+        server.setExecutor( executor );
+        server.createContext( "/", new HttpHandler() {
+            public void handle( HttpExchange exchange ) throws IOException {
+                serve( exchange );
+            }
+        } );
+        server.start();
+    }
+
+    public String url()
+    {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + "/wd/hub";
+    }
+
+    public void stop()
+    {
+        server.stop( 0 );
+        executor.shutdownNow();
+    }
+
+    public void setLatency( long millis )
+    {
+        this.latencyMillis = millis;
+    }
+
+    // the capabilities asked for by the last new session command
+    public JSONObject desiredCapabilities()
+    {
+        return desiredCapabilities;
+    }
+
+    // the count of new session commands received
+    public int sessionCount()
+    {
+        return sessions.get();
+    }
+
+    public int commandCount()
+    {
+        return commands.get();
+    }
+
+    // the last path segment of each command in the order they were handled, e.g. "value" or "execute_async"
+    public List<String> commandLog()
+    {
+        return commandLog;
+    }
+
+    // registers an element found with the given keyword locator strategy and expression
+    public Element addElement( String by, String expression, String text )
+    {
+        Element e = new Element( String.valueOf( ids.incrementAndGet() ) );
+        e.text = text;
+        elements.put( e.id, e );
+        locators.put( Locators.strategy( by ).create( expression ).toString(), e );
+        return e;
+    }
+
+    // removes the element from the page, so that its references go stale
+    public void removeElement( Element e )
+    {
+        elements.remove( e.id );
+    }
+
+    public Window addWindow( String title, String url )
+    {
+        Window w = new Window( "window-" + ids.incrementAndGet(), title, url );
+        windows.add( w );
+        return w;
+    }
+
+    public List<Window> windows()
+    {
+        return windows;
+    }
+
+    public void setPageSource( String source )
+    {
+        this.pageSource = source;
+    }
+
+    public void setAlert( String text )
+    {
+        this.alertText = text;
+    }
+
+    // scripts containing the given fragment fail with a javascript error
+    public void setScriptError( String fragment, String message )
+    {
+        scriptErrors.put( fragment, message );
+    }
+
+    // the last asynchronous script timeout set, in milliseconds
+    public long scriptTimeout()
+    {
+        return scriptTimeoutMillis;
+    }
+
+    // scripts containing the given fragment return the given result
+    public void setScriptResult( String fragment, Object result )
+    {
+        scriptResults.put( fragment, result == null ? JSONObject.NULL : result );
+    }
+
+    private void serve( HttpExchange exchange ) throws IOException
+    {
+        commands.incrementAndGet();
+        try {
+            if ( latencyMillis > 0 ) {
+                Thread.sleep( latencyMillis );
+            }
+            String body = IOUtils.toString( exchange.getRequestBody(), "UTF-8" );
+            JSONObject params = body.trim().length() == 0 ? new JSONObject() : new JSONObject( body );
+            String path = exchange.getRequestURI().getPath();
+            String[] parts = path.substring( path.indexOf( "/session" ) ).split( "/" );
+            commandLog.add( parts[parts.length - 1] );
+            Object value = dispatch( exchange.getRequestMethod(), parts, params );
+            respond( exchange, 200, parts.length > 2 ? parts[2] : "stub", 0, value );
+        } catch ( StubError e ) {
+            JSONObject message = new JSONObject();
+            try {
+                message.put( "message", e.getMessage() );
+            } catch ( JSONException ignored ) {
+            }
+            respond( exchange, 500, "stub", e.status, message );
+        } catch ( Exception e ) {
+            respond( exchange, 500, "stub", 13, e.toString() );
+        }
+    }
+
+    private static class StubError extends Exception
+    {
+        private static final long serialVersionUID = 1L;
+
+        final int status;
+
+        StubError( int status, String message )
+        {
+            super( message );
+            this.status = status;
+        }
+    }
+
+    private Object dispatch( String method, String[] p, JSONObject params ) throws Exception
+    {
+        // p = ["", "session", sessionId, command...]
+        if ( p.length == 2 ) {
+            desiredCapabilities = params.optJSONObject( "desiredCapabilities" );
+            sessions.incrementAndGet();
+            JSONObject caps = new JSONObject();
+            caps.put( "browserName", "stub" );
+            caps.put( "javascriptEnabled", true );
+            caps.put( "takesScreenshot", true );
+            return caps;
+        }
+        if ( p.length == 3 ) {
+            return null;
+        }
+        String cmd = p[3];
+        if ( cmd.equals( "url" ) ) {
+            if ( method.equals( "POST" ) ) {
+                current.url = params.getString( "url" );
+                return null;
+            }
+            return current.url;
+        }
+        if ( cmd.equals( "title" ) ) {
+            return current.title;
+        }
+        if ( cmd.equals( "source" ) ) {
+            return pageSource;
+        }
+        if ( cmd.equals( "window_handle" ) ) {
+            return current.handle;
+        }
+        if ( cmd.equals( "window_handles" ) ) {
+            JSONArray handles = new JSONArray();
+            for ( Window w : windows ) {
+                handles.put( w.handle );
+            }
+            return handles;
+        }
+        if ( cmd.equals( "window" ) && p.length == 4 ) {
+            if ( method.equals( "DELETE" ) ) {
+                windows.remove( current );
+                return null;
+            }
+            String name = params.getString( "name" );
+            for ( Window w : windows ) {
+                if ( w.handle.equals( name ) ) {
+                    current = w;
+                    return null;
+                }
+            }
+            throw new StubError( 23, "No window " + name );
+        }
+        if ( cmd.equals( "window" ) ) {
+            JSONObject rect = new JSONObject();
+            rect.put( "x", 0 );
+            rect.put( "y", 0 );
+            rect.put( "width", 1280 );
+            rect.put( "height", 800 );
+            return method.equals( "GET" ) ? rect : null;
+        }
+        if ( cmd.equals( "element" ) && p.length == 4 || cmd.equals( "elements" ) ) {
+            Element e = locators.get( locatorKey( params.getString( "using" ), params.getString( "value" ) ) );
+            if ( cmd.equals( "elements" ) ) {
+                JSONArray found = new JSONArray();
+                if ( e != null ) {
+                    found.put( reference( e ) );
+                }
+                return found;
+            }
+            if ( e == null ) {
+                throw new StubError( 7, "No element found by " + params );
+            }
+            return reference( e );
+        }
+        if ( cmd.equals( "element" ) ) {
+            return elementCommand( method, p, params );
+        }
+        if ( cmd.equals( "execute" ) || cmd.equals( "execute_async" ) ) {
+            return script( params.getString( "script" ) );
+        }
+        if ( cmd.equals( "screenshot" ) ) {
+            return screenshot;
+        }
+        if ( cmd.equals( "alert_text" ) ) {
+            if ( alertText == null ) {
+                throw new StubError( 27, "No alert is present" );
+            }
+            return alertText;
+        }
+        if ( cmd.equals( "accept_alert" ) || cmd.equals( "dismiss_alert" ) ) {
+            if ( alertText == null ) {
+                throw new StubError( 27, "No alert is present" );
+            }
+            alertText = null;
+            return null;
+        }
+        if ( cmd.equals( "cookie" ) ) {
+            if ( method.equals( "GET" ) ) {
+                return new JSONArray( cookies.values() );
+            }
+            if ( method.equals( "POST" ) ) {
+                JSONObject cookie = params.getJSONObject( "cookie" );
+                cookies.put( cookie.getString( "name" ), cookie );
+            } else if ( p.length > 4 ) {
+                cookies.remove( p[4] );
+            } else {
+                cookies.clear();
+            }
+            return null;
+        }
+        if ( cmd.equals( "timeouts" ) && p.length > 4 && p[4].equals( "async_script" ) ) {
+            scriptTimeoutMillis = params.getLong( "ms" );
+            return null;
+        }
+        if ( cmd.equals( "timeouts" ) || cmd.equals( "frame" )
+             || cmd.equals( "moveto" ) || cmd.equals( "click" ) || cmd.equals( "keys" )
+             || cmd.equals( "buttondown" ) || cmd.equals( "buttonup" ) || cmd.equals( "doubleclick" ) ) {
+            return null;
+        }
+        throw new StubError( 9, "Unknown command " + method + " " + cmd );
+    }
+
+    private Object elementCommand( String method, String[] p, JSONObject params ) throws Exception
+    {
+        Element e = elements.get( p[4] );
+        if ( e == null ) {
+            throw new StubError( 10, "Stale element " + p[4] );
+        }
+        String cmd = p.length > 5 ? p[5] : "";
+        if ( cmd.equals( "text" ) ) return e.text;
+        if ( cmd.equals( "displayed" ) ) return e.displayed;
+        if ( cmd.equals( "enabled" ) ) return e.enabled;
+        if ( cmd.equals( "selected" ) ) return e.selected;
+        if ( cmd.equals( "name" ) ) return e.tagName;
+        if ( cmd.equals( "attribute" ) ) {
+            String value = e.attributes.get( p[6] );
+            return value == null ? JSONObject.NULL : value;
+        }
+        if ( cmd.equals( "click" ) ) {
+            e.selected = !e.selected;
+            return null;
+        }
+        if ( cmd.equals( "clear" ) ) {
+            e.attributes.put( "value", "" );
+            return null;
+        }
+        if ( cmd.equals( "value" ) ) {
+            StringBuilder sb = new StringBuilder( e.attributes.containsKey( "value" ) ? e.attributes.get( "value" ) : "" );
+            JSONArray keys = params.getJSONArray( "value" );
+            for ( int i = 0; i < keys.length(); i++ ) {
+                sb.append( keys.getString( i ) );
+            }
+            e.attributes.put( "value", sb.toString() );
+            return null;
+        }
+        if ( cmd.equals( "location" ) || cmd.equals( "location_in_view" ) || cmd.equals( "size" ) ) {
+            JSONObject point = new JSONObject();
+            point.put( "x", 0 );
+            point.put( "y", 0 );
+            point.put( "width", 100 );
+            point.put( "height", 20 );
+            return point;
+        }
+        throw new StubError( 9, "Unknown element command " + method + " " + cmd );
+    }
+
+    private Object script( String script ) throws StubError
+    {
+        for ( Map.Entry<String, String> error : scriptErrors.entrySet() ) {
+            if ( script.contains( error.getKey() ) ) {
+                throw new StubError( 17, error.getValue() );
+            }
+        }
+        for ( Map.Entry<String, Object> result : scriptResults.entrySet() ) {
+            if ( script.contains( result.getKey() ) ) {
+                return result.getValue();
+            }
+        }
+        if ( script.contains( "[window.document.title, window.document.URL]" ) ) {
+            return new JSONArray( Arrays.asList( current.title, current.url ) );
+        }
+        if ( script.contains( "document.title" ) ) return current.title;
+        if ( script.contains( "document.URL" ) ) return current.url;
+        return JSONObject.NULL;
+    }
+
+    private static JSONObject reference( Element e ) throws JSONException
+    {
+        JSONObject ref = new JSONObject();
+        ref.put( "ELEMENT", e.id );
+        return ref;
+    }
+
+    // the wire protocol strategies and expressions mapped back to By.toString(), e.g. "By.id: someId"
+    private static String locatorKey( String using, String value )
+    {
+        if ( using.equals( "id" ) ) return "By.id: " + value;
+        if ( using.equals( "name" ) ) return "By.name: " + value;
+        if ( using.equals( "xpath" ) ) return "By.xpath: " + value;
+        if ( using.equals( "class name" ) ) return "By.className: " + value;
+        if ( using.equals( "link text" ) ) return "By.linkText: " + value;
+        if ( using.equals( "partial link text" ) ) return "By.partialLinkText: " + value;
+        if ( using.equals( "tag name" ) ) return "By.tagName: " + value;
+        return "By.selector: " + value;
+    }
+
+    private static void respond( HttpExchange exchange, int code, String sessionId, int status, Object value ) throws IOException
+    {
+        byte[] bytes;
+        try {
+            JSONObject response = new JSONObject();
+            response.put( "sessionId", sessionId );
+            response.put( "status", status );
+            response.put( "value", value == null ? JSONObject.NULL : value );
+            bytes = response.toString().getBytes( "UTF-8" );
+        } catch ( JSONException e ) {
+            throw new IOException( e.toString() );
+        }
+        exchange.getResponseHeaders().set( "Content-Type", "application/json;charset=UTF-8" );
+        exchange.sendResponseHeaders( code, bytes.length );
+        OutputStream out = exchange.getResponseBody();
+        try {
+            out.write( bytes );
+        } finally {
+            out.close();
+        }
+    }
+}
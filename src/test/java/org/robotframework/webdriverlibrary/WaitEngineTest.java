@@ -0,0 +1,77 @@
+package org.robotframework.webdriverlibrary;
+
+import junit.framework.TestCase;
+
+import org.openqa.selenium.NoSuchElementException;
+import org.openqa.selenium.StaleElementReferenceException;
+import org.openqa.selenium.TimeoutException;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.support.ui.ExpectedCondition;
+
+/**
+ * Unit test for the wait engine, using conditions that do not need a browser.
+ */
+public class WaitEngineTest
+    extends TestCase
+{
+    // becomes true on the given poll, throws the given exception before that
+    private static ExpectedCondition<Boolean> trueOnPoll( final int poll, final RuntimeException before )
+    {
+        return new ExpectedCondition<Boolean>() {
+            int polls;
+            public Boolean apply( WebDriver d ) {
+                if ( ++polls >= poll ) return true;
+                if ( before != null ) throw before;
+                return false;
+            }
+        };
+    }
+
+    public void testPollsUntilConditionIsTrue() throws Exception
+    {
+        WaitEngine waits = new WaitEngine();
+        waits.setPolling( WaitEngine.Polling.FIXED, 1, 1 );
+        assertTrue( waits.until( null, trueOnPoll( 3, null ), 5 ) );
+        assertEquals( 3, waits.lastResult().polls );
+        assertFalse( waits.lastResult().timedOut );
+    }
+
+    public void testTimesOut() throws Exception
+    {
+        WaitEngine waits = new WaitEngine();
+        try {
+            waits.until( null, trueOnPoll( Integer.MAX_VALUE, null ), 0 );
+            fail( "expected a timeout" );
+        } catch ( TimeoutException expected ) {
+            assertTrue( waits.lastResult().timedOut );
+        }
+    }
+
+    public void testIgnoresConfiguredExceptions() throws Exception
+    {
+        WaitEngine waits = new WaitEngine();
+        waits.setPolling( WaitEngine.Polling.EXPONENTIAL, 1, 4 );
+        assertTrue( waits.until( null, trueOnPoll( 3, new NoSuchElementException( "not yet" ) ), 5 ) );
+        try {
+            waits.until( null, trueOnPoll( 3, new StaleElementReferenceException( "stale" ) ), 5 );
+            fail( "expected the stale element exception" );
+        } catch ( StaleElementReferenceException expected ) {
+        }
+        waits.setIgnoredExceptions( "StaleElementReferenceException" );
+        assertTrue( waits.until( null, trueOnPoll( 3, new StaleElementReferenceException( "stale" ) ), 5 ) );
+    }
+
+    public void testKeywordTimeoutOverridesDefault() throws Exception
+    {
+        WaitEngine waits = new WaitEngine();
+        waits.setKeywordTimeout( "Element Text Contains", 0 );
+        KeywordContext.enter( "elementTextContains" );
+        try {
+            waits.until( null, trueOnPoll( Integer.MAX_VALUE, null ), 30 );
+            fail( "expected the keyword timeout to be used" );
+        } catch ( TimeoutException expected ) {
+        } finally {
+            KeywordContext.exit( true );
+        }
+    }
+}
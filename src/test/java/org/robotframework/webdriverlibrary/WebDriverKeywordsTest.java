@@ -0,0 +1,470 @@
+package org.robotframework.webdriverlibrary;
+
+import junit.framework.TestCase;
+
+import org.apache.commons.io.FileUtils;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import org.openqa.selenium.TimeoutException;
+
+import java.io.File;
+import java.net.ConnectException;
+import java.net.Socket;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Functional test of the keywords against the in-process stub WebDriver server.
+ */
+public class WebDriverKeywordsTest
+    extends TestCase
+{
+    private StubWebDriverServer stub;
+    private WebDriverKeywords keywords;
+
+    @Override
+    protected void setUp() throws Exception
+    {
+        stub = new StubWebDriverServer();
+        keywords = new WebDriverKeywords();
+        keywords.setFindElementTimeout( "1" );
+        keywords.setPollingStrategy( "fixed", "10" );
+        keywords.openBrowser( "chrome", stub.url(), "alias=stub" );
+    }
+
+    @Override
+    protected void tearDown() throws Exception
+    {
+        keywords.closeAllBrowsers();
+        stub.stop();
+    }
+
+    public void testElementKeywords() throws Exception
+    {
+        StubWebDriverServer.Element text = stub.addElement( "id", "my_text_div", "text appears from\nthe button" );
+        StubWebDriverServer.Element checkbox = stub.addElement( "xpath", "//input[@type='checkbox'][1]", "" );
+        stub.addElement( "name", "textField", "" );
+
+        keywords.navigateToURL( "file:///testpage.html" );
+        keywords.clickElement( "xpath", "//input[@type='checkbox'][1]" );
+        assertTrue( checkbox.selected );
+        keywords.writeTextToField( "name", "textField", "hello world!" );
+        keywords.elementTextContains( "id", "my_text_div", "appears from the" );
+        assertEquals( "text appears from the button", keywords.getTextOfElement( "id", "my_text_div" ) );
+        text.text = "changed";
+        keywords.elementTextNotContains( "id", "my_text_div", "appears" );
+        try {
+            keywords.elementExists( "id", "missing" );
+            fail( "expected a timeout for a missing element" );
+        } catch ( TimeoutException expected ) {
+        }
+    }
+
+    public void testLaunchProfile() throws Exception
+    {
+        keywords.setChromeArgument( "--lang=fi" );
+        keywords.openBrowser( "chrome", stub.url(), "alias=fast", "profile=fast" );
+        JSONObject caps = stub.desiredCapabilities();
+        assertEquals( "eager", caps.getString( "pageLoadStrategy" ) );
+        String args = caps.getJSONObject( "chromeOptions" ).getJSONArray( "args" ).toString();
+        assertTrue( args, args.contains( "--lang=fi" ) && args.contains( "--headless" ) && args.contains( "--disable-gpu" ) );
+        assertTrue( keywords.getBrowserLaunchTime() >= 0 );
+        keywords.openBrowser( "firefox", stub.url(), "alias=firefox", "profile=fast" );
+        String profile = stub.desiredCapabilities().getString( "firefox_profile" );
+        keywords.openBrowser( "firefox", stub.url(), "alias=firefox-2", "profile=fast" );
+        assertEquals( "the serialized profile is reused", profile, stub.desiredCapabilities().getString( "firefox_profile" ) );
+
+        keywords.openBrowser( "chrome", stub.url(), "alias=plain" );
+        assertFalse( stub.desiredCapabilities().has( "pageLoadStrategy" ) );
+
+        // the options go in any position, the remoteUrl is the first argument without one
+        int sessions = stub.sessionCount();
+        keywords.openBrowser( "chrome", "alias=reordered", stub.url() );
+        keywords.openBrowser( "chrome", "profile=fast", stub.url(), "positional" );
+        assertEquals( "eager", stub.desiredCapabilities().getString( "pageLoadStrategy" ) );
+        assertEquals( sessions + 2, stub.sessionCount() );
+        keywords.switchBrowser( "reordered" );
+        keywords.switchBrowser( "positional" );
+        try {
+            keywords.openBrowser( "chrome", "profile=slow" );
+            fail( "expected an unknown launch profile to be rejected" );
+        } catch ( IllegalArgumentException expected ) {
+        }
+    }
+
+    public void testPooledBrowsersFollowTheChromeArguments() throws Exception
+    {
+        keywords.useBrowserPool( "1" );
+        int before = stub.sessionCount();
+        keywords.setChromeArgument( "--lang=fi" );
+        keywords.openBrowser( "chrome", stub.url(), "alias=fi", "profile=fast" );
+        waitForSessions( before + 2 );
+        keywords.closeBrowser();
+
+        keywords.setChromeArgument( "--lang=sv" );
+        // a browser of the old arguments would be leased without starting any
+        keywords.openBrowser( "chrome", stub.url(), "alias=sv", "profile=fast" );
+        waitForSessions( before + 4 );
+        String args = stub.desiredCapabilities().getJSONObject( "chromeOptions" ).getJSONArray( "args" ).toString();
+        assertTrue( args, args.contains( "--lang=sv" ) );
+        keywords.shutdownBrowserPool();
+    }
+
+    public void testNetworkFiltersUseTheProxy() throws Exception
+    {
+        keywords.blockUrlsMatching( new String[] { "google-analytics\\.com" } );
+        keywords.openBrowser( "chrome", stub.url(), "alias=proxied" );
+        JSONObject proxy = stub.desiredCapabilities().getJSONObject( "proxy" );
+        String[] address = proxy.getString( "httpProxy" ).split( ":" );
+        assertEquals( proxy.toString(), "127.0.0.1", address[0] );
+        keywords.clearNetworkFilters();
+        assertTrue( keywords.getProxyStats( "reset" ).startsWith( "requests=" ) );
+        try {
+            keywords.getProxyStats( "false" );
+            fail( "expected only reset to be accepted" );
+        } catch ( IllegalArgumentException expected ) {
+        }
+
+        keywords.openBrowser( "chrome", stub.url(), "alias=direct" );
+        assertFalse( "browsers opened after clearing do not use the proxy", stub.desiredCapabilities().has( "proxy" ) );
+        keywords.closeAllBrowsers();
+        try {
+            new Socket( address[0], Integer.parseInt( address[1] ) ).close();
+            fail( "expected the proxy to be stopped with the last browser" );
+        } catch ( ConnectException expected ) {
+        }
+        assertEquals( FilteringProxy.emptyStats(), keywords.getProxyStats() );
+    }
+
+    public void testNavigationStrategies() throws Exception
+    {
+        stub.addElement( "id", "main", "content" );
+        stub.setScriptResult( "wdlLeaving ? 'leaving'", "interactive" );
+        keywords.setPageLoadTimeout( "20" );
+        keywords.navigateToURL( "http://example.com/", "strategy=eager", "wait=id:main" );
+        keywords.navigateToURL( "http://example.com/", "none" );
+        try {
+            keywords.navigateToURL( "http://example.com/", "wait=id:missing" );
+            fail( "expected a timeout for a missing element" );
+        } catch ( TimeoutException expected ) {
+        }
+        try {
+            keywords.navigateToURL( "http://example.com/", "lazy" );
+            fail( "expected an unknown strategy to be rejected" );
+        } catch ( IllegalArgumentException expected ) {
+        }
+
+        stub.setScriptResult( "p.timing", new JSONObject( "{\"load\": 812, \"resources\": 3}" ) );
+        assertEquals( 812L, keywords.getNavigationTiming().get( "load" ) );
+        stub.setScriptResult( "getEntriesByType('resource') : []", new JSONArray( "[{\"name\": \"app.js\", \"duration\": 120}]" ) );
+        assertEquals( 1, keywords.getResourceTiming( "5" ).size() );
+    }
+
+    public void testPageSettleWait() throws Exception
+    {
+        keywords.setWaitAfterAction( "2" );
+        keywords.setPageSettleWait( "50" );
+        stub.setScriptResult( "__wdlSettle", true );
+        long start = System.nanoTime();
+        assertEquals( "main", keywords.getPageTitle() );
+        assertTrue( "the settled page ends the wait", System.nanoTime() - start < 2000000000L );
+        assertEquals( "the script timeout covers the wait", 2000 + 5000, stub.scriptTimeout() );
+
+        keywords.setWaitAfterAction( "0.3" );
+        stub.setScriptError( "__wdlSettle", "settle hooks failed" );
+        start = System.nanoTime();
+        assertEquals( "main", keywords.getPageTitle() );
+        assertTrue( "falls back to the fixed wait", System.nanoTime() - start >= 300000000L );
+    }
+
+    public void testElementCache() throws Exception
+    {
+        StubWebDriverServer.Element field = stub.addElement( "name", "textField", "" );
+        stub.addElement( "id", "my_text_div", "some text" );
+        keywords.setElementCache( "on" );
+
+        keywords.writeTextToField( "name", "textField", "first" );
+        int before = stub.commandCount();
+        keywords.writeTextToField( "name", "textField", "second" );
+        assertEquals( "displayed, clear and value without a find", 3, stub.commandCount() - before );
+        assertEquals( "second", field.attributes.get( "value" ) );
+
+        stub.removeElement( field );
+        StubWebDriverServer.Element replaced = stub.addElement( "name", "textField", "" );
+        keywords.writeTextToField( "name", "textField", "third" );
+        assertEquals( "third", replaced.attributes.get( "value" ) );
+        keywords.dragAndDrop( "name", "textField", "id", "my_text_div" );
+
+        keywords.getTextOfElement( "id", "my_text_div" );
+        before = stub.commandCount();
+        keywords.getTextOfElement( "id", "my_text_div" );
+        assertEquals( 1, stub.commandCount() - before );
+        keywords.navigateToURL( "file:///testpage.html" );
+        before = stub.commandCount();
+        keywords.getTextOfElement( "id", "my_text_div" );
+        assertEquals( "the element is found again after navigation", 2, stub.commandCount() - before );
+    }
+
+    public void testAsyncActions() throws Exception
+    {
+        StubWebDriverServer.Element field = stub.addElement( "name", "textField", "" );
+        StubWebDriverServer.Element checkbox = stub.addElement( "name", "news", "" );
+        stub.addElement( "id", "my_text_div", "some text" );
+        keywords.navigateToURL( "file:///testpage.html" );
+        keywords.setAsyncActions( "on" );
+
+        keywords.writeTextToField( "name", "textField", "queued" );
+        keywords.selectCheckbox( "name", "news" );
+        assertEquals( "some text", keywords.getTextOfElement( "id", "my_text_div" ) );
+        assertEquals( "queued", field.attributes.get( "value" ) );
+        assertTrue( checkbox.selected );
+
+        keywords.clickElement( "id", "missing" );
+        keywords.writeTextToField( "name", "textField", "skipped" );
+        try {
+            keywords.waitForPendingActions();
+            fail( "expected the failure of the queued click" );
+        } catch ( IllegalStateException expected ) {
+            String message = expected.getMessage();
+            assertTrue( message, message.contains( "ClickElement [id, missing]" ) && message.contains( "the action queued after it was skipped" ) );
+        }
+        assertEquals( "queued", field.attributes.get( "value" ) );
+        keywords.waitForPendingActions();
+
+        try {
+            keywords.clickElement( "nonsense", "x" );
+            fail( "expected the unknown strategy to fail before queueing" );
+        } catch ( IllegalArgumentException expected ) {
+        }
+
+        // the queued write runs on the old page before the navigation drops the cached elements
+        keywords.setElementCache( "on" );
+        stub.setLatency( 20 );
+        keywords.writeTextToField( "name", "textField", "old page" );
+        keywords.navigateToURL( "file:///testpage.html" );
+        stub.setLatency( 0 );
+        int before = stub.commandCount();
+        keywords.getTextOfElement( "name", "textField" );
+        assertEquals( "the element is found again after navigation", 2, stub.commandCount() - before );
+
+        // the page settle wait of a read keyword runs after the queued actions, not alongside them
+        keywords.setWaitAfterAction( "2" );
+        keywords.setPageSettleWait( "50" );
+        stub.setScriptResult( "__wdlSettle", true );
+        stub.setLatency( 20 );
+        keywords.writeTextToField( "name", "textField", "settled" );
+        keywords.getTextOfElement( "id", "my_text_div" );
+        stub.setLatency( 0 );
+        List<String> log = stub.commandLog();
+        assertTrue( log.toString(), log.lastIndexOf( "value" ) < log.lastIndexOf( "execute_async" ) );
+        assertEquals( "settled", field.attributes.get( "value" ) );
+        keywords.setWaitAfterAction( "0" );
+        keywords.setAsyncActions( "off" );
+    }
+
+    public void testDomSnapshot() throws Exception
+    {
+        stub.setPageSource( "<html><body><div id='status'>Order 42 shipped</div><span class='x' style='display:none'>x</span></body></html>" );
+        try {
+            keywords.elementExistsInSnapshot( "id", "status" );
+            fail( "expected an error without a snapshot" );
+        } catch ( IllegalStateException expected ) {
+        }
+        keywords.takeDomSnapshot();
+        int before = stub.commandCount();
+        keywords.elementExistsInSnapshot( "id", "status" );
+        keywords.elementTextContainsInSnapshot( "xpath", "//div", "42 shipped" );
+        keywords.elementTextNotEqualsInSnapshot( "cssSelector", "#status", "Order 42" );
+        keywords.elementDoesNotExistInSnapshot( "className", "x" );
+        assertEquals( "Order 42 shipped", keywords.getTextOfElementFromSnapshot( "id", "status" ) );
+        assertEquals( 0, stub.commandCount() - before );
+        try {
+            keywords.elementTextEqualsInSnapshot( "id", "status", "Order 43 shipped" );
+            fail( "expected a failed assertion" );
+        } catch ( AssertionError expected ) {
+            assertTrue( expected.getMessage(), expected.getMessage().contains( "Order 42 shipped" ) );
+        }
+
+        keywords.navigateToURL( "file:///testpage.html" );
+        try {
+            keywords.getTextOfElementFromSnapshot( "id", "status" );
+            fail( "expected the snapshot to be dropped by the navigation" );
+        } catch ( IllegalStateException expected ) {
+        }
+        try {
+            keywords.takeDomSnapshot( "10" );
+            fail( "expected the page source to be too long" );
+        } catch ( IllegalStateException expected ) {
+        }
+    }
+
+    public void testTextAssertionsByScript() throws Exception
+    {
+        keywords.setTextAssertionMode( "script" );
+        stub.setScriptResult( "t.indexOf(text)", new JSONArray().put( true ).put( "text appears from the button" ) );
+        keywords.elementTextContains( "id", "my_text_div", "appears" );
+        stub.setScriptResult( "t.indexOf(text)", new JSONArray().put( false ).put( "changed" ) );
+        try {
+            keywords.elementTextEquals( "id", "my_text_div", "appears" );
+            fail( "expected a timeout for a text that does not match" );
+        } catch ( TimeoutException expected ) {
+            assertTrue( expected.getMessage(), expected.getMessage().contains( "which had text ('changed')" ) );
+        }
+    }
+
+    public void testBulkQueries() throws Exception
+    {
+        stub.setScriptResult( "r.push(wdlText(found[i]))", new JSONArray( Arrays.asList( "first", "second" ) ) );
+        assertEquals( Arrays.asList( "first", "second" ), keywords.getTextsOfElements( "cssSelector", "li" ) );
+
+        JSONObject table = new JSONObject();
+        table.put( "total", 2 );
+        table.put( "rows", new JSONArray( "[[\"name\", \"note\"], [\"a\", \"x, \\\"y\\\"\"]]" ) );
+        stub.setScriptResult( "total: rows.length", table );
+        assertEquals( Arrays.asList( "a", "x, \"y\"" ), ( (List<?>) keywords.getTableData( "id", "results" ) ).get( 1 ) );
+
+        File csv = File.createTempFile( "table", ".csv" );
+        try {
+            assertEquals( 2L, keywords.getTableData( "id", "results", csv.getPath() ) );
+            assertEquals( "name,note\r\na,\"x, \"\"y\"\"\"\r\n", FileUtils.readFileToString( csv, "UTF-8" ) );
+        } finally {
+            csv.delete();
+        }
+    }
+
+    public void testFillFormWaitsForAllFieldsAndReportsEveryFailedField() throws Exception
+    {
+        StubWebDriverServer.Element first = stub.addElement( "name", "first", "" );
+        StubWebDriverServer.Element second = stub.addElement( "name", "second", "" );
+        StubWebDriverServer.Element third = stub.addElement( "name", "third", "" );
+        String[] fields = { "name", "first", "a", "name", "second", "b", "name", "third", "c" };
+        stub.setScriptResult( "r.push(e);", new JSONArray( "[" + reference( first ) + ", null, " + reference( third ) + "]" ) );
+        try {
+            keywords.fillForm( fields );
+            fail( "expected a timeout for the missing field" );
+        } catch ( TimeoutException expected ) {
+            assertTrue( expected.getMessage(), expected.getMessage().contains( "missing fields [name=second]" ) );
+        }
+        assertNull( "nothing is written before all fields are visible", first.attributes.get( "value" ) );
+
+        stub.setScriptResult( "r.push(e);", new JSONArray( "[" + reference( first ) + ", " + reference( second ) + ", " + reference( third ) + "]" ) );
+        stub.removeElement( first );
+        stub.removeElement( third );
+        try {
+            keywords.fillForm( fields );
+            fail( "expected the stale fields to fail" );
+        } catch ( IllegalStateException expected ) {
+            String message = expected.getMessage();
+            assertTrue( message, message.startsWith( "Writing failed for 2 field(s):\nname=first: " ) );
+            assertTrue( message, message.contains( "\nname=third: " ) );
+        }
+        assertEquals( "the other fields are written", "b", second.attributes.get( "value" ) );
+    }
+
+    public void testFillFormWithScriptReportsEveryFailedField() throws Exception
+    {
+        String[] fields = { "id", "user", "jane", "id", "locked", "x", "id", "fixed", "y" };
+        stub.setScriptResult( "fire(f, 'change')", new JSONArray( Arrays.asList( "", "missing", "" ) ) );
+        try {
+            keywords.fillFormWithScript( fields );
+            fail( "expected a timeout for the missing field" );
+        } catch ( TimeoutException expected ) {
+            assertTrue( expected.getMessage(), expected.getMessage().contains( "id=locked" ) );
+        }
+        stub.setScriptResult( "fire(f, 'change')", new JSONArray( Arrays.asList( "", "field is disabled", "field is read-only" ) ) );
+        try {
+            keywords.fillFormWithScript( fields );
+            fail( "expected the disabled and read-only fields to fail" );
+        } catch ( IllegalStateException expected ) {
+            assertEquals( "Writing failed for 2 field(s):\nid=locked: field is disabled\nid=fixed: field is read-only",
+                          expected.getMessage() );
+        }
+    }
+
+    public void testPerformActions() throws Exception
+    {
+        StubWebDriverServer.Element canvas = stub.addElement( "id", "canvas", "" );
+        StubWebDriverServer.Element save = stub.addElement( "linkText", "Save", "" );
+        stub.setScriptResult( "r.push(e);", new JSONArray( "[" + reference( canvas ) + ", " + reference( save ) + "]" ) );
+        int before = stub.commandCount();
+        keywords.performActions( new String[] { "down id:canvas", "moveBy 40 0", "moveBy 0 40", "up", "click linkText:Save" } );
+        // one script resolves both elements, the rest are the mouse commands of the chain without finds
+        assertEquals( 1 + 9, stub.commandCount() - before );
+        try {
+            keywords.performActions( new String[] { "down id:canvas", "drag 40 0" } );
+            fail( "expected an unknown step to be rejected" );
+        } catch ( IllegalArgumentException expected ) {
+        }
+    }
+
+    public void testSelectByScript() throws Exception
+    {
+        stub.setScriptResult( "byKey", new JSONObject( "{\"error\": \"\"}" ) );
+        keywords.selectDropdownItem( "id", "country", "Finland" );
+        keywords.selectOptions( "name", "products", "VALUE", new String[] { "p-1", "p-7" } );
+
+        stub.setScriptResult( "byKey", new JSONObject( "{\"missing\": [\"p-9\"]}" ) );
+        try {
+            keywords.selectOptions( "name", "products", "value", new String[] { "p-9" } );
+            fail( "expected a timeout for a missing option" );
+        } catch ( TimeoutException expected ) {
+            assertTrue( expected.getMessage(), expected.getMessage().contains( "missing options [p-9]" ) );
+        }
+
+        stub.setScriptResult( "byKey", new JSONObject( "{\"error\": \"select element is disabled\"}" ) );
+        try {
+            keywords.selectFromMultiSelect( "name", "products", "a, b" );
+            fail( "expected the script error to be reported" );
+        } catch ( IllegalStateException expected ) {
+            assertTrue( expected.getMessage(), expected.getMessage().endsWith( "[a, b] of element found by name=products: select element is disabled" ) );
+        }
+    }
+
+    public void testWindowAndAlertKeywords() throws Exception
+    {
+        stub.addWindow( "Popup window", "http://popup" );
+        keywords.switchToWindowWithTitle( "Popup" );
+        assertEquals( "Popup window", keywords.getPageTitle() );
+        keywords.switchToMainWindow();
+        assertEquals( "main", keywords.getPageTitle() );
+        stub.setAlert( "hello" );
+        keywords.clickPopupOk();
+    }
+
+    public void testCurrentWindowNavigatingDuringTheWaitIsFound() throws Exception
+    {
+        final StubWebDriverServer.Window popup = stub.addWindow( "Loading", "http://popup" );
+        keywords.switchToWindowWithTitle( "Loading" );
+        Thread navigation = new Thread() {
+            public void run()
+            {
+                try {
+                    Thread.sleep( 200 );
+                } catch ( InterruptedException e ) {
+                    return;
+                }
+                popup.title = "Report";
+            }
+        };
+        navigation.start();
+        keywords.switchToWindowWithTitle( "Report" );
+        assertEquals( "Report", keywords.getPageTitle() );
+        navigation.join();
+    }
+
+    // the pool starts its browsers in the background
+    private void waitForSessions( int count ) throws InterruptedException
+    {
+        for ( int i = 0; i < 250 && stub.sessionCount() < count; i++ ) {
+            Thread.sleep( 20 );
+        }
+        assertEquals( count, stub.sessionCount() );
+    }
+
+    private static String reference( StubWebDriverServer.Element e )
+    {
+        return "{\"ELEMENT\": \"" + e.id + "\"}";
+    }
+}
@@ -0,0 +1,96 @@
+package org.robotframework.webdriverlibrary;
+
+import junit.framework.TestCase;
+
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.remote.DesiredCapabilities;
+import org.openqa.selenium.remote.RemoteWebDriver;
+
+import java.net.URL;
+
+/**
+ * Unit test for the window index used by the window switching keywords.
+ */
+public class WindowIndexTest
+    extends TestCase
+{
+    private StubWebDriverServer stub;
+    private WebDriver driver;
+    private WindowIndex index;
+
+    @Override
+    protected void setUp() throws Exception
+    {
+        stub = new StubWebDriverServer();
+        driver = new RemoteWebDriver( new URL( stub.url() ), DesiredCapabilities.chrome() );
+        index = new WindowIndex();
+        index.add( driver.getWindowHandle() );
+    }
+
+    @Override
+    protected void tearDown() throws Exception
+    {
+        driver.quit();
+        stub.stop();
+    }
+
+    public void testCachedWindowIsSwitchedToWithoutVisitingOthers()
+    {
+        for ( int i = 0; i < 5; i++ ) {
+            stub.addWindow( "Popup " + i, "http://popup/" + i );
+        }
+        String main = driver.getWindowHandle();
+        assertNotNull( index.switchTo( driver, false, "Popup 4", 0, false ) );
+        assertEquals( "Popup 4", driver.getTitle() );
+        driver.switchTo().window( main );
+
+        int before = stub.commandCount();
+        assertNotNull( index.switchTo( driver, true, "popup/4", 0, false ) );
+        // current handle, handles, switch and the verifying script
+        assertEquals( 4, stub.commandCount() - before );
+    }
+
+    public void testMissRestoresFocusAndRescanFindsNavigatedWindow()
+    {
+        StubWebDriverServer.Window popup = stub.addWindow( "Popup", "http://popup" );
+        String main = driver.getWindowHandle();
+        assertNull( index.switchTo( driver, false, "Report", 0, false ) );
+        assertEquals( main, driver.getWindowHandle() );
+
+        popup.title = "Report";
+        assertNull( index.switchTo( driver, false, "Report", System.nanoTime(), false ) );
+        assertEquals( popup.handle, index.switchTo( driver, false, "Report", System.nanoTime(), true ) );
+    }
+
+    public void testMissReadsOnlyTheCurrentAndNewWindows()
+    {
+        for ( int i = 0; i < 5; i++ ) {
+            stub.addWindow( "Popup " + i, "http://popup/" + i );
+        }
+        assertNull( index.switchTo( driver, false, "Report", 0, true ) );
+        int before = stub.commandCount();
+        assertNull( index.switchTo( driver, false, "Report", System.nanoTime(), false ) );
+        // current handle, handles and the script reading the current window
+        assertEquals( 3, stub.commandCount() - before );
+
+        long since = System.nanoTime();
+        stub.windows().get( 0 ).title = "Report";
+        assertEquals( driver.getWindowHandle(), index.switchTo( driver, false, "Report", since, false ) );
+        StubWebDriverServer.Window opened = stub.addWindow( "Report 2", "http://report" );
+        assertEquals( opened.handle, index.switchTo( driver, false, "Report 2", since, false ) );
+    }
+
+    public void testNextWindowFollowsOpeningOrder()
+    {
+        String main = driver.getWindowHandle();
+        StubWebDriverServer.Window first = stub.addWindow( "First", "http://first" );
+        StubWebDriverServer.Window second = stub.addWindow( "Second", "http://second" );
+        assertEquals( first.handle, index.switchToNext( driver ) );
+        assertEquals( second.handle, index.switchToNext( driver ) );
+        assertEquals( main, index.switchToNext( driver ) );
+
+        stub.windows().remove( first );
+        assertEquals( second.handle, index.switchToNext( driver ) );
+        assertEquals( main, index.handles().get( 0 ) );
+    }
+}